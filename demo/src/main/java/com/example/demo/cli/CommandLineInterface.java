@@ -8,33 +8,41 @@ import java.util.Scanner;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import com.example.demo.dto.Pagina;
 import com.example.demo.model.Postazione;
 import com.example.demo.model.Prenotazione;
 import com.example.demo.model.TipoPostazione;
 import com.example.demo.model.Utente;
+import com.example.demo.service.CatalogoCacheService;
 import com.example.demo.service.PrenotazioneService;
 import com.example.demo.service.UtenteService;
 
 /**
  * Classe che implementa l'interfaccia a riga di comando dell'applicazione.
  * Gestisce l'interazione con l'utente attraverso un menu testuale.
+ * Non viene avviata con il profilo "test", dove resterebbe in attesa di input da System.in.
  */
 @Component
 @Order(2)
+@Profile("!test")
 public class CommandLineInterface implements CommandLineRunner {
 
     // Costanti per la formattazione dell'output
     private static final String LINE_SEPARATOR = "\n" + "=".repeat(50) + "\n";
     private static final String DATE_FORMAT = "YYYY-MM-DD";
+    private static final int DIMENSIONE_PAGINA = 20;
     
     // Injection dei servizi necessari
     @Autowired
     private PrenotazioneService prenotazioneService;
     @Autowired
     private UtenteService utenteService;
+    @Autowired
+    private CatalogoCacheService catalogoCacheService;
     
     // Variabili di istanza per gestire l'input e lo stato dell'utente
     private Scanner scanner = new Scanner(System.in);
@@ -329,8 +337,7 @@ public class CommandLineInterface implements CommandLineRunner {
             String dataString = scanner.nextLine();
             LocalDate data = LocalDate.parse(dataString);
 
-            Prenotazione prenotazione = prenotazioneService.prenotaPostazioneByUsername(
-                username, codicePostazione, data);
+            prenotazioneService.prenotaPostazioneByUsername(username, codicePostazione, data);
             System.out.println("Prenotazione effettuata con successo!");
         } catch (DateTimeParseException e) {
             System.out.println("Errore: Formato data non valido. Usa il formato YYYY-MM-DD");
@@ -348,18 +355,25 @@ public class CommandLineInterface implements CommandLineRunner {
         String username = scanner.nextLine();
 
         try {
-            List<Prenotazione> prenotazioni = prenotazioneService.getPrenotazioniByUsername(username);
-            
-            if (prenotazioni.isEmpty()) {
-                System.out.println("Non hai prenotazioni attive.");
-                return;
-            }
+            // Le prenotazioni vengono caricate una pagina alla volta, dalla più recente
+            String cursore = null;
+            boolean primaPagina = true;
+            do {
+                Pagina<Prenotazione> pagina = prenotazioneService.getPaginaPrenotazioni(
+                    username, null, null, cursore, DIMENSIONE_PAGINA);
+                if (primaPagina && pagina.getElementi().isEmpty()) {
+                    System.out.println("Non hai prenotazioni attive.");
+                    return;
+                }
 
-            prenotazioni.forEach(p -> System.out.printf(
-                "Data: %s, Postazione: %s, Edificio: %s%n",
-                p.getData(), p.getPostazione().getCodice(), 
-                p.getPostazione().getEdificio().getNome()
-            ));
+                pagina.getElementi().forEach(p -> System.out.printf(
+                    "Data: %s, Postazione: %s, Edificio: %s%n",
+                    p.getData(), p.getPostazione().getCodice(), 
+                    p.getPostazione().getEdificio().getNome()
+                ));
+                cursore = pagina.getCursoreSuccessivo();
+                primaPagina = false;
+            } while (cursore != null && continuaPaginazione());
         } catch (Exception e) {
             System.out.println("Errore: " + e.getMessage());
         }
@@ -471,13 +485,15 @@ public class CommandLineInterface implements CommandLineRunner {
         System.out.println("1. Lista postazioni");
         System.out.println("2. Aggiungi postazione");
         System.out.println("3. Elimina postazione");
+        System.out.println("4. Statistiche cache catalogo");
         System.out.println("0. Indietro");
         
-        int scelta = getValidChoice(0, 3);
+        int scelta = getValidChoice(0, 4);
         switch (scelta) {
             case 1 -> mostraListaPostazioni();
             case 2 -> aggiungiPostazione();
             case 3 -> eliminaPostazione();
+            case 4 -> mostraStatisticheCache();
         }
     }
 
@@ -522,21 +538,41 @@ public class CommandLineInterface implements CommandLineRunner {
      */
     private void mostraTuttePrenotazioni() {
         System.out.println("\n=== Lista Prenotazioni ===");
-        List<Prenotazione> prenotazioni = prenotazioneService.getAllPrenotazioni(currentUser);
-        if (prenotazioni.isEmpty()) {
-            System.out.println("Nessuna prenotazione presente.");
-            return;
-        }
+        // L'amministratore vede le prenotazioni di tutti, caricate una pagina alla volta
+        String username = "Administrator".equals(currentUser) ? null : currentUser;
+        String cursore = null;
+        boolean primaPagina = true;
+        do {
+            Pagina<Prenotazione> pagina = prenotazioneService.getPaginaPrenotazioni(
+                username, null, null, cursore, DIMENSIONE_PAGINA);
+            if (primaPagina && pagina.getElementi().isEmpty()) {
+                System.out.println("Nessuna prenotazione presente.");
+                return;
+            }
+            if (primaPagina) {
+                System.out.println("\nID    | Data       | Utente            | Postazione | Edificio");
+                System.out.println("-".repeat(70));
+            }
 
-        System.out.println("\nID    | Data       | Utente            | Postazione | Edificio");
-        System.out.println("-".repeat(70));
-        prenotazioni.forEach(p -> System.out.printf("%-5d | %s | %-17s | %-10s | %s%n",
-            p.getId(),
-            p.getData(),
-            p.getUtente().getUsername(),
-            p.getPostazione().getCodice(),
-            p.getPostazione().getEdificio().getNome()
-        ));
+            pagina.getElementi().forEach(p -> System.out.printf("%-5d | %s | %-17s | %-10s | %s%n",
+                p.getId(),
+                p.getData(),
+                p.getUtente().getUsername(),
+                p.getPostazione().getCodice(),
+                p.getPostazione().getEdificio().getNome()
+            ));
+            cursore = pagina.getCursoreSuccessivo();
+            primaPagina = false;
+        } while (cursore != null && continuaPaginazione());
+    }
+
+    /**
+     * Chiede all'utente se visualizzare la pagina successiva di risultati.
+     * @return true se l'utente vuole proseguire, false altrimenti
+     */
+    private boolean continuaPaginazione() {
+        System.out.print("\nPremi INVIO per la pagina successiva, 0 per terminare: ");
+        return !"0".equals(scanner.nextLine().trim());
     }
 
     /**
@@ -577,6 +613,22 @@ public class CommandLineInterface implements CommandLineRunner {
         ));
     }
 
+    /**
+     * Mostra hit e miss delle regioni della cache del catalogo.
+     */
+    private void mostraStatisticheCache() {
+        System.out.println("\n=== Statistiche Cache Catalogo ===");
+        System.out.println("\nRegione         | Hit        | Miss       | Inserimenti | Hit %");
+        System.out.println("-".repeat(65));
+        catalogoCacheService.getStatistiche().forEach(s -> System.out.printf("%-15s | %-10d | %-10d | %-11d | %.1f%n",
+            s.getRegione(),
+            s.getHit(),
+            s.getMiss(),
+            s.getInserimenti(),
+            s.getPercentualeHit()
+        ));
+    }
+
     /**
      * Permette l'aggiunta di una nuova postazione nel sistema.
      */
@@ -0,0 +1,27 @@
+package com.example.demo.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Conta le istruzioni SQL preparate da Hibernate nel thread corrente.
+ * Registrato come statement inspector in application.properties, permette alle metriche
+ * di misurare quante query esegue ogni operazione senza modificare le istruzioni.
+ * Gli insert eseguiti direttamente con JDBC non passano da Hibernate e non vengono contati.
+ */
+public class ContatoreQuery implements StatementInspector {
+
+    private static final ThreadLocal<long[]> CONTEGGIO = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        CONTEGGIO.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * @return il numero di istruzioni preparate finora nel thread corrente
+     */
+    public static long getConteggio() {
+        return CONTEGGIO.get()[0];
+    }
+}
@@ -32,17 +32,26 @@ public class DataLoader implements CommandLineRunner {
     
     @Autowired
     private UtenteRepository utenteRepository;
+    
+    // Generatore del dataset sintetico, usato al posto dei dati di esempio se attivo
+    @Autowired
+    private GeneratoreDataset generatoreDataset;
 
     /**
      * Metodo eseguito all'avvio dell'applicazione.
-     * Verifica se il database è vuoto e in tal caso lo popola con i dati iniziali.
+     * Verifica se il database è vuoto e in tal caso lo popola con i dati iniziali,
+     * o con il dataset sintetico se è attivo il profilo "dataset".
      */
     @Override
     public void run(String... args) {
         try {
             // Verifica se il database è già inizializzato
             if (edificioRepository.count() == 0) {
-                initializeData();
+                if (generatoreDataset.isAttivo()) {
+                    generatoreDataset.genera();
+                } else {
+                    initializeData();
+                }
                 System.out.println("Database inizializzato con successo.");
             }
         } catch (Exception e) {
@@ -0,0 +1,36 @@
+package com.example.demo.config;
+
+import java.util.Map;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Esclude la configurazione automatica R2DBC quando le letture reattive sono disattivate,
+ * così che prenotazioni.lettura-reattiva.enabled basti da solo ad attivare o togliere
+ * pool, repository reattivi e health check R2DBC. Le esclusioni già configurate vengono mantenute.
+ */
+public class EsclusioneR2dbc implements EnvironmentPostProcessor {
+
+    private static final String ESCLUSIONI = "spring.autoconfigure.exclude";
+
+    private static final String R2DBC = String.join(",", R2dbcAutoConfiguration.class.getName(),
+        R2dbcDataAutoConfiguration.class.getName(), R2dbcRepositoriesAutoConfiguration.class.getName(),
+        R2dbcTransactionManagerAutoConfiguration.class.getName());
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (environment.getProperty("prenotazioni.lettura-reattiva.enabled", Boolean.class, false)) {
+            return;
+        }
+        String esistenti = environment.getProperty(ESCLUSIONI, "");
+        environment.getPropertySources().addFirst(new MapPropertySource("esclusioneR2dbc",
+            Map.of(ESCLUSIONI, esistenti.isBlank() ? R2DBC : esistenti + "," + R2DBC)));
+    }
+}
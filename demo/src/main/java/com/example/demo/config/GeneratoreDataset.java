@@ -0,0 +1,426 @@
+package com.example.demo.config;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.TipoPostazione;
+import com.example.demo.service.CatalogoCacheService;
+import com.example.demo.service.OccupancyIndex;
+import com.example.demo.service.Risolutore;
+import com.example.demo.service.VersioniDisponibilita;
+
+/**
+ * Generatore di un dataset sintetico di grandi dimensioni, usato da {@link DataLoader} al posto dei dati
+ * di esempio quando è attivo il profilo "dataset" (o prenotazioni.dataset.enabled=true).
+ *
+ * Gli edifici sono distribuiti tra le città in modo sbilanciato verso le prime, le più grandi;
+ * le prenotazioni storiche occupano i giorni feriali all'indietro a partire da ieri, con volumi diversi
+ * per giorno della settimana, e si concentrano su una parte degli utenti e delle postazioni.
+ * I vincoli di unicità sono sempre rispettati: ogni giorno un utente e una postazione compaiono al più una volta.
+ *
+ * Su PostgreSQL le righe vengono caricate con COPY, altrimenti con insert JDBC batch;
+ * la generazione è deterministica a parità di seme e di configurazione.
+ * Tutte le tabelle vengono popolate in un'unica transazione: se la generazione fallisce il database
+ * resta vuoto, invece di restare con un dataset parziale che {@link DataLoader} non rigenererebbe più.
+ */
+@Component
+public class GeneratoreDataset {
+
+    /**
+     * Righe inviate al database in ogni batch JDBC
+     */
+    private static final int DIMENSIONE_BATCH = 5_000;
+
+    /**
+     * Esponenti delle estrazioni sbilanciate: con 2 il primo decimo degli indici riceve circa un terzo delle estrazioni
+     */
+    private static final double SBILANCIAMENTO_CITTA = 2;
+    private static final double SBILANCIAMENTO_UTENTI = 2;
+    private static final double SBILANCIAMENTO_POSTAZIONI = 1.5;
+
+    /**
+     * Prenotazioni di ogni giorno della settimana rispetto alla media dei giorni feriali
+     */
+    private static final double[] PESI_GIORNI = { 0.9, 1.15, 1.2, 1.1, 0.65, 0, 0 };
+
+    private static final List<String> NOMI_CITTA = List.of("Milano", "Roma", "Torino", "Napoli", "Bologna",
+        "Firenze", "Genova", "Venezia", "Verona", "Bari", "Palermo", "Catania", "Padova", "Trieste", "Brescia",
+        "Parma", "Modena", "Cagliari", "Perugia", "Pescara");
+
+    @Value("${prenotazioni.dataset.enabled:false}")
+    private boolean attivo;
+
+    @Value("${prenotazioni.dataset.citta:20}")
+    private int citta;
+
+    @Value("${prenotazioni.dataset.edifici:200}")
+    private int edifici;
+
+    @Value("${prenotazioni.dataset.postazioni-per-edificio:50}")
+    private int postazioniPerEdificio;
+
+    @Value("${prenotazioni.dataset.utenti:50000}")
+    private int utenti;
+
+    @Value("${prenotazioni.dataset.prenotazioni:1000000}")
+    private long prenotazioni;
+
+    @Value("${prenotazioni.dataset.occupazione:0.6}")
+    private double occupazione;
+
+    @Value("${prenotazioni.dataset.seme:42}")
+    private long seme;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CatalogoCacheService catalogoCacheService;
+
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private Risolutore risolutore;
+
+    @Autowired
+    private VersioniDisponibilita versioniDisponibilita;
+
+    /**
+     * Righe di una tabella, scritte una alla volta nell'inserimento ricevuto
+     */
+    @FunctionalInterface
+    private interface Righe {
+        void scrivi(Inserimento inserimento) throws SQLException, IOException;
+    }
+
+    /**
+     * Destinazione delle righe di una tabella: COPY o insert batch
+     */
+    private interface Inserimento {
+
+        void aggiungi(Object... valori) throws SQLException, IOException;
+
+        /**
+         * Invia le righe rimaste e chiude l'inserimento
+         */
+        void completa() throws SQLException, IOException;
+
+        /**
+         * Chiude l'inserimento dopo un errore, senza inviare le righe rimaste
+         */
+        void annulla() throws SQLException;
+    }
+
+    /**
+     * Numero di righe generate, per il riepilogo finale
+     */
+    private record Generato(int edifici, int postazioni, int utenti, long prenotazioni, long giorni) {
+    }
+
+    /**
+     * @return true se all'avvio su un database vuoto va generato il dataset sintetico
+     */
+    public boolean isAttivo() {
+        return attivo;
+    }
+
+    /**
+     * Genera e inserisce città, edifici, postazioni, utenti e prenotazioni storiche,
+     * poi svuota le cache che potrebbero essere state caricate prima del popolamento.
+     *
+     * @throws IllegalArgumentException se la configurazione non è valida
+     */
+    public void genera() {
+        if (citta < 1 || edifici < citta || postazioniPerEdificio < 1 || utenti < 1 || prenotazioni < 0) {
+            throw new IllegalArgumentException("Configurazione del dataset non valida: servono almeno un edificio "
+                + "per città, una postazione per edificio e un utente");
+        }
+        if (occupazione <= 0 || occupazione > 1) {
+            throw new IllegalArgumentException("L'occupazione media deve essere compresa tra 0 (escluso) e 1");
+        }
+        long inizio = System.nanoTime();
+        boolean copy = Boolean.TRUE.equals(jdbcTemplate.execute(
+            (ConnectionCallback<Boolean>) connessione -> connessione.isWrapperFor(PGConnection.class)));
+        Generato generato = jdbcTemplate.execute((ConnectionCallback<Generato>) connessione -> {
+            boolean autoCommit = connessione.getAutoCommit();
+            connessione.setAutoCommit(false);
+            try {
+                Generato risultato = genera(connessione, copy);
+                connessione.commit();
+                return risultato;
+            } catch (Throwable e) {
+                connessione.rollback();
+                throw e;
+            } finally {
+                connessione.setAutoCommit(autoCommit);
+            }
+        });
+
+        if (copy) {
+            // Statistiche aggiornate per il pianificatore, che altrimenti vedrebbe tabelle quasi vuote
+            jdbcTemplate.execute("ANALYZE");
+        }
+        catalogoCacheService.svuota();
+        occupancyIndex.svuota();
+        risolutore.svuota();
+        versioniDisponibilita.incrementaCatalogo();
+
+        System.out.printf("Dataset generato con %s: %d edifici, %d postazioni, %d utenti, "
+            + "%d prenotazioni in %d giorni feriali, in %d secondi.%n", copy ? "COPY" : "JDBC batch",
+            generato.edifici(), generato.postazioni(), generato.utenti(), generato.prenotazioni(),
+            generato.giorni(), (System.nanoTime() - inizio) / 1_000_000_000L);
+    }
+
+    /**
+     * Inserisce tutte le tabelle sulla connessione indicata, nella transazione già aperta dal chiamante.
+     */
+    private Generato genera(Connection connessione, boolean copy) throws SQLException {
+        Random casuale = new Random(seme);
+
+        inserisci(connessione, copy, "edificio", List.of("nome", "indirizzo", "citta"), inserimento -> {
+            for (int e = 0; e < edifici; e++) {
+                // Ogni città ha almeno un edificio, gli altri vanno soprattutto alle prime
+                int indiceCitta = e < citta ? e : sbilanciato(casuale, citta, SBILANCIAMENTO_CITTA);
+                inserimento.aggiungi("Sede " + (e + 1), "Via Dataset " + (e + 1), nomeCitta(indiceCitta));
+            }
+        });
+        long[] idEdifici = leggiId(connessione, "edificio");
+
+        inserisci(connessione, copy, "postazione", List.of("codice", "descrizione", "tipo",
+            "numero_massimo_occupanti", "edificio_id"), inserimento -> {
+            for (int e = 0; e < idEdifici.length; e++) {
+                for (int p = 0; p < postazioniPerEdificio; p++) {
+                    double estratto = casuale.nextDouble();
+                    TipoPostazione tipo;
+                    int occupanti;
+                    if (estratto < 0.6) {
+                        tipo = TipoPostazione.OPENSPACE;
+                        occupanti = 10 + casuale.nextInt(31);
+                    } else if (estratto < 0.85) {
+                        tipo = TipoPostazione.PRIVATO;
+                        occupanti = 1 + casuale.nextInt(2);
+                    } else {
+                        tipo = TipoPostazione.SALA_RIUNIONI;
+                        occupanti = 8 + casuale.nextInt(43);
+                    }
+                    inserimento.aggiungi("D" + e + "-" + p, "Postazione " + p, tipo.name(), occupanti,
+                        idEdifici[e]);
+                }
+            }
+        });
+        long[] idPostazioni = leggiId(connessione, "postazione");
+
+        inserisci(connessione, copy, "utente", List.of("username", "nome_completo", "email"), inserimento -> {
+            for (int u = 0; u < utenti; u++) {
+                inserimento.aggiungi("utente." + u, "Utente " + u, "utente." + u + "@example.com");
+            }
+        });
+        long[] idUtenti = leggiId(connessione, "utente");
+
+        long[] inserite = new long[2];
+        inserisci(connessione, copy, "prenotazione", List.of("utente_id", "postazione_id", "data"), inserimento -> {
+            int capacita = Math.min(idUtenti.length, idPostazioni.length);
+            double media = capacita * occupazione;
+            BitSet utentiDelGiorno = new BitSet(idUtenti.length);
+            BitSet postazioniDelGiorno = new BitSet(idPostazioni.length);
+            LocalDate giorno = LocalDate.now();
+            while (inserite[0] < prenotazioni) {
+                giorno = giorno.minusDays(1);
+                double peso = PESI_GIORNI[giorno.getDayOfWeek().ordinal()];
+                if (peso == 0) {
+                    continue;
+                }
+                long delGiorno = Math.min(prenotazioni - inserite[0],
+                    Math.min(capacita, Math.max(1, Math.round(media * peso * (0.9 + 0.2 * casuale.nextDouble())))));
+                utentiDelGiorno.clear();
+                postazioniDelGiorno.clear();
+                for (long i = 0; i < delGiorno; i++) {
+                    int utente = libero(utentiDelGiorno, idUtenti.length,
+                        sbilanciato(casuale, idUtenti.length, SBILANCIAMENTO_UTENTI));
+                    int postazione = libero(postazioniDelGiorno, idPostazioni.length,
+                        sbilanciato(casuale, idPostazioni.length, SBILANCIAMENTO_POSTAZIONI));
+                    inserimento.aggiungi(idUtenti[utente], idPostazioni[postazione], giorno);
+                }
+                inserite[0] += delGiorno;
+                inserite[1]++;
+            }
+        });
+
+        return new Generato(idEdifici.length, idPostazioni.length, idUtenti.length, inserite[0], inserite[1]);
+    }
+
+    private static long[] leggiId(Connection connessione, String tabella) throws SQLException {
+        List<Long> id = new ArrayList<>();
+        try (Statement statement = connessione.createStatement();
+             ResultSet righe = statement.executeQuery("SELECT id FROM " + tabella + " ORDER BY id")) {
+            while (righe.next()) {
+                id.add(righe.getLong(1));
+            }
+        }
+        return id.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private String nomeCitta(int indice) {
+        return indice < NOMI_CITTA.size() ? NOMI_CITTA.get(indice) : "Città " + (indice + 1);
+    }
+
+    /**
+     * Estrae un indice tra 0 e n - 1, tanto più spesso quanto più è basso.
+     */
+    private static int sbilanciato(Random casuale, int n, double esponente) {
+        return (int) (n * Math.pow(casuale.nextDouble(), esponente));
+    }
+
+    /**
+     * Restituisce il primo indice non ancora usato a partire da quello estratto, ricominciando da 0
+     * se necessario, e lo segna come usato. Il chiamante garantisce che ne resti almeno uno.
+     */
+    private static int libero(BitSet usati, int n, int estratto) {
+        int indice = usati.nextClearBit(estratto);
+        if (indice >= n) {
+            indice = usati.nextClearBit(0);
+        }
+        usati.set(indice);
+        return indice;
+    }
+
+    /**
+     * Inserisce le righe di una tabella nella transazione della connessione.
+     * Se la generazione delle righe fallisce, il COPY in corso viene annullato invece di essere concluso
+     * con le righe già inviate, e l'errore arriva al chiamante che annulla la transazione.
+     */
+    private static void inserisci(Connection connessione, boolean copy, String tabella, List<String> colonne,
+                                  Righe righe) throws SQLException {
+        Inserimento inserimento = copy
+            ? new InserimentoCopy(connessione, tabella, colonne)
+            : new InserimentoBatch(connessione, tabella, colonne);
+        try {
+            righe.scrivi(inserimento);
+            inserimento.completa();
+        } catch (IOException e) {
+            annulla(inserimento, e);
+            throw new UncheckedIOException(e);
+        } catch (Throwable e) {
+            annulla(inserimento, e);
+            throw e;
+        }
+    }
+
+    private static void annulla(Inserimento inserimento, Throwable errore) {
+        try {
+            inserimento.annulla();
+        } catch (SQLException e) {
+            errore.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Inserimento con COPY ... FROM STDIN nel formato testo di PostgreSQL
+     */
+    private static final class InserimentoCopy implements Inserimento {
+
+        private final PGCopyOutputStream copia;
+
+        private final Writer scrittore;
+
+        InserimentoCopy(Connection connessione, String tabella, List<String> colonne) throws SQLException {
+            String sql = "COPY " + tabella + " (" + String.join(", ", colonne) + ") FROM STDIN";
+            copia = new PGCopyOutputStream(connessione.unwrap(PGConnection.class), sql);
+            scrittore = new BufferedWriter(new OutputStreamWriter(copia, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        @Override
+        public void aggiungi(Object... valori) throws IOException {
+            for (int i = 0; i < valori.length; i++) {
+                if (i > 0) {
+                    scrittore.write('\t');
+                }
+                scrittore.write(valori[i].toString()
+                    .replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r"));
+            }
+            scrittore.write('\n');
+        }
+
+        @Override
+        public void completa() throws IOException {
+            scrittore.close();
+        }
+
+        @Override
+        public void annulla() throws SQLException {
+            // Le righe ancora nel buffer vengono scartate: chiudere lo scrittore concluderebbe il COPY
+            if (copia.isActive()) {
+                copia.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Inserimento con insert JDBC batch, nella transazione della connessione
+     */
+    private static final class InserimentoBatch implements Inserimento {
+
+        private final PreparedStatement statement;
+
+        private int inAttesa;
+
+        InserimentoBatch(Connection connessione, String tabella, List<String> colonne) throws SQLException {
+            statement = connessione.prepareStatement("INSERT INTO " + tabella + " (" + String.join(", ", colonne)
+                + ") VALUES (" + colonne.stream().map(colonna -> "?").collect(Collectors.joining(", ")) + ")",
+                Statement.NO_GENERATED_KEYS);
+        }
+
+        @Override
+        public void aggiungi(Object... valori) throws SQLException {
+            for (int i = 0; i < valori.length; i++) {
+                statement.setObject(i + 1, valori[i]);
+            }
+            statement.addBatch();
+            if (++inAttesa == DIMENSIONE_BATCH) {
+                statement.executeBatch();
+                inAttesa = 0;
+            }
+        }
+
+        @Override
+        public void completa() throws SQLException {
+            try {
+                if (inAttesa > 0) {
+                    statement.executeBatch();
+                }
+            } finally {
+                statement.close();
+            }
+        }
+
+        @Override
+        public void annulla() throws SQLException {
+            // I batch già eseguiti vengono annullati con la transazione
+            statement.close();
+        }
+    }
+}
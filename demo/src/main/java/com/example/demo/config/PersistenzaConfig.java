@@ -0,0 +1,53 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Configurazione delle letture reattive R2DBC, attiva solo con prenotazioni.lettura-reattiva.enabled=true.
+ * Senza il flag la configurazione automatica R2DBC viene esclusa da {@link EsclusioneR2dbc}: non esistono
+ * né il pool R2DBC né i repository reattivi, e DataSource e transazioni restano quelli di Spring Boot.
+ *
+ * Quando trova una ConnectionFactory R2DBC, Spring Boot non crea più il DataSource JDBC
+ * e, registrato il gestore delle transazioni reattivo, salta anche quello JPA:
+ * li dichiariamo qui con le stesse proprietà spring.datasource.*, così JPA e @Transactional
+ * funzionano come prima e R2DBC serve solo le letture di DisponibilitaReattivaService.
+ */
+@Configuration
+@ConditionalOnProperty(name = "prenotazioni.lettura-reattiva.enabled", havingValue = "true")
+public class PersistenzaConfig {
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties dataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                                    ObjectProvider<TransactionManagerCustomizers> personalizzazioni) {
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+        personalizzazioni.ifAvailable(p -> p.customize(transactionManager));
+        return transactionManager;
+    }
+}
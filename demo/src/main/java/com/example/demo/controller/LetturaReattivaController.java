@@ -0,0 +1,88 @@
+package com.example.demo.controller;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.dto.DisponibilitaGiorno;
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.model.TipoPostazione;
+import com.example.demo.service.DisponibilitaReattivaService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Controller che espone le letture delle disponibilità e dello storico con R2DBC.
+ * Restituisce Flux e Mono: Spring MVC rilascia il thread della richiesta e scrive la risposta
+ * quando le query sono completate. Si attiva con prenotazioni.lettura-reattiva.enabled=true;
+ * le prenotazioni restano sugli endpoint di PrenotazioneController.
+ */
+@RestController
+@RequestMapping("/api/reattivo/prenotazioni")
+@ConditionalOnProperty(name = "prenotazioni.lettura-reattiva.enabled", havingValue = "true")
+public class LetturaReattivaController {
+
+    @Autowired
+    private DisponibilitaReattivaService disponibilitaReattivaService;
+
+    /**
+     * Ricerca le postazioni disponibili in base ai criteri specificati
+     * @param tipo il tipo di postazione richiesto
+     * @param citta la città dove cercare le postazioni
+     * @param data la data per cui verificare la disponibilità
+     * @return i riepiloghi delle postazioni disponibili, ordinati per codice
+     */
+    @GetMapping("/disponibili")
+    public Flux<RiepilogoPostazione> cercaPostazioniDisponibili(
+            @RequestParam TipoPostazione tipo,
+            @RequestParam String citta,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate data) {
+        return disponibilitaReattivaService.cercaDisponibili(tipo, citta, data);
+    }
+
+    /**
+     * Calendario delle disponibilità di una città su un intervallo di date
+     * @param citta la città degli edifici
+     * @param dal la prima data dell'intervallo (inclusa)
+     * @param al l'ultima data dell'intervallo (inclusa)
+     * @param tipi i tipi di postazione da considerare (opzionale, tutti se assente)
+     * @return postazioni e posti liberi per ogni edificio e giorno, messaggio di errore se l'intervallo non è valido
+     */
+    @GetMapping("/calendario")
+    public ResponseEntity<?> getCalendarioDisponibilita(
+            @RequestParam String citta,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dal,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate al,
+            @RequestParam(required = false) Set<TipoPostazione> tipi) {
+        try {
+            Flux<DisponibilitaGiorno> calendario = disponibilitaReattivaService.getCalendario(citta, dal, al, tipi);
+            return ResponseEntity.ok(calendario);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Recupera tutte le prenotazioni effettuate da un utente
+     * @param username username dell'utente di cui recuperare le prenotazioni
+     * @return lista dei riepiloghi delle prenotazioni dell'utente, messaggio di errore se l'utente non esiste
+     */
+    @GetMapping("/utente/{username}")
+    public Mono<ResponseEntity<?>> getPrenotazioniUtente(@PathVariable String username) {
+        return disponibilitaReattivaService.getRiepiloghiByUsername(username)
+            .collectList()
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .onErrorResume(IllegalArgumentException.class,
+                e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
+    }
+}
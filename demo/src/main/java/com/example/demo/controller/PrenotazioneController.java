@@ -2,23 +2,40 @@ package com.example.demo.controller;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.example.demo.dto.DisponibilitaGiorno;
+import com.example.demo.dto.EsitoPrenotazione;
+import com.example.demo.dto.Pagina;
 import com.example.demo.dto.PrenotazioneRequest;
-import com.example.demo.model.Postazione;
-import com.example.demo.model.Prenotazione;
+import com.example.demo.dto.PrenotazioneRicorrenteRequest;
+import com.example.demo.dto.RiepilogoPrenotazione;
 import com.example.demo.model.TipoPostazione;
+import com.example.demo.service.ArchivioIdempotenza;
+import com.example.demo.service.EsportazioneService;
+import com.example.demo.service.FlussoDisponibilita;
 import com.example.demo.service.PrenotazioneService;
+import com.example.demo.service.RisposteDisponibili;
+import com.example.demo.service.VersioniDisponibilita;
 
 /**
  * Controller che gestisce le operazioni relative alle prenotazioni delle postazioni.
@@ -35,48 +52,296 @@ public class PrenotazioneController {
     private PrenotazioneService prenotazioneService;
     
     /**
-     * Endpoint per effettuare una nuova prenotazione
+     * Service che esporta le prenotazioni in streaming
+     */
+    @Autowired
+    private EsportazioneService esportazioneService;
+    
+    /**
+     * Archivio delle risposte già inviate per chiave di idempotenza
+     */
+    @Autowired
+    private ArchivioIdempotenza archivioIdempotenza;
+    
+    /**
+     * Versioni delle disponibilità, da cui vengono calcolati gli ETag delle ricerche
+     */
+    @Autowired
+    private VersioniDisponibilita versioniDisponibilita;
+    
+    /**
+     * Flusso server-sent events delle variazioni di disponibilità
+     */
+    @Autowired
+    private FlussoDisponibilita flussoDisponibilita;
+    
+    /**
+     * Risposte già serializzate della ricerca delle postazioni disponibili
+     */
+    @Autowired
+    private RisposteDisponibili risposteDisponibili;
+    
+    /**
+     * Endpoint per effettuare una nuova prenotazione.
+     * Con l'header Idempotency-Key una richiesta ripetuta con la stessa chiave riceve la risposta
+     * della prima, senza creare o tentare una nuova prenotazione.
+     * Vengono memorizzati solo l'esito positivo e i rifiuti della richiesta: dopo un errore
+     * temporaneo, ad esempio del database, la stessa chiave può essere usata per riprovare.
      * @param request oggetto contenente username, codice postazione e data della prenotazione
-     * @return la prenotazione creata in caso di successo, messaggio di errore altrimenti
+     * @param chiaveIdempotenza chiave di idempotenza scelta dal client (opzionale)
+     * @return il riepilogo della prenotazione creata in caso di successo, messaggio di errore altrimenti
      */
     @PostMapping("/prenota")
-    public ResponseEntity<?> prenotaPostazione(@RequestBody PrenotazioneRequest request) {
+    public ResponseEntity<?> prenotaPostazione(
+            @RequestBody PrenotazioneRequest request,
+            @RequestHeader(name = ArchivioIdempotenza.HEADER, required = false) String chiaveIdempotenza) {
+        try {
+            if (chiaveIdempotenza != null) {
+                return archivioIdempotenza.esegui(chiaveIdempotenza, request, () -> prenota(request));
+            }
+            return prenota(request);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    /**
+     * Esegue la prenotazione: i conflitti e i dati non validi diventano una risposta 400,
+     * gli altri errori vengono propagati e non vengono memorizzati dall'archivio di idempotenza.
+     */
+    private ResponseEntity<?> prenota(PrenotazioneRequest request) {
         try {
-            Prenotazione prenotazione = prenotazioneService.prenotaPostazioneByUsername(
+            RiepilogoPrenotazione prenotazione = prenotazioneService.prenotaPostazioneByUsername(
                 request.getUsername(), 
                 request.getCodicePostazione(), 
                 request.getData()
             );
             return ResponseEntity.ok(prenotazione);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    /**
+     * Endpoint per effettuare più prenotazioni con un'unica richiesta
+     * @param richieste lista di richieste con username, codice postazione e data
+     * @param tuttoONiente se true, le prenotazioni vengono create solo se tutte le richieste sono valide
+     * @return l'esito di ogni richiesta; in modalità tutto-o-niente risponde 400 se almeno una è stata rifiutata,
+     *         messaggio di errore se le richieste sono troppe
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> prenotaBatch(
+            @RequestBody List<PrenotazioneRequest> richieste,
+            @RequestParam(defaultValue = "false") boolean tuttoONiente) {
+        List<EsitoPrenotazione> esiti;
+        try {
+            esiti = prenotazioneService.prenotaBatch(richieste, tuttoONiente);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        if (tuttoONiente && esiti.stream().anyMatch(e -> !e.isAccettata())) {
+            return ResponseEntity.badRequest().body(esiti);
+        }
+        return ResponseEntity.ok(esiti);
+    }
+    
+    /**
+     * Endpoint per prenotare una postazione su più date, ad esempio ogni martedì e giovedì di un trimestre
+     * @param richiesta utente, postazione, intervallo di date e giorni della settimana da prenotare
+     * @return l'esito di ogni data in caso di intervallo valido, messaggio di errore altrimenti
+     */
+    @PostMapping("/ricorrente")
+    public ResponseEntity<?> prenotaRicorrente(@RequestBody PrenotazioneRicorrenteRequest richiesta) {
+        try {
+            return ResponseEntity.ok(prenotazioneService.prenotaRicorrente(richiesta));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
     
     /**
-     * Ricerca le postazioni disponibili in base ai criteri specificati
+     * Ricerca le postazioni disponibili in base ai criteri specificati.
+     * La risposta porta un ETag che cambia a ogni prenotazione della città in quella data:
+     * se il client lo rimanda con If-None-Match e nulla è cambiato, risponde 304 senza eseguire query.
+     * Il corpo viene scritto così com'è dalla cache delle risposte già serializzate,
+     * compresso con gzip se il client lo accetta e la risposta è abbastanza grande.
+     * La versione compressa è una rappresentazione diversa e porta la versione debole dello stesso ETag,
+     * che il confronto di If-None-Match considera equivalente.
      * @param tipo il tipo di postazione richiesto (PRIVATO, OPENSPACE, SALA_RIUNIONI)
      * @param citta la città dove cercare le postazioni
      * @param data la data per cui verificare la disponibilità
-     * @return lista delle postazioni disponibili che soddisfano i criteri
+     * @param richiesta la richiesta HTTP, da cui vengono letti gli header If-None-Match e Accept-Encoding
+     * @return il JSON dei riepiloghi delle postazioni disponibili che soddisfano i criteri, 304 se non è cambiata
      */
     @GetMapping("/disponibili")
-    public ResponseEntity<List<Postazione>> cercaPostazioniDisponibili(
+    public ResponseEntity<byte[]> cercaPostazioniDisponibili(
             @RequestParam TipoPostazione tipo,
             @RequestParam String citta,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate data) {
-        List<Postazione> postazioni = prenotazioneService.cercaPostazioniDisponibili(tipo, citta, data);
-        return ResponseEntity.ok(postazioni);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate data,
+            WebRequest richiesta) {
+        // L'ETag va letto prima della ricerca, perché una prenotazione concorrente lo cambi dopo
+        String etag = versioniDisponibilita.getEtag(citta, data);
+        String etagDebole = "W/" + etag;
+        String inCache = etagInCache(richiesta.getHeaderValues(HttpHeaders.IF_NONE_MATCH), etag);
+        if (inCache != null) {
+            // Il 304 riporta la variante dell'ETag che il client ha in cache
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(inCache)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        RisposteDisponibili.Risposta risposta = risposteDisponibili.get(tipo, citta, data, etag);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().cacheControl(CacheControl.noCache())
+            .varyBy(HttpHeaders.ACCEPT_ENCODING).contentType(MediaType.APPLICATION_JSON);
+        if (risposta.gzip() != null
+                && RisposteDisponibili.accettaGzip(richiesta.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return builder.eTag(etagDebole).header(HttpHeaders.CONTENT_ENCODING, "gzip").body(risposta.gzip());
+        }
+        return builder.eTag(etag).body(risposta.json());
     }
     
     /**
-     * Recupera tutte le prenotazioni effettuate da un utente
+     * Confronta gli ETag di If-None-Match con quello corrente, senza distinguere le varianti deboli.
+     * @param ifNoneMatch i valori dell'header If-None-Match, null se assente
+     * @param etag l'ETag corrente
+     * @return la variante dell'ETag corrente inviata dal client, null se nessun ETag corrisponde
+     */
+    private static String etagInCache(String[] ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        for (String valore : ifNoneMatch) {
+            for (String candidato : valore.split(",")) {
+                String tag = candidato.trim();
+                if (tag.equals("*")) {
+                    return etag;
+                }
+                if (tag.equals(etag) || tag.equals("W/" + etag)) {
+                    return tag;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Iscrizione al flusso server-sent events delle variazioni di disponibilità.
+     * Ogni evento "disponibilita" indica una postazione prenotata o liberata in una data dell'intervallo.
+     * @param citta la città degli edifici (in alternativa a edificioId)
+     * @param edificioId l'ID dell'edificio (in alternativa a citta)
+     * @param dal la prima data dell'intervallo (inclusa)
+     * @param al l'ultima data dell'intervallo (inclusa)
+     * @return il flusso degli eventi, messaggio di errore se il filtro non è valido, 503 se ci sono troppi iscritti
+     */
+    @GetMapping("/flusso")
+    public ResponseEntity<?> iscriviFlusso(
+            @RequestParam(required = false) String citta,
+            @RequestParam(required = false) Long edificioId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dal,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate al) {
+        SseEmitter emitter = new SseEmitter(FlussoDisponibilita.SCADENZA.toMillis());
+        try {
+            flussoDisponibilita.iscrivi(emitter, citta, edificioId, dal, al);
+            return ResponseEntity.ok(emitter);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+    
+    /**
+     * Calendario delle disponibilità di una città su un intervallo di date
+     * @param citta la città degli edifici
+     * @param dal la prima data dell'intervallo (inclusa)
+     * @param al l'ultima data dell'intervallo (inclusa)
+     * @param tipi i tipi di postazione da considerare (opzionale, tutti se assente)
+     * @return postazioni e posti liberi per ogni edificio e giorno, messaggio di errore se l'intervallo non è valido
+     */
+    @GetMapping("/calendario")
+    public ResponseEntity<?> getCalendarioDisponibilita(
+            @RequestParam String citta,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dal,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate al,
+            @RequestParam(required = false) Set<TipoPostazione> tipi) {
+        try {
+            List<DisponibilitaGiorno> calendario = prenotazioneService.getCalendarioDisponibilita(citta, dal, al, tipi);
+            return ResponseEntity.ok(calendario);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    /**
+     * Recupera una pagina di prenotazioni, dalla più recente, con paginazione a cursore
+     * @param username username dell'utente (opzionale, tutte le prenotazioni se assente)
+     * @param dal prima data dell'intervallo (opzionale)
+     * @param al ultima data dell'intervallo (opzionale)
+     * @param cursore cursore restituito dalla pagina precedente (opzionale, prima pagina se assente)
+     * @param dimensione numero massimo di prenotazioni della pagina
+     * @return la pagina di prenotazioni con il cursore della successiva, messaggio di errore altrimenti
+     */
+    @GetMapping("/pagina")
+    public ResponseEntity<?> getPaginaPrenotazioni(
+            @RequestParam(required = false) String username,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dal,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate al,
+            @RequestParam(required = false) String cursore,
+            @RequestParam(defaultValue = "50") int dimensione) {
+        try {
+            Pagina<RiepilogoPrenotazione> pagina = prenotazioneService.getPaginaRiepiloghi(
+                username, dal, al, cursore, dimensione);
+            return ResponseEntity.ok(pagina);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    /**
+     * Esporta le prenotazioni di un intervallo di date in formato NDJSON o CSV.
+     * Le righe vengono scritte sulla risposta man mano che arrivano dal database.
+     * @param formato formato di esportazione (ndjson o csv)
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @return lo stream delle prenotazioni, messaggio di errore se formato o intervallo non sono validi
+     */
+    @GetMapping("/export")
+    public ResponseEntity<?> esportaPrenotazioni(
+            @RequestParam(defaultValue = "ndjson") String formato,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dal,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate al) {
+        EsportazioneService.Formato formatoEsportazione;
+        try {
+            formatoEsportazione = EsportazioneService.Formato.da(formato);
+            esportazioneService.verificaIntervallo(dal, al);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        
+        StreamingResponseBody corpo = output ->
+            esportazioneService.esportaPrenotazioni(formatoEsportazione, dal, al, output);
+        MediaType tipo = formatoEsportazione == EsportazioneService.Formato.CSV
+            ? new MediaType("text", "csv")
+            : MediaType.APPLICATION_NDJSON;
+        return ResponseEntity.ok().contentType(tipo).body(corpo);
+    }
+    
+    /**
+     * Recupera le prenotazioni effettuate da un utente, dalla più recente, con paginazione a cursore
      * @param username username dell'utente di cui recuperare le prenotazioni
-     * @return lista delle prenotazioni dell'utente specificato
+     * @param cursore cursore restituito dalla pagina precedente (opzionale, prima pagina se assente)
+     * @param dimensione numero massimo di prenotazioni della pagina
+     * @return la pagina dei riepiloghi delle prenotazioni dell'utente, messaggio di errore altrimenti
      */
     @GetMapping("/utente/{username}")
-    public ResponseEntity<List<Prenotazione>> getPrenotazioniUtente(@PathVariable String username) {
-        List<Prenotazione> prenotazioni = prenotazioneService.getPrenotazioniByUsername(username);
-        return ResponseEntity.ok(prenotazioni);
+    public ResponseEntity<?> getPrenotazioniUtente(
+            @PathVariable String username,
+            @RequestParam(required = false) String cursore,
+            @RequestParam(defaultValue = "50") int dimensione) {
+        try {
+            Pagina<RiepilogoPrenotazione> pagina = prenotazioneService.getPaginaRiepiloghi(
+                username, null, null, cursore, dimensione);
+            return ResponseEntity.ok(pagina);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.example.demo.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta la disponibilità di un edificio in una data.
+ * Utilizzata dal calendario delle disponibilità di una città.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DisponibilitaGiorno {
+    /**
+     * ID dell'edificio
+     */
+    private Long edificioId;
+
+    /**
+     * Nome dell'edificio
+     */
+    private String nomeEdificio;
+
+    /**
+     * Data a cui si riferisce la disponibilità
+     */
+    private LocalDate data;
+
+    /**
+     * Numero di postazioni non prenotate
+     */
+    private Long postazioniLibere;
+
+    /**
+     * Somma del numero massimo di occupanti delle postazioni non prenotate
+     */
+    private Long postiLiberi;
+}
@@ -0,0 +1,72 @@
+package com.example.demo.dto;
+
+import java.time.LocalDate;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta l'esito di una singola richiesta all'interno di una prenotazione multipla.
+ */
+@Data
+@NoArgsConstructor
+public class EsitoPrenotazione {
+    /**
+     * Posizione della richiesta nella lista inviata dal client
+     */
+    private int indice;
+
+    /**
+     * Username dell'utente indicato nella richiesta
+     */
+    private String username;
+
+    /**
+     * Codice della postazione indicato nella richiesta
+     */
+    private String codicePostazione;
+
+    /**
+     * Data indicata nella richiesta
+     */
+    private LocalDate data;
+
+    /**
+     * true se la prenotazione è stata creata
+     */
+    private boolean accettata;
+
+    /**
+     * ID della prenotazione creata, null se la richiesta è stata rifiutata
+     */
+    private Long prenotazioneId;
+
+    /**
+     * Motivo del rifiuto, null se la richiesta è stata accettata
+     */
+    private String messaggio;
+
+    /**
+     * Crea l'esito di una richiesta, inizialmente non accettata.
+     *
+     * @param indice posizione della richiesta nella lista
+     * @param richiesta la richiesta di prenotazione
+     */
+    public EsitoPrenotazione(int indice, PrenotazioneRequest richiesta) {
+        this.indice = indice;
+        this.username = richiesta.getUsername();
+        this.codicePostazione = richiesta.getCodicePostazione();
+        this.data = richiesta.getData();
+    }
+
+    /**
+     * Segna la richiesta come rifiutata.
+     *
+     * @param messaggio motivo del rifiuto
+     */
+    public void rifiuta(String messaggio) {
+        this.accettata = false;
+        this.prenotazioneId = null;
+        this.messaggio = messaggio;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta una pagina di risultati con paginazione a cursore.
+ * Il cursore identifica l'ultimo elemento restituito: la pagina successiva parte subito dopo,
+ * quindi il costo di una pagina non dipende da quante pagine la precedono.
+ *
+ * @param <T> il tipo degli elementi della pagina
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Pagina<T> {
+    /**
+     * Elementi della pagina
+     */
+    private List<T> elementi;
+
+    /**
+     * Cursore da passare per ottenere la pagina successiva, null se questa è l'ultima pagina
+     */
+    private String cursoreSuccessivo;
+}
@@ -0,0 +1,39 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta i dati di una postazione necessari al percorso di prenotazione,
+ * risolti a partire dal codice della postazione.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostazioneRisolta {
+    /**
+     * ID della postazione
+     */
+    private Long postazioneId;
+
+    /**
+     * ID dell'edificio della postazione
+     */
+    private Long edificioId;
+
+    /**
+     * Numero massimo di occupanti della postazione
+     */
+    private Integer numeroMassimoOccupanti;
+
+    /**
+     * Nome dell'edificio
+     */
+    private String nomeEdificio;
+
+    /**
+     * Città dell'edificio
+     */
+    private String citta;
+}
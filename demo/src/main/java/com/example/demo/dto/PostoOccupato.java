@@ -0,0 +1,37 @@
+package com.example.demo.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta un posto occupato da una prenotazione.
+ * Contiene solo le colonne necessarie a ricostruire l'occupazione di un edificio in una data,
+ * senza caricare le entità Prenotazione, Postazione ed Edificio.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostoOccupato {
+    /**
+     * ID dell'edificio in cui si trova la postazione prenotata
+     */
+    private Long edificioId;
+
+    /**
+     * Data della prenotazione
+     */
+    private LocalDate data;
+
+    /**
+     * ID della postazione prenotata
+     */
+    private Long postazioneId;
+
+    /**
+     * Numero massimo di occupanti della postazione prenotata
+     */
+    private Integer numeroMassimoOccupanti;
+}
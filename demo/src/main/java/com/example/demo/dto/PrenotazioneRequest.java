@@ -20,6 +20,11 @@ public class PrenotazioneRequest {
      */
     private String codicePostazione;
     
+    /**
+     * ID dell'edificio della postazione, necessario solo se il codice è usato in più edifici
+     */
+    private Long edificioId;
+    
     /**
      * Data per la quale si richiede la prenotazione
      */
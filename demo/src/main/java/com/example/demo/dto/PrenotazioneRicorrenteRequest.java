@@ -0,0 +1,39 @@
+package com.example.demo.dto;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Set;
+
+import lombok.Data;
+
+/**
+ * Classe DTO che rappresenta una richiesta di prenotazione ricorrente o su un intervallo di date.
+ * Ad esempio "ogni martedì e giovedì fino a fine trimestre" o "tutta la settimana del 12".
+ */
+@Data
+public class PrenotazioneRicorrenteRequest {
+    /**
+     * Username dell'utente che effettua la prenotazione
+     */
+    private String username;
+
+    /**
+     * Codice identificativo della postazione da prenotare
+     */
+    private String codicePostazione;
+
+    /**
+     * Prima data dell'intervallo (inclusa)
+     */
+    private LocalDate dataInizio;
+
+    /**
+     * Ultima data dell'intervallo (inclusa)
+     */
+    private LocalDate dataFine;
+
+    /**
+     * Giorni della settimana da prenotare; se vuoto vengono prenotati tutti i giorni dell'intervallo
+     */
+    private Set<DayOfWeek> giorniSettimana;
+}
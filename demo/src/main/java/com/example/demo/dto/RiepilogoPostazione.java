@@ -0,0 +1,51 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.TipoPostazione;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta una postazione nelle risposte REST.
+ * Contiene solo le colonne della postazione e del suo edificio, senza lo storico delle prenotazioni.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RiepilogoPostazione {
+    /**
+     * ID della postazione
+     */
+    private Long id;
+
+    /**
+     * Codice identificativo della postazione
+     */
+    private String codice;
+
+    /**
+     * Descrizione della postazione
+     */
+    private String descrizione;
+
+    /**
+     * Tipo della postazione
+     */
+    private TipoPostazione tipo;
+
+    /**
+     * Numero massimo di persone che possono occupare la postazione
+     */
+    private Integer numeroMassimoOccupanti;
+
+    /**
+     * Nome dell'edificio in cui si trova la postazione
+     */
+    private String nomeEdificio;
+
+    /**
+     * Città dell'edificio
+     */
+    private String citta;
+}
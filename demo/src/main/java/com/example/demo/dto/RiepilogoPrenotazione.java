@@ -0,0 +1,46 @@
+package com.example.demo.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta una prenotazione nelle risposte REST.
+ * Contiene solo i dati necessari a identificare utente, postazione ed edificio prenotati.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RiepilogoPrenotazione {
+    /**
+     * ID della prenotazione
+     */
+    private Long id;
+
+    /**
+     * Data della prenotazione
+     */
+    private LocalDate data;
+
+    /**
+     * Username dell'utente che ha effettuato la prenotazione
+     */
+    private String username;
+
+    /**
+     * Codice della postazione prenotata
+     */
+    private String codicePostazione;
+
+    /**
+     * Nome dell'edificio della postazione
+     */
+    private String nomeEdificio;
+
+    /**
+     * Città dell'edificio
+     */
+    private String citta;
+}
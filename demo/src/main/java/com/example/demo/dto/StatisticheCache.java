@@ -0,0 +1,41 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta le statistiche di una regione della cache di secondo livello.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatisticheCache {
+    /**
+     * Nome della regione
+     */
+    private String regione;
+
+    /**
+     * Letture servite dalla cache
+     */
+    private long hit;
+
+    /**
+     * Letture non trovate in cache e lette dal database
+     */
+    private long miss;
+
+    /**
+     * Elementi inseriti nella cache
+     */
+    private long inserimenti;
+
+    /**
+     * @return la percentuale di letture servite dalla cache, 0 se non ci sono state letture
+     */
+    public double getPercentualeHit() {
+        long letture = hit + miss;
+        return letture == 0 ? 0 : hit * 100.0 / letture;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta il numero di postazioni e di posti di un edificio.
+ * Popolata da una query aggregata sul catalogo delle postazioni.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TotaleEdificio {
+    /**
+     * ID dell'edificio
+     */
+    private Long edificioId;
+
+    /**
+     * Nome dell'edificio
+     */
+    private String nomeEdificio;
+
+    /**
+     * Numero di postazioni
+     */
+    private Long postazioni;
+
+    /**
+     * Somma del numero massimo di occupanti delle postazioni
+     */
+    private Long posti;
+}
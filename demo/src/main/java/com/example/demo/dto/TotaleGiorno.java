@@ -0,0 +1,36 @@
+package com.example.demo.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta le postazioni prenotate in un edificio in una data.
+ * Popolata da una query aggregata sulle prenotazioni, raggruppata per edificio e data.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TotaleGiorno {
+    /**
+     * ID dell'edificio
+     */
+    private Long edificioId;
+
+    /**
+     * Data delle prenotazioni
+     */
+    private LocalDate data;
+
+    /**
+     * Numero di postazioni prenotate
+     */
+    private Long postazioni;
+
+    /**
+     * Somma del numero massimo di occupanti delle postazioni prenotate
+     */
+    private Long posti;
+}
@@ -0,0 +1,26 @@
+package com.example.demo.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta una data già prenotata da un utente.
+ * Utilizzata per verificare con un'unica query i conflitti di più prenotazioni.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UtenteData {
+    /**
+     * ID dell'utente
+     */
+    private Long utenteId;
+
+    /**
+     * Data prenotata dall'utente
+     */
+    private LocalDate data;
+}
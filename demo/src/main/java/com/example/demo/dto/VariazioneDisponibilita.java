@@ -0,0 +1,46 @@
+package com.example.demo.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Classe DTO che rappresenta un evento del flusso delle disponibilità:
+ * una postazione è stata prenotata o liberata in una data.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VariazioneDisponibilita {
+    /**
+     * ID dell'edificio della postazione
+     */
+    private Long edificioId;
+
+    /**
+     * Città dell'edificio
+     */
+    private String citta;
+
+    /**
+     * ID della postazione
+     */
+    private Long postazioneId;
+
+    /**
+     * Codice della postazione
+     */
+    private String codicePostazione;
+
+    /**
+     * Data della prenotazione
+     */
+    private LocalDate data;
+
+    /**
+     * true se la postazione è stata prenotata, false se è stata liberata
+     */
+    private boolean prenotata;
+}
@@ -1,5 +1,6 @@
 package com.example.demo.model;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -7,6 +8,8 @@ import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 
 import java.util.List;
@@ -16,6 +19,9 @@ import java.util.List;
  * Contiene le informazioni di base di un edificio e la lista delle postazioni in esso contenute.
  */
 @Entity // Indica che questa classe è un'entità JPA
+// Gli edifici cambiano di rado: vengono letti dalla cache di secondo livello invece che dal database
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "edifici")
 @Data // Lombok: genera automaticamente getter, setter, equals, hashCode e toString
 @NoArgsConstructor // Lombok: genera un costruttore senza argomenti
 public class Edificio {
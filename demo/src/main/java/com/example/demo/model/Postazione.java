@@ -2,6 +2,8 @@ package com.example.demo.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.NoArgsConstructor;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
@@ -13,6 +15,11 @@ import java.util.List;
  * Può essere di tipo privato, open space o sala riunioni.
  */
 @Entity // Indica che questa classe è un'entità JPA
+// Piano di caricamento per i percorsi che mostrano anche l'edificio della postazione
+@NamedEntityGraph(name = "Postazione.edificio", attributeNodes = @NamedAttributeNode("edificio"))
+// Catalogo letto a ogni prenotazione e modificato raramente: conservato nella cache di secondo livello
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "postazioni")
 @Data // Lombok: genera automaticamente getter, setter, equals, hashCode e toString
 @NoArgsConstructor // Lombok: genera un costruttore senza argomenti
 public class Postazione {
@@ -48,9 +55,10 @@ public class Postazione {
     /**
      * Edificio in cui si trova la postazione
      * JsonBackReference gestisce la serializzazione bidirezionale evitando cicli infiniti
+     * Caricato solo su richiesta: i percorsi che ne hanno bisogno usano un entity graph o una fetch join
      */
     @JsonBackReference
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Edificio edificio;
     
     /**
@@ -12,10 +12,38 @@ import java.time.LocalDate;
  * Gestisce l'associazione tra un utente e una postazione per una data specifica.
  */
 @Entity // Indica che questa classe è un'entità JPA
+@Table(
+    // Una postazione può essere prenotata una sola volta al giorno e un utente può avere
+    // una sola prenotazione al giorno: i vincoli garantiscono entrambe le regole anche sotto concorrenza.
+    // L'indice del vincolo su (utente_id, data) serve anche la paginazione a cursore per utente.
+    uniqueConstraints = {
+        @UniqueConstraint(name = Prenotazione.VINCOLO_POSTAZIONE_DATA, columnNames = { "postazione_id", "data" }),
+        @UniqueConstraint(name = Prenotazione.VINCOLO_UTENTE_DATA, columnNames = { "utente_id", "data" })
+    },
+    // Indice per la paginazione a cursore su (data, id) di tutte le prenotazioni
+    indexes = @Index(name = "idx_prenotazione_data_id", columnList = "data, id")
+)
+// Piano di caricamento per i percorsi che mostrano utente, postazione ed edificio della prenotazione
+@NamedEntityGraph(name = "Prenotazione.dettaglio",
+    attributeNodes = {
+        @NamedAttributeNode("utente"),
+        @NamedAttributeNode(value = "postazione", subgraph = "postazione")
+    },
+    subgraphs = @NamedSubgraph(name = "postazione", attributeNodes = @NamedAttributeNode("edificio")))
 @Data // Lombok: genera automaticamente getter, setter, equals, hashCode e toString
 @NoArgsConstructor // Lombok: genera un costruttore senza argomenti
 public class Prenotazione {
     
+    /**
+     * Nome del vincolo di unicità su postazione e data
+     */
+    public static final String VINCOLO_POSTAZIONE_DATA = "uk_prenotazione_postazione_data";
+    
+    /**
+     * Nome del vincolo di unicità su utente e data
+     */
+    public static final String VINCOLO_UTENTE_DATA = "uk_prenotazione_utente_data";
+    
     /**
      * Identificatore univoco della prenotazione
      */
@@ -26,17 +54,19 @@ public class Prenotazione {
     /**
      * Utente che ha effettuato la prenotazione
      * JsonBackReference gestisce la serializzazione bidirezionale evitando cicli infiniti
+     * Caricato solo su richiesta: i percorsi che ne hanno bisogno usano un entity graph o una fetch join
      */
     @JsonBackReference
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Utente utente;
     
     /**
      * Postazione prenotata
      * JsonBackReference gestisce la serializzazione bidirezionale evitando cicli infiniti
+     * Caricata solo su richiesta: i percorsi che ne hanno bisogno usano un entity graph o una fetch join
      */
     @JsonBackReference
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Postazione postazione;
     
     /**
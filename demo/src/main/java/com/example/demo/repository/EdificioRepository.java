@@ -11,4 +11,12 @@ import org.springframework.data.jpa.repository.JpaRepository;
  * @param <Long> il tipo dell'identificatore dell'entità
  */
 public interface EdificioRepository extends JpaRepository<Edificio, Long> {
+
+    /**
+     * Verifica se esiste almeno un edificio nella città indicata.
+     *
+     * @param citta la città
+     * @return true se la città ha almeno un edificio
+     */
+    boolean existsByCitta(String citta);
 } 
\ No newline at end of file
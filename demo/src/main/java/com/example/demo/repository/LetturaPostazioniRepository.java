@@ -0,0 +1,52 @@
+package com.example.demo.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.dto.TotaleEdificio;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Repository reattivo R2DBC per le letture delle postazioni.
+ * Le query sono SQL nativo sulle stesse tabelle mappate da JPA, con gli alias delle colonne
+ * nel formato snake_case atteso dal mapping R2DBC dei DTO. Non esegue scritture.
+ */
+@Repository
+public interface LetturaPostazioniRepository extends R2dbcRepository<RiepilogoPostazione, Long> {
+
+    /**
+     * Come PostazioneRepository.findRiepiloghiDisponibili, senza bloccare il thread chiamante.
+     *
+     * @param tipo il nome del tipo di postazione richiesto
+     * @param citta la città in cui cercare le postazioni
+     * @param data la data per cui verificare la disponibilità
+     * @return i riepiloghi delle postazioni libere, ordinati per codice
+     */
+    @Query("SELECT p.id, p.codice, p.descrizione, p.tipo, p.numero_massimo_occupanti, " +
+           "e.nome AS nome_edificio, e.citta " +
+           "FROM postazione p JOIN edificio e ON e.id = p.edificio_id " +
+           "WHERE p.tipo = :tipo AND e.citta = :citta AND NOT EXISTS (" +
+           "SELECT 1 FROM prenotazione pr WHERE pr.postazione_id = p.id AND pr.data = :data) " +
+           "ORDER BY p.codice")
+    Flux<RiepilogoPostazione> findDisponibili(String tipo, String citta, LocalDate data);
+
+    /**
+     * Come PostazioneRepository.findTotaliByCittaAndTipi, senza bloccare il thread chiamante.
+     *
+     * @param citta la città degli edifici
+     * @param tipi i nomi dei tipi di postazione da considerare
+     * @return i totali di ogni edificio della città con almeno una postazione dei tipi indicati, ordinati per edificio
+     */
+    @Query("SELECT e.id AS edificio_id, e.nome AS nome_edificio, COUNT(p.id) AS postazioni, " +
+           "SUM(p.numero_massimo_occupanti) AS posti " +
+           "FROM postazione p JOIN edificio e ON e.id = p.edificio_id " +
+           "WHERE e.citta = :citta AND p.tipo IN (:tipi) " +
+           "GROUP BY e.id, e.nome ORDER BY e.id")
+    Flux<TotaleEdificio> findTotali(String citta, Collection<String> tipi);
+}
@@ -0,0 +1,61 @@
+package com.example.demo.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.dto.RiepilogoPrenotazione;
+import com.example.demo.dto.TotaleGiorno;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Repository reattivo R2DBC per le letture delle prenotazioni.
+ * Le prenotazioni vengono sempre scritte da PrenotazioneRepository con JPA.
+ */
+@Repository
+public interface LetturaPrenotazioniRepository extends R2dbcRepository<RiepilogoPrenotazione, Long> {
+
+    /**
+     * Recupera i riepiloghi delle prenotazioni di un utente, dalla più recente.
+     *
+     * @param username username dell'utente
+     * @return i riepiloghi delle prenotazioni dell'utente, vuoto anche se l'utente non esiste
+     */
+    @Query("SELECT p.id, p.data, u.username, po.codice AS codice_postazione, " +
+           "e.nome AS nome_edificio, e.citta " +
+           "FROM prenotazione p JOIN utente u ON u.id = p.utente_id " +
+           "JOIN postazione po ON po.id = p.postazione_id JOIN edificio e ON e.id = po.edificio_id " +
+           "WHERE u.username = :username ORDER BY p.data DESC, p.id DESC")
+    Flux<RiepilogoPrenotazione> findByUsername(String username);
+
+    /**
+     * Conta gli utenti con lo username indicato, per distinguere un utente senza prenotazioni da uno inesistente.
+     *
+     * @param username username dell'utente
+     * @return 1 se l'utente esiste, 0 altrimenti
+     */
+    @Query("SELECT COUNT(*) FROM utente WHERE username = :username")
+    Mono<Long> contaUtenti(String username);
+
+    /**
+     * Come PrenotazioneRepository.findTotaliPrenotati, senza bloccare il thread chiamante.
+     *
+     * @param citta la città degli edifici
+     * @param tipi i nomi dei tipi di postazione da considerare
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @return i totali prenotati per ogni edificio e data con almeno una prenotazione
+     */
+    @Query("SELECT e.id AS edificio_id, pr.data, COUNT(pr.id) AS postazioni, " +
+           "SUM(po.numero_massimo_occupanti) AS posti " +
+           "FROM prenotazione pr JOIN postazione po ON po.id = pr.postazione_id " +
+           "JOIN edificio e ON e.id = po.edificio_id " +
+           "WHERE e.citta = :citta AND po.tipo IN (:tipi) AND pr.data BETWEEN :dal AND :al " +
+           "GROUP BY e.id, pr.data")
+    Flux<TotaleGiorno> findTotaliPrenotati(String citta, Collection<String> tipi, LocalDate dal, LocalDate al);
+}
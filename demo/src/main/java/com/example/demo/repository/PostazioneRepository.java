@@ -1,18 +1,30 @@
 package com.example.demo.repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
+import com.example.demo.dto.PostazioneRisolta;
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.dto.TotaleEdificio;
 import com.example.demo.model.Postazione;
 import com.example.demo.model.TipoPostazione;
 
 /**
  * Repository per la gestione delle operazioni di persistenza delle Postazioni.
  * Estende JpaRepository per ereditare le operazioni CRUD di base e altre funzionalità JPA.
+ * Le letture del catalogo marcate come cacheable usano la query cache di Hibernate nella regione
+ * "query-catalogo": i risultati vengono invalidati automaticamente a ogni scrittura su postazioni o edifici.
  */
 @Repository
 public interface PostazioneRepository extends JpaRepository<Postazione, Long> {
@@ -25,22 +37,135 @@ public interface PostazioneRepository extends JpaRepository<Postazione, Long> {
      * @param citta la città in cui cercare le postazioni
      * @return lista delle postazioni che corrispondono ai criteri
      */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "query-catalogo")
+    })
     @Query("SELECT p FROM Postazione p WHERE p.tipo = :tipo AND p.edificio.citta = :citta")
     List<Postazione> findByTipoAndCitta(TipoPostazione tipo, String citta);
 
+    /**
+     * Trova una postazione tramite il suo ID, caricando anche il suo edificio.
+     * 
+     * @param id l'ID della postazione
+     * @return Optional contenente la postazione se trovata
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "query-catalogo")
+    })
+    @EntityGraph("Postazione.edificio")
+    Optional<Postazione> findConEdificioById(Long id);
+
+    /**
+     * Trova tutte le postazioni ordinate per codice, caricando anche l'edificio di ciascuna.
+     * 
+     * @return lista di tutte le postazioni
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "query-catalogo")
+    })
+    @EntityGraph("Postazione.edificio")
+    List<Postazione> findAllByOrderByCodice();
+
     /**
      * Trova una postazione tramite il suo codice univoco.
      * 
      * @param codice il codice della postazione da cercare
      * @return Optional contenente la postazione se trovata
      */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "query-catalogo")
+    })
     Optional<Postazione> findByCodice(String codice);
 
+    /**
+     * Risolve il codice di una postazione negli ID e nei dati usati dal percorso di prenotazione.
+     * 
+     * @param codice il codice della postazione
+     * @return Optional contenente i dati della postazione se trovata
+     */
+    @Query("SELECT new com.example.demo.dto.PostazioneRisolta(p.id, e.id, p.numeroMassimoOccupanti, e.nome, e.citta) " +
+           "FROM Postazione p JOIN p.edificio e WHERE p.codice = :codice")
+    Optional<PostazioneRisolta> findRisoltaByCodice(String codice);
+
+    /**
+     * Trova con un'unica query tutte le postazioni con uno dei codici specificati,
+     * caricando anche l'edificio di ciascuna.
+     * 
+     * @param codici i codici delle postazioni da cercare
+     * @return lista delle postazioni trovate
+     */
+    @Query("SELECT p FROM Postazione p JOIN FETCH p.edificio WHERE p.codice IN :codici")
+    List<Postazione> findByCodiceIn(Collection<String> codici);
+
     /**
      * Trova tutte le postazioni presenti in un determinato edificio.
      * 
      * @param edificioId l'ID dell'edificio di cui recuperare le postazioni
      * @return lista delle postazioni presenti nell'edificio
      */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "query-catalogo")
+    })
     List<Postazione> findByEdificioId(Long edificioId);
+
+    /**
+     * Trova le postazioni di un determinato tipo in una città che non hanno prenotazioni nella data indicata.
+     * La disponibilità viene verificata dal database con una NOT EXISTS, in un'unica query
+     * che carica anche l'edificio di ogni postazione.
+     * 
+     * @param tipo il tipo di postazione da cercare
+     * @param citta la città in cui cercare le postazioni
+     * @param data la data per cui verificare la disponibilità
+     * @return lista delle postazioni libere che corrispondono ai criteri
+     */
+    @Query("SELECT p FROM Postazione p JOIN FETCH p.edificio e " +
+           "WHERE p.tipo = :tipo AND e.citta = :citta AND NOT EXISTS (" +
+           "SELECT 1 FROM Prenotazione pr WHERE pr.postazione = p AND pr.data = :data)")
+    List<Postazione> findDisponibiliByTipoAndCittaAndData(TipoPostazione tipo, String citta, LocalDate data);
+
+    /**
+     * Come findDisponibiliByTipoAndCittaAndData, ma legge solo le colonne esposte dalle risposte REST.
+     * 
+     * @param tipo il tipo di postazione da cercare
+     * @param citta la città in cui cercare le postazioni
+     * @param data la data per cui verificare la disponibilità
+     * @return i riepiloghi delle postazioni libere, ordinati per codice
+     */
+    @Query("SELECT new com.example.demo.dto.RiepilogoPostazione(" +
+           "p.id, p.codice, p.descrizione, p.tipo, p.numeroMassimoOccupanti, e.nome, e.citta) " +
+           "FROM Postazione p JOIN p.edificio e " +
+           "WHERE p.tipo = :tipo AND e.citta = :citta AND NOT EXISTS (" +
+           "SELECT 1 FROM Prenotazione pr WHERE pr.postazione = p AND pr.data = :data) " +
+           "ORDER BY p.codice")
+    List<RiepilogoPostazione> findRiepiloghiDisponibili(TipoPostazione tipo, String citta, LocalDate data);
+
+    /**
+     * Calcola la capienza totale di un edificio sommando il numero massimo di occupanti delle sue postazioni.
+     * 
+     * @param edificioId l'ID dell'edificio
+     * @return la somma dei posti delle postazioni dell'edificio, 0 se non ha postazioni
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "query-catalogo")
+    })
+    @Query("SELECT COALESCE(SUM(p.numeroMassimoOccupanti), 0) FROM Postazione p WHERE p.edificio.id = :edificioId")
+    Long sommaPostiByEdificioId(Long edificioId);
+
+    /**
+     * Calcola per ogni edificio di una città il numero di postazioni e di posti dei tipi indicati.
+     * 
+     * @param citta la città degli edifici
+     * @param tipi i tipi di postazione da considerare
+     * @return i totali di ogni edificio della città con almeno una postazione dei tipi indicati
+     */
+    @Query("SELECT new com.example.demo.dto.TotaleEdificio(e.id, e.nome, COUNT(p), SUM(p.numeroMassimoOccupanti)) " +
+           "FROM Postazione p JOIN p.edificio e WHERE e.citta = :citta AND p.tipo IN :tipi " +
+           "GROUP BY e.id, e.nome ORDER BY e.id")
+    List<TotaleEdificio> findTotaliByCittaAndTipi(String citta, Collection<TipoPostazione> tipi);
 } 
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.example.demo.repository;
+
+import java.util.List;
+
+import com.example.demo.model.Prenotazione;
+
+/**
+ * Operazioni di persistenza massive sulle Prenotazioni, non coperte da JpaRepository.
+ * Implementata da PrenotazioneBatchRepositoryImpl e aggiunta a PrenotazioneRepository.
+ */
+public interface PrenotazioneBatchRepository {
+
+    /**
+     * Inserisce più prenotazioni con JDBC batch in un'unica transazione.
+     * Delle entità vengono usati solo gli ID di utente e postazione e la data.
+     * 
+     * @param prenotazioni le prenotazioni da inserire
+     * @return gli ID generati, nello stesso ordine delle prenotazioni
+     */
+    List<Long> inserisciInBatch(List<Prenotazione> prenotazioni);
+}
@@ -0,0 +1,62 @@
+package com.example.demo.repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.Prenotazione;
+
+/**
+ * Implementazione JDBC delle operazioni massive sulle Prenotazioni.
+ * Le prenotazioni usano ID di tipo IDENTITY, che impediscono a Hibernate di raggruppare gli insert:
+ * per questo gli insert vengono eseguiti direttamente con JDBC batch.
+ */
+public class PrenotazioneBatchRepositoryImpl implements PrenotazioneBatchRepository {
+
+    /**
+     * Numero massimo di insert inviati al database in un singolo batch
+     */
+    private static final int DIMENSIONE_BATCH = 500;
+
+    private static final String INSERT =
+        "INSERT INTO prenotazione (utente_id, postazione_id, data) VALUES (?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public List<Long> inserisciInBatch(List<Prenotazione> prenotazioni) {
+        if (prenotazioni.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            List<Long> ids = new ArrayList<>(prenotazioni.size());
+            try (PreparedStatement statement = connection.prepareStatement(INSERT, new String[] { "id" })) {
+                for (int i = 0; i < prenotazioni.size(); i++) {
+                    Prenotazione prenotazione = prenotazioni.get(i);
+                    statement.setLong(1, prenotazione.getUtente().getId());
+                    statement.setLong(2, prenotazione.getPostazione().getId());
+                    statement.setDate(3, Date.valueOf(prenotazione.getData()));
+                    statement.addBatch();
+                    if ((i + 1) % DIMENSIONE_BATCH == 0 || i == prenotazioni.size() - 1) {
+                        statement.executeBatch();
+                        try (ResultSet chiavi = statement.getGeneratedKeys()) {
+                            while (chiavi.next()) {
+                                ids.add(chiavi.getLong(1));
+                            }
+                        }
+                    }
+                }
+            }
+            return ids;
+        });
+    }
+}
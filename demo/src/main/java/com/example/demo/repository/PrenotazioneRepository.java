@@ -1,19 +1,34 @@
 package com.example.demo.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
+import com.example.demo.dto.PostoOccupato;
+import com.example.demo.dto.RiepilogoPrenotazione;
+import com.example.demo.dto.TotaleGiorno;
+import com.example.demo.dto.UtenteData;
 import com.example.demo.model.Prenotazione;
+import com.example.demo.model.TipoPostazione;
 
 /**
  * Repository per la gestione delle operazioni di persistenza delle Prenotazioni.
  * Estende JpaRepository per ereditare le operazioni CRUD di base e altre funzionalità JPA.
  */
 @Repository
-public interface PrenotazioneRepository extends JpaRepository<Prenotazione, Long> {
+public interface PrenotazioneRepository extends JpaRepository<Prenotazione, Long>, PrenotazioneBatchRepository {
     
     /**
      * Verifica se esiste già una prenotazione per una specifica postazione in una data.
@@ -25,28 +40,178 @@ public interface PrenotazioneRepository extends JpaRepository<Prenotazione, Long
     boolean existsByPostazioneIdAndData(Long postazioneId, LocalDate data);
     
     /**
-     * Verifica se un utente ha già una prenotazione per una specifica data.
+     * Recupera tutte le prenotazioni effettuate da un utente specifico.
      * 
-     * @param utenteId ID dell'utente da verificare
-     * @param data data per cui verificare le prenotazioni
-     * @return true se l'utente ha già una prenotazione per quella data, false altrimenti
+     * @param utenteId ID dell'utente di cui recuperare le prenotazioni
+     * @return lista delle prenotazioni dell'utente, con utente, postazione ed edificio già caricati
      */
-    boolean existsByUtenteIdAndData(Long utenteId, LocalDate data);
+    @EntityGraph("Prenotazione.dettaglio")
+    List<Prenotazione> findByUtenteId(Long utenteId);
     
     /**
-     * Recupera tutte le prenotazioni effettuate da un utente specifico.
+     * Recupera una prenotazione tramite il suo ID, caricando utente, postazione ed edificio.
      * 
-     * @param utenteId ID dell'utente di cui recuperare le prenotazioni
-     * @return lista delle prenotazioni dell'utente
+     * @param id ID della prenotazione
+     * @return Optional contenente la prenotazione se trovata
      */
-    List<Prenotazione> findByUtenteId(Long utenteId);
+    @EntityGraph("Prenotazione.dettaglio")
+    Optional<Prenotazione> findDettaglioById(Long id);
+    
+    /**
+     * Recupera i posti occupati di un edificio in una data, senza caricare le entità.
+     * 
+     * @param edificioId ID dell'edificio
+     * @param data data per cui recuperare i posti occupati
+     * @return lista dei posti occupati nell'edificio nella data specificata
+     */
+    @Query("SELECT new com.example.demo.dto.PostoOccupato(" +
+           "p.postazione.edificio.id, p.data, p.postazione.id, p.postazione.numeroMassimoOccupanti) " +
+           "FROM Prenotazione p WHERE p.postazione.edificio.id = :edificioId AND p.data = :data")
+    List<PostoOccupato> findPostiOccupati(Long edificioId, LocalDate data);
+    
+    /**
+     * Recupera i posti occupati di tutti gli edifici a partire da una data.
+     * Utilizzato per inizializzare l'indice delle occupazioni all'avvio.
+     * 
+     * @param data data a partire dalla quale recuperare i posti occupati (inclusa)
+     * @return lista dei posti occupati dalla data specificata in poi
+     */
+    @Query("SELECT new com.example.demo.dto.PostoOccupato(" +
+           "p.postazione.edificio.id, p.data, p.postazione.id, p.postazione.numeroMassimoOccupanti) " +
+           "FROM Prenotazione p WHERE p.data >= :data")
+    List<PostoOccupato> findPostiOccupatiDallaData(LocalDate data);
+    
+    /**
+     * Recupera i posti occupati di più edifici in più date con un'unica query.
+     * Restituisce tutte le combinazioni edificio-data presenti, il chiamante filtra quelle di interesse.
+     * 
+     * @param edificiIds ID degli edifici
+     * @param date date per cui recuperare i posti occupati
+     * @return lista dei posti occupati negli edifici nelle date specificate
+     */
+    @Query("SELECT new com.example.demo.dto.PostoOccupato(" +
+           "p.postazione.edificio.id, p.data, p.postazione.id, p.postazione.numeroMassimoOccupanti) " +
+           "FROM Prenotazione p WHERE p.postazione.edificio.id IN :edificiIds AND p.data IN :date")
+    List<PostoOccupato> findPostiOccupati(Collection<Long> edificiIds, Collection<LocalDate> date);
+    
+    /**
+     * Recupera le date già prenotate da più utenti tra quelle indicate, con un'unica query.
+     * 
+     * @param utentiIds ID degli utenti
+     * @param date date da verificare
+     * @return le coppie utente-data per cui esiste già una prenotazione
+     */
+    @Query("SELECT new com.example.demo.dto.UtenteData(p.utente.id, p.data) " +
+           "FROM Prenotazione p WHERE p.utente.id IN :utentiIds AND p.data IN :date")
+    List<UtenteData> findDatePrenotate(Collection<Long> utentiIds, Collection<LocalDate> date);
+    
+    /**
+     * Calcola con un'unica query raggruppata le postazioni prenotate per edificio e data
+     * in una città, per i tipi di postazione e l'intervallo di date indicati.
+     * 
+     * @param citta la città degli edifici
+     * @param tipi i tipi di postazione da considerare
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @return i totali prenotati per ogni edificio e data con almeno una prenotazione
+     */
+    @Query("SELECT new com.example.demo.dto.TotaleGiorno(e.id, pr.data, COUNT(pr), SUM(po.numeroMassimoOccupanti)) " +
+           "FROM Prenotazione pr JOIN pr.postazione po JOIN po.edificio e " +
+           "WHERE e.citta = :citta AND po.tipo IN :tipi AND pr.data BETWEEN :dal AND :al " +
+           "GROUP BY e.id, pr.data")
+    List<TotaleGiorno> findTotaliPrenotati(String citta, Collection<TipoPostazione> tipi,
+                                           LocalDate dal, LocalDate al);
+    
+    /**
+     * Recupera una pagina di prenotazioni in un intervallo di date, dalla più recente.
+     * La paginazione è a cursore su (data, id): vengono restituite solo le prenotazioni
+     * che nell'ordinamento seguono il cursore, sfruttando l'indice su (data, id).
+     * 
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @param cursoreData data dell'ultima prenotazione della pagina precedente
+     * @param cursoreId ID dell'ultima prenotazione della pagina precedente
+     * @param limite numero massimo di prenotazioni da restituire
+     * @return le prenotazioni della pagina, con utente, postazione ed edificio già caricati
+     */
+    @Query("SELECT p FROM Prenotazione p JOIN FETCH p.utente JOIN FETCH p.postazione po JOIN FETCH po.edificio " +
+           "WHERE p.data >= :dal AND p.data <= :al " +
+           "AND (p.data < :cursoreData OR (p.data = :cursoreData AND p.id < :cursoreId)) " +
+           "ORDER BY p.data DESC, p.id DESC")
+    List<Prenotazione> findPagina(LocalDate dal, LocalDate al, LocalDate cursoreData, Long cursoreId,
+                                  Limit limite);
+    
+    /**
+     * Recupera una pagina di prenotazioni di un utente in un intervallo di date, dalla più recente.
+     * La paginazione è a cursore su (data, id), sfruttando l'indice su (utente, data, id).
+     * 
+     * @param utenteId ID dell'utente
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @param cursoreData data dell'ultima prenotazione della pagina precedente
+     * @param cursoreId ID dell'ultima prenotazione della pagina precedente
+     * @param limite numero massimo di prenotazioni da restituire
+     * @return le prenotazioni della pagina, con utente, postazione ed edificio già caricati
+     */
+    @Query("SELECT p FROM Prenotazione p JOIN FETCH p.utente u JOIN FETCH p.postazione po JOIN FETCH po.edificio " +
+           "WHERE u.id = :utenteId AND p.data >= :dal AND p.data <= :al " +
+           "AND (p.data < :cursoreData OR (p.data = :cursoreData AND p.id < :cursoreId)) " +
+           "ORDER BY p.data DESC, p.id DESC")
+    List<Prenotazione> findPaginaByUtenteId(Long utenteId, LocalDate dal, LocalDate al,
+                                            LocalDate cursoreData, Long cursoreId, Limit limite);
+    
+    /**
+     * Come findPagina, ma legge solo le colonne esposte dalle risposte REST.
+     * 
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @param cursoreData data dell'ultima prenotazione della pagina precedente
+     * @param cursoreId ID dell'ultima prenotazione della pagina precedente
+     * @param limite numero massimo di prenotazioni da restituire
+     * @return i riepiloghi delle prenotazioni della pagina
+     */
+    @Query("SELECT new com.example.demo.dto.RiepilogoPrenotazione(p.id, p.data, u.username, po.codice, e.nome, e.citta) " +
+           "FROM Prenotazione p JOIN p.utente u JOIN p.postazione po JOIN po.edificio e " +
+           "WHERE p.data >= :dal AND p.data <= :al " +
+           "AND (p.data < :cursoreData OR (p.data = :cursoreData AND p.id < :cursoreId)) " +
+           "ORDER BY p.data DESC, p.id DESC")
+    List<RiepilogoPrenotazione> findRiepiloghiPagina(LocalDate dal, LocalDate al, LocalDate cursoreData,
+                                                     Long cursoreId, Limit limite);
+    
+    /**
+     * Come findPaginaByUtenteId, ma legge solo le colonne esposte dalle risposte REST.
+     * 
+     * @param utenteId ID dell'utente
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @param cursoreData data dell'ultima prenotazione della pagina precedente
+     * @param cursoreId ID dell'ultima prenotazione della pagina precedente
+     * @param limite numero massimo di prenotazioni da restituire
+     * @return i riepiloghi delle prenotazioni della pagina
+     */
+    @Query("SELECT new com.example.demo.dto.RiepilogoPrenotazione(p.id, p.data, u.username, po.codice, e.nome, e.citta) " +
+           "FROM Prenotazione p JOIN p.utente u JOIN p.postazione po JOIN po.edificio e " +
+           "WHERE u.id = :utenteId AND p.data >= :dal AND p.data <= :al " +
+           "AND (p.data < :cursoreData OR (p.data = :cursoreData AND p.id < :cursoreId)) " +
+           "ORDER BY p.data DESC, p.id DESC")
+    List<RiepilogoPrenotazione> findRiepiloghiPaginaByUtenteId(Long utenteId, LocalDate dal, LocalDate al,
+                                                               LocalDate cursoreData, Long cursoreId,
+                                                               Limit limite);
     
     /**
-     * Recupera tutte le prenotazioni per un edificio in una specifica data.
+     * Legge come stream le prenotazioni di un intervallo di date, in ordine di data e id.
+     * Le righe vengono lette dal database a blocchi (fetch size) e le entità sono in sola lettura:
+     * deve essere consumato all'interno di una transazione e chiuso al termine.
      * 
-     * @param edificioId ID dell'edificio di cui recuperare le prenotazioni
-     * @param data data per cui recuperare le prenotazioni
-     * @return lista delle prenotazioni per l'edificio nella data specificata
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @return stream delle prenotazioni, con utente, postazione ed edificio già caricati
      */
-    List<Prenotazione> findByPostazioneEdificioIdAndData(Long edificioId, LocalDate data);
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p FROM Prenotazione p JOIN FETCH p.utente JOIN FETCH p.postazione po JOIN FETCH po.edificio " +
+           "WHERE p.data >= :dal AND p.data <= :al ORDER BY p.data, p.id")
+    Stream<Prenotazione> streamByDataBetween(LocalDate dal, LocalDate al);
 } 
\ No newline at end of file
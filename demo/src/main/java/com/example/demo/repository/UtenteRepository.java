@@ -1,8 +1,11 @@
 package com.example.demo.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import com.example.demo.model.Utente;
 
@@ -20,6 +23,23 @@ public interface UtenteRepository extends JpaRepository<Utente, Long> {
      */
     Optional<Utente> findByUsername(String username);
     
+    /**
+     * Cerca l'ID di un utente tramite il suo username, senza caricare l'entità.
+     * 
+     * @param username lo username dell'utente da cercare
+     * @return Optional contenente l'ID dell'utente se trovato
+     */
+    @Query("SELECT u.id FROM Utente u WHERE u.username = :username")
+    Optional<Long> findIdByUsername(String username);
+    
+    /**
+     * Cerca con un'unica query tutti gli utenti con uno degli username specificati.
+     * 
+     * @param usernames gli username degli utenti da cercare
+     * @return lista degli utenti trovati
+     */
+    List<Utente> findByUsernameIn(Collection<String> usernames);
+    
     /**
      * Verifica se esiste già un utente con la email specificata.
      * 
@@ -0,0 +1,158 @@
+package com.example.demo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Archivio limitato delle chiavi di idempotenza recenti e delle risposte già inviate.
+ * Un client che ripete una richiesta con la stessa chiave riceve la risposta memorizzata,
+ * senza che l'operazione venga eseguita di nuovo; le richieste concorrenti con la stessa chiave
+ * attendono l'unica esecuzione in corso. Le risposte vengono memorizzate già serializzate in JSON
+ * (o come testo per i messaggi di errore) e le voci scadono dopo {@link #SCADENZA}.
+ */
+@Component
+public class ArchivioIdempotenza implements MeterBinder {
+
+    /**
+     * Nome dell'header con cui il client invia la chiave di idempotenza
+     */
+    public static final String HEADER = "Idempotency-Key";
+
+    /**
+     * Header aggiunto alle risposte ripetute dall'archivio
+     */
+    public static final String HEADER_RIPETUTA = "Idempotency-Replayed";
+
+    private static final int DIMENSIONE_MASSIMA = 100_000;
+
+    private static final int LUNGHEZZA_MASSIMA_CHIAVE = 255;
+
+    /**
+     * Tempo per cui un client può ripetere una richiesta ottenendo la stessa risposta
+     */
+    private static final Duration SCADENZA = Duration.ofHours(24);
+
+    /**
+     * Risposta memorizzata: stato HTTP, tipo e corpo già serializzato
+     */
+    private record Risposta(int stato, MediaType tipo, byte[] corpo) {
+    }
+
+    /**
+     * Voce dell'archivio: la richiesta a cui è associata la chiave e la sua risposta, anche ancora in corso
+     */
+    private record Voce(Object richiesta, CompletableFuture<Risposta> risposta) {
+    }
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Cache<String, Voce> voci = Caffeine.newBuilder()
+        .maximumSize(DIMENSIONE_MASSIMA)
+        .expireAfterWrite(SCADENZA)
+        .recordStats()
+        .build();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, voci, "idempotenza");
+    }
+
+    /**
+     * Esegue un'operazione una sola volta per chiave di idempotenza.
+     * La prima richiesta con una chiave esegue l'operazione e ne riceve la risposta; le successive,
+     * anche concorrenti, ricevono la stessa risposta ricostruita dall'archivio.
+     * Se l'operazione solleva un'eccezione o risponde con un errore 5xx la chiave viene liberata
+     * e la richiesta potrà essere ripetuta.
+     *
+     * @param chiave la chiave di idempotenza inviata dal client
+     * @param richiesta il corpo della richiesta, confrontato con equals con quello della prima richiesta
+     * @param operazione l'operazione da eseguire
+     * @return la risposta dell'operazione, 422 se la chiave è già stata usata per una richiesta diversa,
+     *         400 se la chiave non è valida
+     */
+    public ResponseEntity<?> esegui(String chiave, Object richiesta, Supplier<ResponseEntity<?>> operazione) {
+        if (chiave.isBlank() || chiave.length() > LUNGHEZZA_MASSIMA_CHIAVE) {
+            return ResponseEntity.badRequest()
+                .body("Chiave di idempotenza non valida (massimo " + LUNGHEZZA_MASSIMA_CHIAVE + " caratteri)");
+        }
+        Voce nuova = new Voce(richiesta, new CompletableFuture<>());
+        // putIfAbsent e non get con caricamento: l'operazione non viene eseguita sotto il lock interno di Caffeine
+        Voce esistente = voci.asMap().putIfAbsent(chiave, nuova);
+        if (esistente != null) {
+            if (!esistente.richiesta().equals(richiesta)) {
+                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body("Chiave di idempotenza già usata per una richiesta diversa");
+            }
+            return ripeti(esistente);
+        }
+
+        ResponseEntity<?> risposta;
+        try {
+            risposta = operazione.get();
+            if (risposta.getStatusCode().is5xxServerError()) {
+                // Errore del server: la risposta non è definitiva e la richiesta potrà essere ripetuta
+                voci.asMap().remove(chiave, nuova);
+            }
+            nuova.risposta().complete(serializza(risposta));
+        } catch (RuntimeException e) {
+            voci.asMap().remove(chiave, nuova);
+            nuova.risposta().completeExceptionally(e);
+            throw e;
+        }
+        return risposta;
+    }
+
+    /**
+     * Attende la risposta della prima richiesta con la stessa chiave e la restituisce.
+     */
+    private ResponseEntity<?> ripeti(Voce voce) {
+        Risposta risposta;
+        try {
+            risposta = voce.risposta().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException causa ? causa : e;
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(risposta.stato())
+            .header(HEADER_RIPETUTA, "true");
+        if (risposta.corpo() == null) {
+            return builder.build();
+        }
+        return builder.contentType(risposta.tipo()).body(risposta.corpo());
+    }
+
+    private Risposta serializza(ResponseEntity<?> risposta) {
+        Object corpo = risposta.getBody();
+        int stato = risposta.getStatusCode().value();
+        if (corpo == null) {
+            return new Risposta(stato, null, null);
+        }
+        if (corpo instanceof String testo) {
+            return new Risposta(stato, new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8),
+                testo.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            return new Risposta(stato, MediaType.APPLICATION_JSON, objectMapper.writeValueAsBytes(corpo));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Impossibile memorizzare la risposta", e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.dto.StatisticheCache;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Service che espone le statistiche della cache di secondo livello del catalogo
+ * e permette di svuotarla.
+ * Le scritture eseguite tramite JPA (ad esempio addPostazione e deletePostazione) aggiornano
+ * la cache automaticamente; lo svuotamento serve solo dopo scritture eseguite direttamente via JDBC.
+ */
+@Service
+public class CatalogoCacheService {
+
+    /**
+     * Regioni delle entità del catalogo, configurate in application.conf
+     */
+    private static final List<String> REGIONI_ENTITA = List.of("edifici", "postazioni");
+
+    /**
+     * Regione della query cache usata dalle letture del catalogo
+     */
+    public static final String REGIONE_QUERY = "query-catalogo";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Restituisce hit, miss e inserimenti di ogni regione del catalogo.
+     * I contatori sono valorizzati solo con hibernate.generate_statistics attivo (profilo di test).
+     *
+     * @return le statistiche delle regioni delle entità e della query cache del catalogo
+     */
+    public List<StatisticheCache> getStatistiche() {
+        Statistics statistics = getSessionFactory().getStatistics();
+        List<StatisticheCache> risultato = new ArrayList<>();
+        for (String regione : REGIONI_ENTITA) {
+            risultato.add(converti(regione, statistics.getDomainDataRegionStatistics(regione)));
+        }
+        risultato.add(converti(REGIONE_QUERY, statistics.getQueryRegionStatistics(REGIONE_QUERY)));
+        return risultato;
+    }
+
+    /**
+     * Svuota tutte le regioni del catalogo.
+     */
+    public void svuota() {
+        SessionFactory sessionFactory = getSessionFactory();
+        REGIONI_ENTITA.forEach(regione -> sessionFactory.getCache().evictRegion(regione));
+        sessionFactory.getCache().evictQueryRegion(REGIONE_QUERY);
+    }
+
+    private StatisticheCache converti(String regione, CacheRegionStatistics statistiche) {
+        if (statistiche == null) {
+            return new StatisticheCache(regione, 0, 0, 0);
+        }
+        return new StatisticheCache(regione, statistiche.getHitCount(), statistiche.getMissCount(),
+            statistiche.getPutCount());
+    }
+
+    private SessionFactory getSessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+}
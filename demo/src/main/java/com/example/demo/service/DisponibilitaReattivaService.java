@@ -0,0 +1,103 @@
+package com.example.demo.service;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.dto.DisponibilitaGiorno;
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.dto.RiepilogoPrenotazione;
+import com.example.demo.dto.TotaleEdificio;
+import com.example.demo.dto.TotaleGiorno;
+import com.example.demo.model.TipoPostazione;
+import com.example.demo.repository.LetturaPostazioniRepository;
+import com.example.demo.repository.LetturaPrenotazioniRepository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service di sola lettura che calcola disponibilità, calendario e storico di un utente
+ * con i repository R2DBC, senza occupare un thread per richiesta durante le query.
+ * Le prenotazioni vengono sempre scritte da PrenotazioneService con JPA; a differenza di quest'ultimo
+ * il calendario viene calcolato solo dal database, senza l'indice delle occupazioni in memoria.
+ */
+@Service
+@ConditionalOnProperty(name = "prenotazioni.lettura-reattiva.enabled", havingValue = "true")
+public class DisponibilitaReattivaService {
+
+    @Autowired
+    private LetturaPostazioniRepository letturaPostazioniRepository;
+
+    @Autowired
+    private LetturaPrenotazioniRepository letturaPrenotazioniRepository;
+
+    /**
+     * Cerca le postazioni disponibili per tipo e città in una data specifica.
+     *
+     * @param tipo Tipo di postazione
+     * @param citta Città
+     * @param data Data per cui verificare la disponibilità
+     * @return i riepiloghi delle postazioni disponibili, ordinati per codice
+     */
+    public Flux<RiepilogoPostazione> cercaDisponibili(TipoPostazione tipo, String citta, LocalDate data) {
+        return letturaPostazioniRepository.findDisponibili(tipo.name(), citta, data);
+    }
+
+    /**
+     * Calcola per ogni edificio di una città e per ogni giorno di un intervallo
+     * il numero di postazioni libere e i posti liberi, con una query per i totali degli edifici
+     * e una per i totali prenotati, eseguite in parallelo.
+     *
+     * @param citta Città degli edifici
+     * @param dal Prima data dell'intervallo (inclusa)
+     * @param al Ultima data dell'intervallo (inclusa)
+     * @param tipi Tipi di postazione da considerare (opzionale, tutti se vuoto)
+     * @return La disponibilità di ogni edificio per ogni giorno, ordinata per edificio e data
+     * @throws IllegalArgumentException se l'intervallo di date non è valido, prima di eseguire qualsiasi query
+     */
+    public Flux<DisponibilitaGiorno> getCalendario(String citta, LocalDate dal, LocalDate al,
+                                                   Set<TipoPostazione> tipi) {
+        PrenotazioneService.verificaIntervallo(dal, al);
+        Set<TipoPostazione> tipiRicerca = tipi == null || tipi.isEmpty() ? EnumSet.allOf(TipoPostazione.class) : tipi;
+        List<String> nomiTipi = tipiRicerca.stream().map(TipoPostazione::name).collect(Collectors.toList());
+        List<LocalDate> giorni = dal.datesUntil(al.plusDays(1)).collect(Collectors.toList());
+
+        Mono<List<TotaleEdificio>> totali = letturaPostazioniRepository.findTotali(citta, nomiTipi).collectList();
+        Mono<Map<OccupancyIndex.Chiave, TotaleGiorno>> prenotati = letturaPrenotazioniRepository
+            .findTotaliPrenotati(citta, nomiTipi, dal, al)
+            .collectMap(t -> new OccupancyIndex.Chiave(t.getEdificioId(), t.getData()));
+
+        return Mono.zip(totali, prenotati).flatMapIterable(risultati -> risultati.getT1().stream()
+            .flatMap(totale -> giorni.stream().map(giorno -> {
+                TotaleGiorno prenotato =
+                    risultati.getT2().get(new OccupancyIndex.Chiave(totale.getEdificioId(), giorno));
+                long postazioniPrenotate = prenotato != null ? prenotato.getPostazioni() : 0;
+                long postiPrenotati = prenotato != null ? prenotato.getPosti() : 0;
+                return new DisponibilitaGiorno(totale.getEdificioId(), totale.getNomeEdificio(), giorno,
+                    totale.getPostazioni() - postazioniPrenotate, totale.getPosti() - postiPrenotati);
+            }))
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Recupera i riepiloghi delle prenotazioni di un utente, dalla più recente.
+     * L'esistenza dell'utente viene verificata solo se non ha prenotazioni.
+     *
+     * @param username Username dell'utente
+     * @return i riepiloghi delle prenotazioni, o un errore IllegalArgumentException se l'utente non esiste
+     */
+    public Flux<RiepilogoPrenotazione> getRiepiloghiByUsername(String username) {
+        return letturaPrenotazioniRepository.findByUsername(username)
+            .switchIfEmpty(letturaPrenotazioniRepository.contaUtenti(username)
+                .filter(utenti -> utenti == 0)
+                .flatMapMany(utenti -> Flux.error(new IllegalArgumentException("Utente non trovato: " + username))));
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.Prenotazione;
+import com.example.demo.repository.PrenotazioneRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Service che gestisce l'esportazione delle prenotazioni in formato NDJSON o CSV.
+ * Le prenotazioni vengono lette come stream e scritte man mano che arrivano dal database,
+ * così che la memoria utilizzata non dipenda dal numero di righe esportate.
+ */
+@Service
+public class EsportazioneService {
+
+    /**
+     * Numero di righe scritte dopo il quale il contesto di persistenza viene svuotato
+     */
+    private static final int RIGHE_PER_BLOCCO = 1000;
+
+    private static final String INTESTAZIONE_CSV = "id,data,username,codicePostazione,edificio,citta";
+
+    /**
+     * Formati di esportazione supportati
+     */
+    public enum Formato {
+        NDJSON,
+        CSV;
+
+        /**
+         * Converte il nome di un formato, senza distinzione tra maiuscole e minuscole.
+         *
+         * @param nome nome del formato
+         * @return il formato corrispondente
+         * @throws IllegalArgumentException se il formato non è supportato
+         */
+        public static Formato da(String nome) {
+            for (Formato formato : values()) {
+                if (formato.name().equalsIgnoreCase(nome)) {
+                    return formato;
+                }
+            }
+            throw new IllegalArgumentException("Formato di esportazione non supportato: " + nome);
+        }
+    }
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Verifica l'intervallo di date di un'esportazione.
+     * Va chiamato prima di iniziare a scrivere la risposta, quando è ancora possibile restituire un errore.
+     *
+     * @param dal prima data dell'intervallo
+     * @param al ultima data dell'intervallo
+     * @throws IllegalArgumentException se l'intervallo non è valido
+     */
+    public void verificaIntervallo(LocalDate dal, LocalDate al) {
+        if (al.isBefore(dal)) {
+            throw new IllegalArgumentException("Intervallo di date non valido");
+        }
+    }
+
+    /**
+     * Scrive sullo stream di output le prenotazioni di un intervallo di date, in ordine di data.
+     * Ogni RIGHE_PER_BLOCCO righe l'output viene svuotato e le entità già scritte vengono
+     * rimosse dal contesto di persistenza.
+     *
+     * @param formato formato di esportazione
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @param output stream su cui scrivere le prenotazioni
+     * @return il numero di prenotazioni esportate
+     * @throws IOException se la scrittura sull'output fallisce
+     * @throws IllegalArgumentException se l'intervallo di date non è valido
+     */
+    @Transactional(readOnly = true)
+    public long esportaPrenotazioni(Formato formato, LocalDate dal, LocalDate al, OutputStream output)
+            throws IOException {
+        verificaIntervallo(dal, al);
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        JsonGenerator json = objectMapper.getFactory().createGenerator(writer);
+        // Ogni oggetto termina già con un a capo: senza separatore le righe non iniziano con uno spazio
+        json.setRootValueSeparator(null);
+        if (formato == Formato.CSV) {
+            writer.write(INTESTAZIONE_CSV);
+            writer.write('\n');
+        }
+
+        long righe = 0;
+        try (Stream<Prenotazione> prenotazioni = prenotazioneRepository.streamByDataBetween(dal, al)) {
+            Iterator<Prenotazione> iteratore = prenotazioni.iterator();
+            while (iteratore.hasNext()) {
+                Prenotazione prenotazione = iteratore.next();
+                if (formato == Formato.CSV) {
+                    scriviCsv(prenotazione, writer);
+                } else {
+                    scriviJson(prenotazione, json);
+                }
+                if (++righe % RIGHE_PER_BLOCCO == 0) {
+                    json.flush();
+                    writer.flush();
+                    entityManager.clear();
+                }
+            }
+        }
+        json.flush();
+        writer.flush();
+        return righe;
+    }
+
+    /**
+     * Scrive una prenotazione come oggetto JSON su una singola riga.
+     */
+    private void scriviJson(Prenotazione prenotazione, JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", prenotazione.getId());
+        json.writeStringField("data", prenotazione.getData().toString());
+        json.writeStringField("username", prenotazione.getUtente().getUsername());
+        json.writeStringField("codicePostazione", prenotazione.getPostazione().getCodice());
+        json.writeStringField("edificio", prenotazione.getPostazione().getEdificio().getNome());
+        json.writeStringField("citta", prenotazione.getPostazione().getEdificio().getCitta());
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    /**
+     * Scrive una prenotazione come riga CSV.
+     */
+    private void scriviCsv(Prenotazione prenotazione, Writer writer) throws IOException {
+        writer.write(String.valueOf(prenotazione.getId()));
+        writer.write(',');
+        writer.write(prenotazione.getData().toString());
+        writer.write(',');
+        writer.write(campoCsv(prenotazione.getUtente().getUsername()));
+        writer.write(',');
+        writer.write(campoCsv(prenotazione.getPostazione().getCodice()));
+        writer.write(',');
+        writer.write(campoCsv(prenotazione.getPostazione().getEdificio().getNome()));
+        writer.write(',');
+        writer.write(campoCsv(prenotazione.getPostazione().getEdificio().getCitta()));
+        writer.write('\n');
+    }
+
+    /**
+     * Racchiude tra virgolette un campo CSV se contiene separatori, virgolette, a capo o ritorni a capo.
+     */
+    private String campoCsv(String valore) {
+        if (valore == null) {
+            return "";
+        }
+        if (valore.contains(",") || valore.contains("\"") || valore.contains("\n") || valore.contains("\r")) {
+            return "\"" + valore.replace("\"", "\"\"") + "\"";
+        }
+        return valore;
+    }
+}
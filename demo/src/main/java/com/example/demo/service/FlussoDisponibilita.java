@@ -0,0 +1,261 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.demo.dto.VariazioneDisponibilita;
+import com.example.demo.repository.EdificioRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Flusso server-sent events delle variazioni di disponibilità, per città o per edificio e intervallo di date.
+ * Gli iscritti sono indicizzati per città e per edificio, così una pubblicazione visita solo quelli interessati;
+ * un iscritto inattivo occupa solo la sua connessione asincrona, senza thread.
+ * Il gruppo di una città o di un edificio viene eliminato quando se ne va l'ultimo iscritto,
+ * e ci si può iscrivere solo a città ed edifici esistenti: le mappe non crescono con filtri arbitrari.
+ *
+ * Ogni iscritto ha un buffer di eventi in attesa in cui una nuova variazione della stessa postazione
+ * nella stessa data sostituisce la precedente: il client riceve comunque lo stato più recente.
+ * Il buffer viene svuotato su un thread virtuale, mai sul thread che ha eseguito la prenotazione;
+ * un iscritto che accumula più di {@link #MAX_IN_ATTESA} postazioni diverse viene disconnesso
+ * e dovrà rileggere le disponibilità alla riconnessione.
+ */
+@Component
+public class FlussoDisponibilita implements MeterBinder {
+
+    /**
+     * Durata massima di una connessione, dopo cui il client si riconnette
+     */
+    public static final Duration SCADENZA = Duration.ofMinutes(30);
+
+    private static final int MAX_ISCRITTI = 10_000;
+
+    private static final int MAX_IN_ATTESA = 256;
+
+    private static final String EVENTO = "disponibilita";
+
+    @Autowired
+    private EdificioRepository edificioRepository;
+
+    private final Map<String, Set<Iscrizione>> perCitta = new ConcurrentHashMap<>();
+
+    private final Map<Long, Set<Iscrizione>> perEdificio = new ConcurrentHashMap<>();
+
+    private final AtomicInteger iscritti = new AtomicInteger();
+
+    private final ExecutorService invio = Executors.newVirtualThreadPerTaskExecutor();
+
+    private Counter disconnessi;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("prenotazioni.flusso.iscritti", iscritti, AtomicInteger::get)
+            .description("Client iscritti al flusso delle disponibilità")
+            .register(registry);
+        disconnessi = Counter.builder("prenotazioni.flusso.disconnessi")
+            .description("Iscritti disconnessi perché non ricevevano gli eventi abbastanza velocemente")
+            .register(registry);
+    }
+
+    /**
+     * Iscrive un client alle variazioni di una città o di un edificio in un intervallo di date.
+     *
+     * @param emitter la connessione su cui inviare gli eventi
+     * @param citta città degli edifici (alternativa a edificioId)
+     * @param edificioId ID dell'edificio (alternativa a citta)
+     * @param dal prima data dell'intervallo (inclusa)
+     * @param al ultima data dell'intervallo (inclusa)
+     * @throws IllegalArgumentException se il filtro non è valido o la città o l'edificio non esistono
+     * @throws IllegalStateException se è stato raggiunto il numero massimo di iscritti
+     */
+    public void iscrivi(SseEmitter emitter, String citta, Long edificioId, LocalDate dal, LocalDate al) {
+        if ((citta == null) == (edificioId == null)) {
+            throw new IllegalArgumentException("Specificare una città o un edificio");
+        }
+        PrenotazioneService.verificaIntervallo(dal, al);
+        if (citta != null ? !edificioRepository.existsByCitta(citta) : !edificioRepository.existsById(edificioId)) {
+            throw new IllegalArgumentException(citta != null ? "Città non trovata: " + citta
+                : "Edificio non trovato: " + edificioId);
+        }
+        if (iscritti.incrementAndGet() > MAX_ISCRITTI) {
+            iscritti.decrementAndGet();
+            throw new IllegalStateException("Numero massimo di iscritti al flusso raggiunto");
+        }
+        Iscrizione iscrizione = new Iscrizione(emitter, citta, edificioId, dal, al);
+        // L'aggiunta avviene dentro compute, come la rimozione in Iscrizione.rimuovi: un gruppo appena
+        // svuotato ed eliminato non può ricevere un nuovo iscritto dopo essere uscito dalla mappa
+        if (citta != null) {
+            perCitta.compute(citta, (c, gruppo) -> aggiungi(gruppo, iscrizione));
+        } else {
+            perEdificio.compute(edificioId, (e, gruppo) -> aggiungi(gruppo, iscrizione));
+        }
+        emitter.onCompletion(iscrizione::rimuovi);
+        emitter.onTimeout(iscrizione::rimuovi);
+        emitter.onError(errore -> iscrizione.rimuovi());
+    }
+
+    /**
+     * Pubblica una variazione agli iscritti interessati. Non blocca: gli eventi vengono inviati
+     * in modo asincrono. Va chiamato dopo che la modifica è stata salvata.
+     *
+     * @param variazione la postazione prenotata o liberata
+     */
+    public void pubblica(VariazioneDisponibilita variazione) {
+        if (iscritti.get() == 0) {
+            return;
+        }
+        offri(perCitta.get(variazione.getCitta()), variazione);
+        offri(perEdificio.get(variazione.getEdificioId()), variazione);
+    }
+
+    /**
+     * @return il numero di client iscritti
+     */
+    public int getNumeroIscritti() {
+        return iscritti.get();
+    }
+
+    @PreDestroy
+    void chiudi() {
+        perCitta.values().forEach(gruppo -> gruppo.forEach(iscrizione -> iscrizione.emitter.complete()));
+        perEdificio.values().forEach(gruppo -> gruppo.forEach(iscrizione -> iscrizione.emitter.complete()));
+        invio.shutdownNow();
+    }
+
+    private static Set<Iscrizione> aggiungi(Set<Iscrizione> gruppo, Iscrizione iscrizione) {
+        Set<Iscrizione> risultato = gruppo != null ? gruppo : ConcurrentHashMap.newKeySet();
+        risultato.add(iscrizione);
+        return risultato;
+    }
+
+    private void offri(Set<Iscrizione> gruppo, VariazioneDisponibilita variazione) {
+        if (gruppo == null) {
+            return;
+        }
+        for (Iscrizione iscrizione : gruppo) {
+            if (!variazione.getData().isBefore(iscrizione.dal) && !variazione.getData().isAfter(iscrizione.al)) {
+                iscrizione.offri(variazione);
+            }
+        }
+    }
+
+    /**
+     * Un client iscritto e i suoi eventi in attesa di invio
+     */
+    private class Iscrizione {
+
+        private record Chiave(Long postazioneId, LocalDate data) {
+        }
+
+        private final SseEmitter emitter;
+        private final String citta;
+        private final Long edificioId;
+        private final LocalDate dal;
+        private final LocalDate al;
+
+        private final Map<Chiave, VariazioneDisponibilita> inAttesa = new LinkedHashMap<>();
+        private boolean inInvio;
+        private boolean rimossa;
+
+        Iscrizione(SseEmitter emitter, String citta, Long edificioId, LocalDate dal, LocalDate al) {
+            this.emitter = emitter;
+            this.citta = citta;
+            this.edificioId = edificioId;
+            this.dal = dal;
+            this.al = al;
+        }
+
+        void offri(VariazioneDisponibilita variazione) {
+            synchronized (this) {
+                if (rimossa) {
+                    return;
+                }
+                Chiave chiave = new Chiave(variazione.getPostazioneId(), variazione.getData());
+                if (inAttesa.size() < MAX_IN_ATTESA || inAttesa.containsKey(chiave)) {
+                    // La variazione più recente della stessa postazione e data sostituisce quella in attesa
+                    inAttesa.remove(chiave);
+                    inAttesa.put(chiave, variazione);
+                    if (inInvio) {
+                        return;
+                    }
+                    inInvio = true;
+                    invio.execute(this::invia);
+                    return;
+                }
+            }
+            // Il client non riceve gli eventi abbastanza velocemente
+            disconnessi.increment();
+            rimuovi();
+            emitter.complete();
+        }
+
+        /**
+         * Invia gli eventi in attesa finché il buffer non resta vuoto.
+         */
+        private void invia() {
+            while (true) {
+                List<VariazioneDisponibilita> daInviare;
+                synchronized (this) {
+                    if (inAttesa.isEmpty() || rimossa) {
+                        inInvio = false;
+                        return;
+                    }
+                    daInviare = new ArrayList<>(inAttesa.values());
+                    inAttesa.clear();
+                }
+                try {
+                    for (VariazioneDisponibilita variazione : daInviare) {
+                        emitter.send(SseEmitter.event().name(EVENTO).data(variazione));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // Connessione chiusa dal client
+                    rimuovi();
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+
+        void rimuovi() {
+            synchronized (this) {
+                rimossa = true;
+            }
+            boolean[] rimossaDalGruppo = new boolean[1];
+            if (citta != null) {
+                perCitta.computeIfPresent(citta, (c, gruppo) -> togli(gruppo, rimossaDalGruppo));
+            } else {
+                perEdificio.computeIfPresent(edificioId, (e, gruppo) -> togli(gruppo, rimossaDalGruppo));
+            }
+            if (rimossaDalGruppo[0]) {
+                iscritti.decrementAndGet();
+            }
+        }
+
+        /**
+         * Toglie l'iscrizione dal gruppo, eliminando il gruppo rimasto vuoto
+         */
+        private Set<Iscrizione> togli(Set<Iscrizione> gruppo, boolean[] rimossaDalGruppo) {
+            rimossaDalGruppo[0] = gruppo.remove(this);
+            return gruppo.isEmpty() ? null : gruppo;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.demo.service;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.ContatoreQuery;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Metriche Micrometer delle operazioni di prenotazione e ricerca.
+ * Ogni operazione misurata registra la latenza, il numero di query eseguite e,
+ * per le prenotazioni, l'esito; per le ricerche, il numero di risultati.
+ * Le metriche sono esposte dall'endpoint Prometheus di Actuator.
+ * Le query sono contate nel thread che esegue l'operazione: con lo scrittore per edificio attivo
+ * le prenotazioni singole eseguono le query sul thread dello scrittore, quindi prenotazioni.query
+ * ne riporta quasi zero e il conteggio è in prenotazioni.scrittore.query, per lotto.
+ */
+@Component
+public class MetrichePrenotazioni {
+
+    /**
+     * Esiti di una prenotazione
+     */
+    public static final String ACCETTATA = "accettata";
+    public static final String POSTAZIONE_OCCUPATA = "postazione_occupata";
+    public static final String UTENTE_GIA_PRENOTATO = "utente_gia_prenotato";
+    public static final String EDIFICIO_COMPLETO = "edificio_completo";
+    public static final String RIFIUTATA = "rifiutata";
+    public static final String ERRORE = "errore";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Esegue una prenotazione registrandone latenza, esito e numero di query.
+     *
+     * @param operazione nome dell'operazione, usato come tag
+     * @param prenotazione la prenotazione da eseguire
+     * @return il risultato della prenotazione
+     */
+    public <T> T prenotazione(String operazione, Supplier<T> prenotazione) {
+        long inizio = System.nanoTime();
+        long query = ContatoreQuery.getConteggio();
+        String esito = ACCETTATA;
+        try {
+            return prenotazione.get();
+        } catch (RuntimeException e) {
+            esito = esito(e);
+            throw e;
+        } finally {
+            Timer.builder("prenotazioni.prenotazione")
+                .description("Latenza delle prenotazioni per esito")
+                .tag("operazione", operazione)
+                .tag("esito", esito)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - inizio, TimeUnit.NANOSECONDS);
+            registraQuery(operazione, query);
+        }
+    }
+
+    /**
+     * Esegue una ricerca registrandone latenza, numero di risultati e numero di query.
+     *
+     * @param operazione nome dell'operazione, usato come tag
+     * @param ricerca la ricerca da eseguire
+     * @return i risultati della ricerca
+     */
+    public <T extends Collection<?>> T ricerca(String operazione, Supplier<T> ricerca) {
+        long inizio = System.nanoTime();
+        long query = ContatoreQuery.getConteggio();
+        T risultati = null;
+        try {
+            risultati = ricerca.get();
+            return risultati;
+        } finally {
+            Timer.builder("prenotazioni.ricerca")
+                .description("Latenza delle ricerche di postazioni")
+                .tag("operazione", operazione)
+                .tag("esito", risultati != null ? "ok" : ERRORE)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - inizio, TimeUnit.NANOSECONDS);
+            if (risultati != null) {
+                DistributionSummary.builder("prenotazioni.ricerca.risultati")
+                    .description("Numero di risultati restituiti dalle ricerche")
+                    .tag("operazione", operazione)
+                    .register(registry)
+                    .record(risultati.size());
+            }
+            registraQuery(operazione, query);
+        }
+    }
+
+    private void registraQuery(String operazione, long iniziali) {
+        DistributionSummary.builder("prenotazioni.query")
+            .description("Istruzioni SQL eseguite da Hibernate per operazione")
+            .tag("operazione", operazione)
+            .register(registry)
+            .record(ContatoreQuery.getConteggio() - iniziali);
+    }
+
+    /**
+     * Classifica il motivo per cui una prenotazione non è andata a buon fine.
+     */
+    private static String esito(RuntimeException e) {
+        if (!(e instanceof IllegalStateException)) {
+            return e instanceof IllegalArgumentException ? RIFIUTATA : ERRORE;
+        }
+        String messaggio = String.valueOf(e.getMessage());
+        if (messaggio.equals(PrenotazioneService.POSTAZIONE_OCCUPATA)) {
+            return POSTAZIONE_OCCUPATA;
+        }
+        if (messaggio.equals(PrenotazioneService.UTENTE_GIA_PRENOTATO)) {
+            return UTENTE_GIA_PRENOTATO;
+        }
+        if (messaggio.equals(PrenotazioneService.EDIFICIO_COMPLETO)) {
+            return EDIFICIO_COMPLETO;
+        }
+        return RIFIUTATA;
+    }
+}
@@ -0,0 +1,464 @@
+package com.example.demo.service;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.dto.PostoOccupato;
+import com.example.demo.repository.PostazioneRepository;
+import com.example.demo.repository.PrenotazioneRepository;
+
+/**
+ * Indice in memoria delle occupazioni degli edifici, per edificio e giorno.
+ * Per ogni coppia (edificio, giorno) mantiene l'insieme delle postazioni prenotate e i posti occupati,
+ * così che la verifica di una prenotazione non richieda letture dal database.
+ * Ogni coppia ha un proprio lock: le prenotazioni concorrenti sullo stesso edificio e giorno
+ * vengono serializzate, mentre edifici o giorni diversi non si contendono mai il lock.
+ *
+ * L'indice mantiene solo i giorni da oggi all'orizzonte configurato (prenotazioni.indice.orizzonte-giorni):
+ * i giorni passati vengono rimossi al cambio di data e quelli fuori dalla finestra non vengono memorizzati.
+ * Le operazioni sotto lock su un giorno fuori dalla finestra condividono un'occupazione temporanea,
+ * letta dal database dal primo che ne prende il lock e rimossa quando l'ultima operazione che la usa termina:
+ * anche per questi giorni le prenotazioni concorrenti vengono serializzate.
+ */
+@Component
+public class OccupancyIndex {
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private PostazioneRepository postazioneRepository;
+
+    /**
+     * Giorni dopo oggi mantenuti nell'indice
+     */
+    @Value("${prenotazioni.indice.orizzonte-giorni:730}")
+    private int orizzonteGiorni;
+
+    /**
+     * Giorno, come epoch day, in cui sono stati rimossi per l'ultima volta i giorni passati
+     */
+    private volatile long oggi = LocalDate.now().toEpochDay();
+
+    /**
+     * Occupazioni indicizzate per edificio e giorno
+     */
+    private final Map<Chiave, Occupazione> occupazioni = new ConcurrentHashMap<>();
+
+    /**
+     * Occupazioni temporanee dei giorni fuori dalla finestra, presenti solo finché un'operazione le usa
+     */
+    private final Map<Chiave, Occupazione> temporanee = new ConcurrentHashMap<>();
+
+    /**
+     * Capienza totale di ogni edificio, calcolata al primo utilizzo
+     */
+    private final Map<Long, Long> capienze = new ConcurrentHashMap<>();
+
+    /**
+     * Incrementata a ogni invalidazione delle capienze, prima della rimozione
+     */
+    private final AtomicLong generazioneCapienze = new AtomicLong();
+
+    /**
+     * Chiave dell'indice: edificio e giorno espresso come epoch day.
+     * L'ordinamento naturale viene usato per acquisire più lock sempre nello stesso ordine.
+     */
+    public record Chiave(Long edificioId, long epochDay) implements Comparable<Chiave> {
+        public Chiave(Long edificioId, LocalDate data) {
+            this(edificioId, data.toEpochDay());
+        }
+
+        @Override
+        public int compareTo(Chiave altra) {
+            int confronto = edificioId.compareTo(altra.edificioId);
+            return confronto != 0 ? confronto : Long.compare(epochDay, altra.epochDay);
+        }
+    }
+
+    /**
+     * Occupazione di un edificio in un giorno.
+     * Le modifiche avvengono solo sotto il lock della chiave; le letture possono avvenire senza lock.
+     */
+    public static class Occupazione {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Set<Long> postazioniPrenotate = ConcurrentHashMap.newKeySet();
+        private volatile long postiOccupati;
+
+        /**
+         * False per un'occupazione temporanea non ancora letta dal database, modificato solo sotto lock
+         */
+        private boolean caricata = true;
+
+        /**
+         * Operazioni che usano un'occupazione temporanea, modificato solo dentro la mappa delle temporanee
+         */
+        private int utilizzi;
+
+        /**
+         * Verifica se una postazione è prenotata.
+         *
+         * @param postazioneId ID della postazione
+         * @return true se la postazione è già prenotata, false altrimenti
+         */
+        public boolean isPrenotata(Long postazioneId) {
+            return postazioniPrenotate.contains(postazioneId);
+        }
+
+        /**
+         * @return la somma dei posti delle postazioni prenotate
+         */
+        public long getPostiOccupati() {
+            return postiOccupati;
+        }
+
+        /**
+         * @return il numero di postazioni prenotate
+         */
+        public int getNumeroPostazioniPrenotate() {
+            return postazioniPrenotate.size();
+        }
+
+        /**
+         * Registra una postazione come prenotata.
+         *
+         * @param postazioneId ID della postazione
+         * @param posti numero massimo di occupanti della postazione
+         */
+        public void aggiungi(Long postazioneId, int posti) {
+            if (postazioniPrenotate.add(postazioneId)) {
+                postiOccupati += posti;
+            }
+        }
+
+        /**
+         * Registra una postazione come libera.
+         *
+         * @param postazioneId ID della postazione
+         * @param posti numero massimo di occupanti della postazione
+         */
+        public void rimuovi(Long postazioneId, int posti) {
+            if (postazioniPrenotate.remove(postazioneId)) {
+                postiOccupati -= posti;
+            }
+        }
+    }
+
+    /**
+     * Carica all'avvio le occupazioni della finestra dell'indice con un'unica query.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void ricarica() {
+        svuota();
+        List<PostoOccupato> posti = prenotazioneRepository.findPostiOccupatiDallaData(LocalDate.now());
+        for (PostoOccupato posto : posti) {
+            Chiave chiave = new Chiave(posto.getEdificioId(), posto.getData());
+            if (nellaFinestra(chiave)) {
+                occupazioni.computeIfAbsent(chiave, k -> new Occupazione())
+                    .aggiungi(posto.getPostazioneId(), posto.getNumeroMassimoOccupanti());
+            }
+        }
+    }
+
+    /**
+     * Svuota l'indice: le occupazioni verranno ricaricate dal database al primo utilizzo.
+     */
+    public void svuota() {
+        occupazioni.clear();
+        generazioneCapienze.incrementAndGet();
+        capienze.clear();
+    }
+
+    /**
+     * Esegue un'operazione tenendo il lock dell'edificio nel giorno indicato.
+     * L'operazione riceve l'occupazione corrente e può aggiornarla.
+     *
+     * @param edificioId ID dell'edificio
+     * @param data giorno dell'occupazione
+     * @param operazione operazione da eseguire sotto lock
+     * @return il risultato dell'operazione
+     */
+    public <T> T conLock(Long edificioId, LocalDate data, Function<Occupazione, T> operazione) {
+        Chiave chiave = new Chiave(edificioId, data);
+        if (!nellaFinestra(chiave)) {
+            return conLock(List.of(chiave), occupazioni -> operazione.apply(occupazioni.get(chiave)));
+        }
+        Occupazione occupazione = getOccupazione(edificioId, data);
+        occupazione.lock.lock();
+        try {
+            return operazione.apply(occupazione);
+        } finally {
+            occupazione.lock.unlock();
+        }
+    }
+
+    /**
+     * Esegue un'operazione tenendo i lock di più coppie (edificio, giorno).
+     * Le occupazioni mancanti vengono caricate con un'unica query e i lock vengono acquisiti
+     * in ordine di chiave, così che due operazioni sugli stessi edifici non possano bloccarsi a vicenda.
+     * Per i giorni fuori dalla finestra vengono usate le occupazioni temporanee, lette sotto lock.
+     *
+     * @param chiavi coppie (edificio, giorno) da bloccare
+     * @param operazione operazione da eseguire sotto lock, riceve le occupazioni per chiave
+     * @return il risultato dell'operazione
+     */
+    public <T> T conLock(Collection<Chiave> chiavi, Function<Map<Chiave, Occupazione>, T> operazione) {
+        List<Chiave> ordinate = chiavi.stream().distinct().sorted().toList();
+        Map<Boolean, List<Chiave>> perFinestra = ordinate.stream()
+            .collect(Collectors.partitioningBy(this::nellaFinestra));
+        Map<Chiave, Occupazione> trovate = carica(perFinestra.get(true));
+        List<Chiave> fuoriFinestra = perFinestra.get(false);
+        fuoriFinestra.forEach(chiave -> trovate.put(chiave, acquisisci(chiave)));
+
+        Map<Chiave, Occupazione> bloccate = new LinkedHashMap<>();
+        try {
+            for (Chiave chiave : ordinate) {
+                Occupazione occupazione = trovate.get(chiave);
+                occupazione.lock.lock();
+                bloccate.put(chiave, occupazione);
+            }
+            caricaTemporanee(fuoriFinestra, bloccate);
+            return operazione.apply(bloccate);
+        } finally {
+            bloccate.values().forEach(occupazione -> occupazione.lock.unlock());
+            fuoriFinestra.forEach(this::rilascia);
+        }
+    }
+
+    /**
+     * Restituisce l'occupazione temporanea di un giorno fuori dalla finestra, creandola se nessuno la usa,
+     * e ne registra un nuovo utilizzo. Ogni chiamata va seguita da {@link #rilascia(Chiave)}.
+     */
+    private Occupazione acquisisci(Chiave chiave) {
+        return temporanee.compute(chiave, (k, presente) -> {
+            Occupazione occupazione = presente != null ? presente : new Occupazione();
+            if (presente == null) {
+                occupazione.caricata = false;
+            }
+            occupazione.utilizzi++;
+            return occupazione;
+        });
+    }
+
+    /**
+     * Registra la fine di un utilizzo di un'occupazione temporanea e la rimuove se era l'ultimo.
+     */
+    private void rilascia(Chiave chiave) {
+        temporanee.computeIfPresent(chiave, (k, occupazione) -> --occupazione.utilizzi == 0 ? null : occupazione);
+    }
+
+    /**
+     * Legge con un'unica query le occupazioni temporanee non ancora caricate.
+     * Va chiamato tenendo il lock di tutte le occupazioni indicate.
+     *
+     * @param chiavi giorni fuori dalla finestra
+     * @param bloccate occupazioni bloccate per chiave
+     */
+    private void caricaTemporanee(List<Chiave> chiavi, Map<Chiave, Occupazione> bloccate) {
+        Map<Chiave, Occupazione> daCaricare = new HashMap<>();
+        for (Chiave chiave : chiavi) {
+            if (!bloccate.get(chiave).caricata) {
+                daCaricare.put(chiave, bloccate.get(chiave));
+            }
+        }
+        if (daCaricare.isEmpty()) {
+            return;
+        }
+        Set<Long> edifici = daCaricare.keySet().stream().map(Chiave::edificioId).collect(Collectors.toSet());
+        Set<LocalDate> date = daCaricare.keySet().stream()
+            .map(chiave -> LocalDate.ofEpochDay(chiave.epochDay())).collect(Collectors.toSet());
+        for (PostoOccupato posto : prenotazioneRepository.findPostiOccupati(edifici, date)) {
+            Occupazione occupazione = daCaricare.get(new Chiave(posto.getEdificioId(), posto.getData()));
+            if (occupazione != null) {
+                occupazione.aggiungi(posto.getPostazioneId(), posto.getNumeroMassimoOccupanti());
+            }
+        }
+        daCaricare.values().forEach(occupazione -> occupazione.caricata = true);
+    }
+
+    /**
+     * Restituisce senza lock le occupazioni di più coppie (edificio, giorno),
+     * leggendo con un'unica query quelle non presenti nell'indice.
+     *
+     * @param chiavi coppie (edificio, giorno) da leggere
+     * @return le occupazioni per chiave
+     */
+    public Map<Chiave, Occupazione> getOccupazioni(Collection<Chiave> chiavi) {
+        return carica(chiavi);
+    }
+
+    /**
+     * Restituisce le occupazioni delle chiavi indicate: quelle mancanti vengono lette con un'unica query
+     * e aggiunte all'indice solo se appartengono alla sua finestra.
+     *
+     * @param chiavi coppie (edificio, giorno) da leggere
+     * @return le occupazioni per chiave
+     */
+    private Map<Chiave, Occupazione> carica(Collection<Chiave> chiavi) {
+        Map<Chiave, Occupazione> risultato = new HashMap<>();
+        Map<Chiave, Occupazione> caricate = new HashMap<>();
+        Set<Long> edifici = new HashSet<>();
+        Set<LocalDate> date = new HashSet<>();
+        for (Chiave chiave : chiavi) {
+            Occupazione presente = occupazioni.get(chiave);
+            if (presente != null && nellaFinestra(chiave)) {
+                risultato.put(chiave, presente);
+            } else {
+                edifici.add(chiave.edificioId());
+                date.add(LocalDate.ofEpochDay(chiave.epochDay()));
+                caricate.put(chiave, new Occupazione());
+            }
+        }
+        if (caricate.isEmpty()) {
+            return risultato;
+        }
+        for (PostoOccupato posto : prenotazioneRepository.findPostiOccupati(edifici, date)) {
+            Occupazione occupazione = caricate.get(new Chiave(posto.getEdificioId(), posto.getData()));
+            if (occupazione != null) {
+                occupazione.aggiungi(posto.getPostazioneId(), posto.getNumeroMassimoOccupanti());
+            }
+        }
+        caricate.forEach((chiave, caricata) -> {
+            Occupazione esistente = nellaFinestra(chiave) ? occupazioni.putIfAbsent(chiave, caricata) : null;
+            risultato.put(chiave, esistente != null ? esistente : caricata);
+        });
+        return risultato;
+    }
+
+    /**
+     * Restituisce l'occupazione di un edificio in un giorno, caricandola dal database se non è nell'indice.
+     * Per un giorno fuori dalla finestra restituisce una lettura dal database non condivisa, da usare senza lock.
+     *
+     * @param edificioId ID dell'edificio
+     * @param data giorno dell'occupazione
+     * @return l'occupazione dell'edificio nel giorno indicato
+     */
+    public Occupazione getOccupazione(Long edificioId, LocalDate data) {
+        Chiave chiave = new Chiave(edificioId, data);
+        boolean nellaFinestra = nellaFinestra(chiave);
+        Occupazione occupazione = occupazioni.get(chiave);
+        if (occupazione != null && nellaFinestra) {
+            return occupazione;
+        }
+        // Il caricamento avviene fuori dalla mappa: se un altro thread inserisce prima la chiave, vince la sua
+        Occupazione caricata = new Occupazione();
+        for (PostoOccupato posto : prenotazioneRepository.findPostiOccupati(edificioId, data)) {
+            caricata.aggiungi(posto.getPostazioneId(), posto.getNumeroMassimoOccupanti());
+        }
+        if (!nellaFinestra) {
+            return caricata;
+        }
+        Occupazione esistente = occupazioni.putIfAbsent(chiave, caricata);
+        return esistente != null ? esistente : caricata;
+    }
+
+    /**
+     * @return il numero di coppie (edificio, giorno) presenti nell'indice
+     */
+    public int getDimensione() {
+        return occupazioni.size();
+    }
+
+    /**
+     * Verifica se una chiave appartiene alla finestra dell'indice, da oggi all'orizzonte.
+     * Al primo controllo di ogni nuovo giorno rimuove dall'indice i giorni passati.
+     */
+    private boolean nellaFinestra(Chiave chiave) {
+        long giorno = LocalDate.now().toEpochDay();
+        if (giorno != oggi) {
+            oggi = giorno;
+            occupazioni.keySet().removeIf(passata -> passata.epochDay() < giorno);
+        }
+        return chiave.epochDay() >= giorno && chiave.epochDay() <= giorno + orizzonteGiorni;
+    }
+
+    /**
+     * Restituisce la capienza totale di un edificio, calcolandola dal database al primo utilizzo.
+     *
+     * @param edificioId ID dell'edificio
+     * @return la somma dei posti di tutte le postazioni dell'edificio
+     */
+    public long getCapienza(Long edificioId) {
+        Long capienza = capienze.get(edificioId);
+        if (capienza != null) {
+            return capienza;
+        }
+        // Come per le occupazioni, la query avviene fuori dalla mappa: computeIfAbsent terrebbe un lock
+        // interno per tutta la durata della query, bloccando anche il carrier di un thread virtuale.
+        // Il risultato viene memorizzato solo se nessuna invalidazione è avvenuta durante la query
+        long generazione = generazioneCapienze.get();
+        Long calcolata = postazioneRepository.sommaPostiByEdificioId(edificioId);
+        Long esistente = capienze.compute(edificioId, (id, presente) ->
+            presente != null ? presente : generazioneCapienze.get() == generazione ? calcolata : null);
+        return esistente != null ? esistente : calcolata;
+    }
+
+    /**
+     * Invalida la capienza di un edificio dopo l'aggiunta o l'eliminazione di una postazione.
+     *
+     * @param edificioId ID dell'edificio
+     */
+    public void invalidaCapienza(Long edificioId) {
+        generazioneCapienze.incrementAndGet();
+        capienze.remove(edificioId);
+    }
+
+    /**
+     * Verifica se l'edificio è al completo nel giorno indicato.
+     * Un edificio senza prenotazioni non viene mai considerato pieno.
+     *
+     * @param edificioId ID dell'edificio
+     * @param occupazione occupazione dell'edificio nel giorno
+     * @return true se l'edificio ha raggiunto la capienza massima, false altrimenti
+     */
+    public boolean isCompleto(Long edificioId, Occupazione occupazione) {
+        return occupazione.getPostiOccupati() > 0 && occupazione.getPostiOccupati() >= getCapienza(edificioId);
+    }
+
+    /**
+     * Rimuove una prenotazione dall'indice.
+     *
+     * @param edificioId ID dell'edificio
+     * @param data giorno della prenotazione
+     * @param postazioneId ID della postazione liberata
+     * @param posti numero massimo di occupanti della postazione
+     */
+    public void rimuoviPrenotazione(Long edificioId, LocalDate data, Long postazioneId, int posti) {
+        Chiave chiave = new Chiave(edificioId, data);
+        if (!nellaFinestra(chiave)) {
+            // Fuori dalla finestra va aggiornata solo un'occupazione temporanea in uso:
+            // altrimenti la prossima operazione rileggerà il giorno dal database
+            Occupazione temporanea = temporanee.get(chiave);
+            if (temporanea != null) {
+                temporanea.lock.lock();
+                try {
+                    temporanea.rimuovi(postazioneId, posti);
+                } finally {
+                    temporanea.lock.unlock();
+                }
+            }
+            return;
+        }
+        conLock(edificioId, data, occupazione -> {
+            occupazione.rimuovi(postazioneId, posti);
+            return null;
+        });
+    }
+}
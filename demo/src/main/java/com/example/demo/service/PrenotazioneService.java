@@ -1,12 +1,37 @@
 package com.example.demo.service;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import com.example.demo.dto.DisponibilitaGiorno;
+import com.example.demo.dto.EsitoPrenotazione;
+import com.example.demo.dto.Pagina;
+import com.example.demo.dto.PostazioneRisolta;
+import com.example.demo.dto.PrenotazioneRequest;
+import com.example.demo.dto.PrenotazioneRicorrenteRequest;
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.dto.RiepilogoPrenotazione;
+import com.example.demo.dto.TotaleEdificio;
+import com.example.demo.dto.TotaleGiorno;
+import com.example.demo.dto.UtenteData;
+import com.example.demo.dto.VariazioneDisponibilita;
 import com.example.demo.model.Edificio;
 import com.example.demo.model.Postazione;
 import com.example.demo.model.Prenotazione;
@@ -24,6 +49,40 @@ import com.example.demo.repository.UtenteRepository;
 @Service
 public class PrenotazioneService {
     
+    /**
+     * Motivi di rifiuto di una prenotazione, usati anche per classificarne l'esito nelle metriche
+     */
+    public static final String POSTAZIONE_OCCUPATA = "La postazione è già prenotata per questa data";
+    public static final String UTENTE_GIA_PRENOTATO = "L'utente ha già una prenotazione per questa data";
+    public static final String EDIFICIO_COMPLETO =
+        "L'edificio ha raggiunto il numero massimo di prenotazioni per questa data";
+    
+    /**
+     * Numero massimo di richieste di una prenotazione multipla
+     */
+    public static final int MAX_RICHIESTE_BATCH = 500;
+    
+    /**
+     * Numero massimo di giorni, estremi inclusi, coperti da una prenotazione ricorrente
+     */
+    private static final int MAX_GIORNI_RICORRENZA = 366;
+    
+    /**
+     * Numero massimo di giorni, estremi inclusi, del calendario e del flusso delle disponibilità
+     */
+    public static final int MAX_GIORNI_INTERVALLO = 92;
+    
+    /**
+     * Dimensione massima di una pagina di prenotazioni
+     */
+    private static final int MAX_DIMENSIONE_PAGINA = 500;
+    
+    /**
+     * Estremi usati quando l'intervallo di date di una pagina non viene specificato
+     */
+    private static final LocalDate DATA_MINIMA = LocalDate.of(1900, 1, 1);
+    private static final LocalDate DATA_MASSIMA = LocalDate.of(9999, 12, 31);
+    
     @Autowired
     private PrenotazioneRepository prenotazioneRepository;
     
@@ -36,6 +95,24 @@ public class PrenotazioneService {
     @Autowired
     private EdificioRepository edificioRepository;
     
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+    
+    @Autowired
+    private Risolutore risolutore;
+    
+    @Autowired
+    private MetrichePrenotazioni metriche;
+    
+    @Autowired
+    private ScrittorePrenotazioni scrittore;
+    
+    @Autowired
+    private VersioniDisponibilita versioni;
+    
+    @Autowired
+    private FlussoDisponibilita flusso;
+    
     /**
      * Crea una nuova prenotazione per una postazione.
      * Verifica la disponibilità della postazione e i vincoli di prenotazione.
@@ -48,50 +125,243 @@ public class PrenotazioneService {
      * @throws IllegalArgumentException se utente o postazione non esistono
      */
     public Prenotazione prenotaPostazione(Long utenteId, Long postazioneId, LocalDate data) {
-        // Verifica se l'utente ha già una prenotazione per quella data
-        if (prenotazioneRepository.existsByUtenteIdAndData(utenteId, data)) {
-            throw new IllegalStateException("L'utente ha già una prenotazione per questa data");
-        }
-        
-        Postazione postazione = postazioneRepository.findById(postazioneId)
-            .orElseThrow(() -> new IllegalArgumentException("Postazione non trovata"));
+        return metriche.prenotazione("prenotaPostazione", () -> {
+            Postazione postazione = postazioneRepository.findConEdificioById(postazioneId)
+                .orElseThrow(() -> new IllegalArgumentException("Postazione non trovata"));
             
-        // Verifica se l'edificio è completamente prenotato per quella data
-        Long edificioId = postazione.getEdificio().getId();
-        List<Prenotazione> prenotazioniEdificio = prenotazioneRepository
-            .findByPostazioneEdificioIdAndData(edificioId, data);
+            Prenotazione prenotazione = inserisciPrenotazione(postazione, postazioneId,
+                postazione.getEdificio().getId(), postazione.getNumeroMassimoOccupanti(), data, utenteId,
+                () -> utenteRepository.findById(utenteId)
+                    .orElseThrow(() -> new IllegalArgumentException("Utente non trovato")));
+            notificaVariazione(postazione.getEdificio().getId(), postazione.getEdificio().getCitta(), postazioneId,
+                postazione.getCodice(), data, true);
+            return prenotazione;
+        });
+    }
+    
+    /**
+     * Verifica i vincoli di occupazione e salva la prenotazione sotto il lock dell'edificio per quella data.
+     * L'unicità di utente e postazione per la data non viene verificata prima dell'insert:
+     * è garantita dai vincoli del database, le cui violazioni diventano errori di prenotazione.
+     * Se lo scrittore per edificio è attivo, la prenotazione viene invece accodata e inserita insieme
+     * alle altre richieste dello stesso edificio.
+     * 
+     * @param postazione postazione da prenotare, anche solo come riferimento
+     * @param postazioneId ID della postazione
+     * @param edificioId ID dell'edificio della postazione
+     * @param posti numero massimo di occupanti della postazione
+     * @param data Data della prenotazione
+     * @param utenteId ID dell'utente che effettua la prenotazione
+     * @param utente fornisce l'utente che effettua la prenotazione, letto solo se i vincoli sono rispettati
+     * @return La prenotazione creata
+     */
+    private Prenotazione inserisciPrenotazione(Postazione postazione, Long postazioneId, Long edificioId, int posti,
+                                               LocalDate data, Long utenteId, Supplier<Utente> utente) {
+        if (scrittore.isAttivo()) {
+            return scrittore.prenota(postazione, postazioneId, edificioId, posti, data, utenteId, utente);
+        }
+        return occupancyIndex.conLock(edificioId, data, occupazione -> {
+            // Verifica se l'edificio è completamente prenotato per quella data
+            if (occupancyIndex.isCompleto(edificioId, occupazione)) {
+                throw new IllegalStateException(EDIFICIO_COMPLETO);
+            }
             
-        if (!prenotazioniEdificio.isEmpty()) {
-            // Calcola il numero totale di posti occupati nell'edificio
-            int postiOccupati = prenotazioniEdificio.stream()
-                .mapToInt(p -> p.getPostazione().getNumeroMassimoOccupanti())
-                .sum();
-                
-            // Calcola il numero totale di posti disponibili nell'edificio
-            int postiTotali = postazioneRepository.findByEdificioId(edificioId).stream()
-                .mapToInt(Postazione::getNumeroMassimoOccupanti)
-                .sum();
-                
-            if (postiOccupati >= postiTotali) {
-                throw new IllegalStateException(
-                    "L'edificio ha raggiunto il numero massimo di prenotazioni per questa data");
+            // Verifica se la postazione specifica è già prenotata
+            if (occupazione.isPrenotata(postazioneId)) {
+                throw new IllegalStateException(POSTAZIONE_OCCUPATA);
             }
+            
+            Prenotazione prenotazione = new Prenotazione();
+            prenotazione.setUtente(utente.get());
+            prenotazione.setPostazione(postazione);
+            prenotazione.setData(data);
+            
+            Prenotazione risultato = salva(prenotazione, POSTAZIONE_OCCUPATA);
+            occupazione.aggiungi(postazioneId, posti);
+            return risultato;
+        });
+    }
+    
+    /**
+     * Crea più prenotazioni con un'unica verifica dei conflitti e un unico insert batch.
+     * Utenti e postazioni vengono risolti con una query ciascuno, le prenotazioni esistenti
+     * degli utenti con un'altra query; le richieste valide vengono poi inserite insieme.
+     * Un codice usato in più edifici viene risolto con l'edificio indicato nella richiesta.
+     * 
+     * @param richieste le richieste di prenotazione, al massimo {@value #MAX_RICHIESTE_BATCH}
+     * @param tuttoONiente se true, basta una richiesta rifiutata per annullare tutte le altre
+     * @return l'esito di ogni richiesta, nello stesso ordine
+     * @throws IllegalArgumentException se le richieste sono più di {@value #MAX_RICHIESTE_BATCH}
+     */
+    public List<EsitoPrenotazione> prenotaBatch(List<PrenotazioneRequest> richieste, boolean tuttoONiente) {
+        if (richieste.size() > MAX_RICHIESTE_BATCH) {
+            throw new IllegalArgumentException("Troppe richieste (massimo " + MAX_RICHIESTE_BATCH + ")");
         }
+        List<EsitoPrenotazione> esiti = new ArrayList<>();
+        for (int i = 0; i < richieste.size(); i++) {
+            esiti.add(new EsitoPrenotazione(i, richieste.get(i)));
+        }
+        
+        Map<String, Utente> utenti = utenteRepository.findByUsernameIn(richieste.stream()
+                .map(PrenotazioneRequest::getUsername).filter(Objects::nonNull).collect(Collectors.toSet())).stream()
+            .collect(Collectors.toMap(Utente::getUsername, Function.identity()));
+        Map<String, List<Postazione>> postazioniPerCodice = postazioneRepository.findByCodiceIn(richieste.stream()
+                .map(PrenotazioneRequest::getCodicePostazione).filter(Objects::nonNull).collect(Collectors.toSet()))
+            .stream().collect(Collectors.groupingBy(Postazione::getCodice));
         
-        // Verifica se la postazione specifica è già prenotata
-        if (prenotazioneRepository.existsByPostazioneIdAndData(postazioneId, data)) {
-            throw new IllegalStateException("La postazione è già prenotata per questa data");
+        // Scarta le richieste incomplete e raccoglie le chiavi da bloccare
+        List<EsitoPrenotazione> valide = new ArrayList<>();
+        Postazione[] postazioni = new Postazione[esiti.size()];
+        Set<OccupancyIndex.Chiave> chiavi = new HashSet<>();
+        for (EsitoPrenotazione esito : esiti) {
+            if (esito.getUsername() == null) {
+                esito.rifiuta("Utente non specificato");
+                continue;
+            }
+            if (esito.getCodicePostazione() == null) {
+                esito.rifiuta("Postazione non specificata");
+                continue;
+            }
+            Utente utente = utenti.get(esito.getUsername());
+            Long edificioId = richieste.get(esito.getIndice()).getEdificioId();
+            List<Postazione> candidate = postazioniPerCodice.getOrDefault(esito.getCodicePostazione(), List.of())
+                .stream().filter(p -> edificioId == null || edificioId.equals(p.getEdificio().getId())).toList();
+            if (esito.getData() == null) {
+                esito.rifiuta("Data non specificata");
+            } else if (utente == null) {
+                esito.rifiuta("Utente non trovato: " + esito.getUsername());
+            } else if (candidate.isEmpty()) {
+                esito.rifiuta("Postazione non trovata: " + esito.getCodicePostazione());
+            } else if (candidate.size() > 1) {
+                esito.rifiuta("Postazione ambigua, specificare l'edificio: " + esito.getCodicePostazione());
+            } else {
+                Postazione postazione = candidate.get(0);
+                valide.add(esito);
+                postazioni[esito.getIndice()] = postazione;
+                chiavi.add(new OccupancyIndex.Chiave(postazione.getEdificio().getId(), esito.getData()));
+            }
         }
+        if (valide.isEmpty()) {
+            return esiti;
+        }
+        
+        Set<UtenteData> datePrenotate = new HashSet<>(prenotazioneRepository.findDatePrenotate(
+            valide.stream().map(e -> utenti.get(e.getUsername()).getId()).collect(Collectors.toSet()),
+            valide.stream().map(EsitoPrenotazione::getData).collect(Collectors.toSet())));
         
-        Utente utente = utenteRepository.findById(utenteId)
-            .orElseThrow(() -> new IllegalArgumentException("Utente non trovato"));
+        return occupancyIndex.conLock(chiavi, occupazioni -> {
+            // Posti accettati in questo batch, non ancora registrati nell'indice
+            Map<OccupancyIndex.Chiave, Set<Long>> postazioniAccettate = new HashMap<>();
+            Map<OccupancyIndex.Chiave, Long> postiAccettati = new HashMap<>();
+            List<Prenotazione> daInserire = new ArrayList<>();
+            List<EsitoPrenotazione> accettati = new ArrayList<>();
+            
+            for (EsitoPrenotazione esito : valide) {
+                Utente utente = utenti.get(esito.getUsername());
+                Postazione postazione = postazioni[esito.getIndice()];
+                Long edificioId = postazione.getEdificio().getId();
+                OccupancyIndex.Chiave chiave = new OccupancyIndex.Chiave(edificioId, esito.getData());
+                OccupancyIndex.Occupazione occupazione = occupazioni.get(chiave);
+                Set<Long> accettate = postazioniAccettate.computeIfAbsent(chiave, k -> new HashSet<>());
+                long postiOccupati = occupazione.getPostiOccupati() + postiAccettati.getOrDefault(chiave, 0L);
+                UtenteData utenteData = new UtenteData(utente.getId(), esito.getData());
+                
+                if (datePrenotate.contains(utenteData)) {
+                    esito.rifiuta(UTENTE_GIA_PRENOTATO);
+                } else if (postiOccupati > 0 && postiOccupati >= occupancyIndex.getCapienza(edificioId)) {
+                    esito.rifiuta(EDIFICIO_COMPLETO);
+                } else if (occupazione.isPrenotata(postazione.getId()) || accettate.contains(postazione.getId())) {
+                    esito.rifiuta(POSTAZIONE_OCCUPATA);
+                } else {
+                    esito.setAccettata(true);
+                    datePrenotate.add(utenteData);
+                    accettate.add(postazione.getId());
+                    postiAccettati.merge(chiave, (long) postazione.getNumeroMassimoOccupanti(), Long::sum);
+                    
+                    Prenotazione prenotazione = new Prenotazione();
+                    prenotazione.setUtente(utente);
+                    prenotazione.setPostazione(postazione);
+                    prenotazione.setData(esito.getData());
+                    daInserire.add(prenotazione);
+                    accettati.add(esito);
+                }
+            }
+            
+            if (tuttoONiente && accettati.size() < esiti.size()) {
+                accettati.forEach(e -> e.rifiuta("Annullata: almeno una richiesta del gruppo è stata rifiutata"));
+                return esiti;
+            }
+            
+            List<Long> ids;
+            try {
+                ids = prenotazioneRepository.inserisciInBatch(daInserire);
+            } catch (DataIntegrityViolationException e) {
+                // Una prenotazione concorrente ha occupato un posto già accettato: il batch viene annullato
+                if (tuttoONiente) {
+                    String motivo = motivoViolazione(e, POSTAZIONE_OCCUPATA);
+                    accettati.forEach(esito -> esito.rifiuta(motivo));
+                    return esiti;
+                }
+                // Senza il vincolo del tutto o niente le prenotazioni vengono salvate una alla volta,
+                // così viene rifiutata solo quella in conflitto, con il proprio motivo
+                ids = new ArrayList<>();
+                for (int i = 0; i < daInserire.size(); i++) {
+                    try {
+                        ids.add(prenotazioneRepository.save(daInserire.get(i)).getId());
+                    } catch (DataIntegrityViolationException violazione) {
+                        accettati.get(i).rifiuta(motivoViolazione(violazione, POSTAZIONE_OCCUPATA));
+                        ids.add(null);
+                    }
+                }
+            }
+            for (int i = 0; i < daInserire.size(); i++) {
+                if (ids.get(i) == null) {
+                    continue;
+                }
+                Prenotazione prenotazione = daInserire.get(i);
+                Postazione postazione = prenotazione.getPostazione();
+                accettati.get(i).setPrenotazioneId(ids.get(i));
+                occupazioni.get(new OccupancyIndex.Chiave(postazione.getEdificio().getId(), prenotazione.getData()))
+                    .aggiungi(postazione.getId(), postazione.getNumeroMassimoOccupanti());
+                notificaVariazione(postazione.getEdificio().getId(), postazione.getEdificio().getCitta(),
+                    postazione.getId(), postazione.getCodice(), prenotazione.getData(), true);
+            }
+            return esiti;
+        });
+    }
+    
+    /**
+     * Prenota la stessa postazione per tutte le date di un intervallo, eventualmente
+     * solo in alcuni giorni della settimana.
+     * Le date vengono verificate e inserite insieme come una prenotazione multipla:
+     * una query per le prenotazioni esistenti dell'utente e un unico insert batch.
+     * 
+     * @param richiesta utente, postazione, intervallo di date e giorni della settimana
+     * @return l'esito di ogni data dell'intervallo, con il motivo delle date rifiutate
+     * @throws IllegalArgumentException se l'intervallo di date non è valido
+     */
+    public List<EsitoPrenotazione> prenotaRicorrente(PrenotazioneRicorrenteRequest richiesta) {
+        LocalDate inizio = richiesta.getDataInizio();
+        LocalDate fine = richiesta.getDataFine();
+        if (inizio == null || fine == null || fine.isBefore(inizio)
+                || !fine.isBefore(inizio.plusDays(MAX_GIORNI_RICORRENZA))) {
+            throw new IllegalArgumentException(
+                "Intervallo di date non valido (massimo " + MAX_GIORNI_RICORRENZA + " giorni)");
+        }
         
-        Prenotazione prenotazione = new Prenotazione();
-        prenotazione.setUtente(utente);
-        prenotazione.setPostazione(postazione);
-        prenotazione.setData(data);
+        Set<DayOfWeek> giorni = richiesta.getGiorniSettimana();
+        List<PrenotazioneRequest> richieste = inizio.datesUntil(fine.plusDays(1))
+            .filter(data -> giorni == null || giorni.isEmpty() || giorni.contains(data.getDayOfWeek()))
+            .map(data -> {
+                PrenotazioneRequest singola = new PrenotazioneRequest();
+                singola.setUsername(richiesta.getUsername());
+                singola.setCodicePostazione(richiesta.getCodicePostazione());
+                singola.setData(data);
+                return singola;
+            })
+            .collect(Collectors.toList());
         
-        return prenotazioneRepository.save(prenotazione);
+        return prenotaBatch(richieste, false);
     }
     
     /**
@@ -117,20 +387,31 @@ public class PrenotazioneService {
     
     /**
      * Prenota una postazione usando username e codice postazione.
+     * Username e codice vengono risolti dalla cache del Risolutore: utente e postazione non vengono
+     * riletti dal database, la prenotazione li referenzia tramite i loro ID.
      * 
      * @param username Username dell'utente
      * @param codicePostazione Codice della postazione
      * @param data Data della prenotazione
-     * @return La prenotazione creata
+     * @return Il riepilogo della prenotazione creata
+     * @throws IllegalStateException se ci sono conflitti di prenotazione
+     * @throws IllegalArgumentException se utente o postazione non esistono
      */
-    public Prenotazione prenotaPostazioneByUsername(String username, String codicePostazione, LocalDate data) {
-        Utente utente = utenteRepository.findByUsername(username)
-            .orElseThrow(() -> new IllegalArgumentException("Utente non trovato: " + username));
+    public RiepilogoPrenotazione prenotaPostazioneByUsername(String username, String codicePostazione,
+                                                             LocalDate data) {
+        return metriche.prenotazione("prenotaPostazioneByUsername", () -> {
+            Long utenteId = risolutore.getUtenteId(username);
+            PostazioneRisolta postazione = risolutore.getPostazione(codicePostazione);
             
-        Postazione postazione = postazioneRepository.findByCodice(codicePostazione)
-            .orElseThrow(() -> new IllegalArgumentException("Postazione non trovata: " + codicePostazione));
-            
-        return prenotaPostazione(utente.getId(), postazione.getId(), data);
+            Prenotazione prenotazione = inserisciPrenotazione(
+                postazioneRepository.getReferenceById(postazione.getPostazioneId()), postazione.getPostazioneId(),
+                postazione.getEdificioId(), postazione.getNumeroMassimoOccupanti(), data, utenteId,
+                () -> utenteRepository.getReferenceById(utenteId));
+            notificaVariazione(postazione.getEdificioId(), postazione.getCitta(), postazione.getPostazioneId(),
+                codicePostazione, data, true);
+            return new RiepilogoPrenotazione(prenotazione.getId(), data, username, codicePostazione,
+                postazione.getNomeEdificio(), postazione.getCitta());
+        });
     }
     
     /**
@@ -142,10 +423,95 @@ public class PrenotazioneService {
      * @return Lista delle postazioni disponibili
      */
     public List<Postazione> cercaPostazioniDisponibili(TipoPostazione tipo, String citta, LocalDate data) {
-        List<Postazione> postazioni = postazioneRepository.findByTipoAndCitta(tipo, citta);
-        return postazioni.stream()
-            .filter(p -> !prenotazioneRepository.existsByPostazioneIdAndData(p.getId(), data))
-            .collect(Collectors.toList());
+        return metriche.ricerca("cercaPostazioniDisponibili",
+            () -> postazioneRepository.findDisponibiliByTipoAndCittaAndData(tipo, citta, data));
+    }
+    
+    /**
+     * Cerca postazioni disponibili per tipo e città in una data specifica,
+     * leggendo solo le colonne esposte dalle risposte REST.
+     * 
+     * @param tipo Tipo di postazione
+     * @param citta Città
+     * @param data Data per cui verificare la disponibilità
+     * @return Lista dei riepiloghi delle postazioni disponibili
+     */
+    public List<RiepilogoPostazione> cercaRiepiloghiDisponibili(TipoPostazione tipo, String citta, LocalDate data) {
+        return metriche.ricerca("cercaRiepiloghiDisponibili",
+            () -> postazioneRepository.findRiepiloghiDisponibili(tipo, citta, data));
+    }
+    
+    /**
+     * Verifica un intervallo di date del calendario o del flusso delle disponibilità.
+     * 
+     * @param dal Prima data dell'intervallo (inclusa)
+     * @param al Ultima data dell'intervallo (inclusa)
+     * @throws IllegalArgumentException se al precede dal o l'intervallo supera {@link #MAX_GIORNI_INTERVALLO} giorni
+     */
+    public static void verificaIntervallo(LocalDate dal, LocalDate al) {
+        if (al.isBefore(dal) || !al.isBefore(dal.plusDays(MAX_GIORNI_INTERVALLO))) {
+            throw new IllegalArgumentException(
+                "Intervallo di date non valido (massimo " + MAX_GIORNI_INTERVALLO + " giorni)");
+        }
+    }
+    
+    /**
+     * Calcola per ogni edificio di una città e per ogni giorno di un intervallo
+     * il numero di postazioni libere e i posti liberi.
+     * Senza filtro sui tipi le occupazioni vengono lette dall'indice in memoria, caricando
+     * con un'unica query solo i giorni mancanti; con un filtro sui tipi vengono calcolate
+     * con un'unica query raggruppata per edificio e data.
+     * 
+     * @param citta Città degli edifici
+     * @param dal Prima data dell'intervallo (inclusa)
+     * @param al Ultima data dell'intervallo (inclusa)
+     * @param tipi Tipi di postazione da considerare (opzionale, tutti se vuoto)
+     * @return La disponibilità di ogni edificio per ogni giorno, ordinata per edificio e data
+     * @throws IllegalArgumentException se l'intervallo di date non è valido
+     */
+    public List<DisponibilitaGiorno> getCalendarioDisponibilita(String citta, LocalDate dal, LocalDate al,
+                                                                Set<TipoPostazione> tipi) {
+        verificaIntervallo(dal, al);
+        boolean tuttiITipi = tipi == null || tipi.isEmpty() || tipi.containsAll(EnumSet.allOf(TipoPostazione.class));
+        Set<TipoPostazione> tipiRicerca = tuttiITipi ? EnumSet.allOf(TipoPostazione.class) : tipi;
+        
+        List<TotaleEdificio> totali = postazioneRepository.findTotaliByCittaAndTipi(citta, tipiRicerca);
+        List<LocalDate> giorni = dal.datesUntil(al.plusDays(1)).collect(Collectors.toList());
+        List<DisponibilitaGiorno> calendario = new ArrayList<>();
+        if (totali.isEmpty()) {
+            return calendario;
+        }
+        
+        if (tuttiITipi) {
+            Set<OccupancyIndex.Chiave> chiavi = new HashSet<>();
+            totali.forEach(t -> giorni.forEach(g -> chiavi.add(new OccupancyIndex.Chiave(t.getEdificioId(), g))));
+            Map<OccupancyIndex.Chiave, OccupancyIndex.Occupazione> occupazioni = occupancyIndex.getOccupazioni(chiavi);
+            for (TotaleEdificio totale : totali) {
+                for (LocalDate giorno : giorni) {
+                    OccupancyIndex.Occupazione occupazione =
+                        occupazioni.get(new OccupancyIndex.Chiave(totale.getEdificioId(), giorno));
+                    calendario.add(new DisponibilitaGiorno(totale.getEdificioId(), totale.getNomeEdificio(), giorno,
+                        totale.getPostazioni() - occupazione.getNumeroPostazioniPrenotate(),
+                        totale.getPosti() - occupazione.getPostiOccupati()));
+                }
+            }
+            return calendario;
+        }
+        
+        Map<OccupancyIndex.Chiave, TotaleGiorno> prenotati = prenotazioneRepository
+            .findTotaliPrenotati(citta, tipiRicerca, dal, al).stream()
+            .collect(Collectors.toMap(t -> new OccupancyIndex.Chiave(t.getEdificioId(), t.getData()),
+                Function.identity()));
+        for (TotaleEdificio totale : totali) {
+            for (LocalDate giorno : giorni) {
+                TotaleGiorno prenotato = prenotati.get(new OccupancyIndex.Chiave(totale.getEdificioId(), giorno));
+                long postazioniPrenotate = prenotato != null ? prenotato.getPostazioni() : 0;
+                long postiPrenotati = prenotato != null ? prenotato.getPosti() : 0;
+                calendario.add(new DisponibilitaGiorno(totale.getEdificioId(), totale.getNomeEdificio(), giorno,
+                    totale.getPostazioni() - postazioniPrenotate, totale.getPosti() - postiPrenotati));
+            }
+        }
+        return calendario;
     }
     
     /**
@@ -161,18 +527,110 @@ public class PrenotazioneService {
     }
     
     /**
-     * Recupera tutte le prenotazioni (solo per admin) o solo quelle dell'utente.
+     * Recupera le prenotazioni più recenti di tutti gli utenti (solo per admin) o solo quelle dell'utente,
+     * al massimo {@value #MAX_DIMENSIONE_PAGINA}: lo storico completo si scorre con getPaginaPrenotazioni.
      * 
      * @param username Username dell'utente o "Administrator"
-     * @return Lista delle prenotazioni
+     * @return Lista delle prenotazioni, dalla più recente
+     * @throws IllegalArgumentException se l'utente non esiste
      */
     public List<Prenotazione> getAllPrenotazioni(String username) {
-        if ("Administrator".equals(username)) {
-            return prenotazioneRepository.findAll();
+        String filtro = "Administrator".equals(username) ? null : username;
+        return getPaginaPrenotazioni(filtro, null, null, null, MAX_DIMENSIONE_PAGINA).getElementi();
+    }
+    
+    /**
+     * Recupera una pagina di prenotazioni, dalla più recente, con paginazione a cursore su data e id.
+     * Ogni pagina costa una sola query indicizzata, indipendentemente dalla sua posizione nello storico.
+     * 
+     * @param username Username dell'utente, null per le prenotazioni di tutti gli utenti
+     * @param dal Prima data dell'intervallo (opzionale)
+     * @param al Ultima data dell'intervallo (opzionale)
+     * @param cursore Cursore restituito dalla pagina precedente, null per la prima pagina
+     * @param dimensione Numero massimo di prenotazioni della pagina
+     * @return La pagina di prenotazioni e il cursore per la successiva
+     * @throws IllegalArgumentException se l'utente non esiste o il cursore non è valido
+     */
+    public Pagina<Prenotazione> getPaginaPrenotazioni(String username, LocalDate dal, LocalDate al,
+                                                      String cursore, int dimensione) {
+        FinestraPagina finestra = new FinestraPagina(dal, al, cursore, dimensione);
+        List<Prenotazione> prenotazioni;
+        if (username == null) {
+            prenotazioni = prenotazioneRepository.findPagina(finestra.inizio, finestra.fine,
+                finestra.cursoreData, finestra.cursoreId, finestra.limite());
         } else {
-            Utente utente = utenteRepository.findByUsername(username)
-                .orElseThrow(() -> new IllegalArgumentException("Utente non trovato"));
-            return prenotazioneRepository.findByUtenteId(utente.getId());
+            prenotazioni = prenotazioneRepository.findPaginaByUtenteId(risolutore.getUtenteId(username),
+                finestra.inizio, finestra.fine, finestra.cursoreData, finestra.cursoreId, finestra.limite());
+        }
+        return finestra.pagina(prenotazioni, p -> p.getData() + ":" + p.getId());
+    }
+    
+    /**
+     * Come getPaginaPrenotazioni, ma restituisce i riepiloghi delle prenotazioni
+     * letti con una proiezione, senza caricare le entità.
+     * 
+     * @param username Username dell'utente, null per le prenotazioni di tutti gli utenti
+     * @param dal Prima data dell'intervallo (opzionale)
+     * @param al Ultima data dell'intervallo (opzionale)
+     * @param cursore Cursore restituito dalla pagina precedente, null per la prima pagina
+     * @param dimensione Numero massimo di prenotazioni della pagina
+     * @return La pagina di riepiloghi e il cursore per la successiva
+     * @throws IllegalArgumentException se l'utente non esiste o il cursore non è valido
+     */
+    public Pagina<RiepilogoPrenotazione> getPaginaRiepiloghi(String username, LocalDate dal, LocalDate al,
+                                                             String cursore, int dimensione) {
+        FinestraPagina finestra = new FinestraPagina(dal, al, cursore, dimensione);
+        List<RiepilogoPrenotazione> riepiloghi;
+        if (username == null) {
+            riepiloghi = prenotazioneRepository.findRiepiloghiPagina(finestra.inizio, finestra.fine,
+                finestra.cursoreData, finestra.cursoreId, finestra.limite());
+        } else {
+            riepiloghi = prenotazioneRepository.findRiepiloghiPaginaByUtenteId(risolutore.getUtenteId(username),
+                finestra.inizio, finestra.fine, finestra.cursoreData, finestra.cursoreId, finestra.limite());
+        }
+        return finestra.pagina(riepiloghi, r -> r.getData() + ":" + r.getId());
+    }
+    
+    /**
+     * Intervallo di date, cursore e dimensione di una richiesta di pagina.
+     * Senza cursore si parte dal giorno successivo alla fine dell'intervallo.
+     */
+    private static class FinestraPagina {
+        private final LocalDate inizio;
+        private final LocalDate fine;
+        private final int dimensione;
+        private LocalDate cursoreData;
+        private Long cursoreId = 0L;
+        
+        FinestraPagina(LocalDate dal, LocalDate al, String cursore, int dimensione) {
+            this.dimensione = Math.max(1, Math.min(dimensione, MAX_DIMENSIONE_PAGINA));
+            this.inizio = dal != null ? dal : DATA_MINIMA;
+            this.fine = al != null ? al : DATA_MASSIMA;
+            this.cursoreData = fine.plusDays(1);
+            if (cursore != null && !cursore.isEmpty()) {
+                String[] parti = cursore.split(":");
+                try {
+                    cursoreData = LocalDate.parse(parti[0]);
+                    cursoreId = Long.parseLong(parti[1]);
+                } catch (DateTimeParseException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IllegalArgumentException("Cursore non valido: " + cursore);
+                }
+            }
+        }
+        
+        Limit limite() {
+            return Limit.of(dimensione);
+        }
+        
+        /**
+         * Costruisce la pagina: se è piena, il cursore della successiva è l'ultimo elemento restituito.
+         */
+        <T> Pagina<T> pagina(List<T> elementi, Function<T, String> cursoreDi) {
+            String cursoreSuccessivo = null;
+            if (elementi.size() == dimensione) {
+                cursoreSuccessivo = cursoreDi.apply(elementi.get(elementi.size() - 1));
+            }
+            return new Pagina<>(elementi, cursoreSuccessivo);
         }
     }
     
@@ -192,6 +650,12 @@ public class PrenotazioneService {
         }
         
         prenotazioneRepository.deleteById(id);
+        
+        Postazione postazione = prenotazione.getPostazione();
+        occupancyIndex.rimuoviPrenotazione(postazione.getEdificio().getId(), prenotazione.getData(),
+            postazione.getId(), postazione.getNumeroMassimoOccupanti());
+        notificaVariazione(postazione.getEdificio().getId(), postazione.getEdificio().getCitta(), postazione.getId(),
+            postazione.getCodice(), prenotazione.getData(), false);
     }
     
     /**
@@ -200,7 +664,7 @@ public class PrenotazioneService {
      * @return Lista di tutte le postazioni
      */
     public List<Postazione> getAllPostazioni() {
-        return postazioneRepository.findAll();
+        return postazioneRepository.findAllByOrderByCodice();
     }
     
     /**
@@ -225,7 +689,11 @@ public class PrenotazioneService {
         postazione.setNumeroMassimoOccupanti(maxOccupanti);
         postazione.setEdificio(edificio);
         
-        return postazioneRepository.save(postazione);
+        Postazione salvata = postazioneRepository.save(postazione);
+        occupancyIndex.invalidaCapienza(edificioId);
+        risolutore.invalidaPostazione(codice);
+        versioni.incrementaCatalogo();
+        return salvata;
     }
     
     /**
@@ -237,6 +705,9 @@ public class PrenotazioneService {
         Postazione postazione = postazioneRepository.findByCodice(codice)
             .orElseThrow(() -> new IllegalArgumentException("Postazione non trovata"));
         postazioneRepository.delete(postazione);
+        occupancyIndex.invalidaCapienza(postazione.getEdificio().getId());
+        risolutore.invalidaPostazione(codice);
+        versioni.incrementaCatalogo();
     }
 
     /**
@@ -246,7 +717,7 @@ public class PrenotazioneService {
      * @return La prenotazione trovata
      */
     public Prenotazione getPrenotazioneById(Long id) {
-        return prenotazioneRepository.findById(id)
+        return prenotazioneRepository.findDettaglioById(id)
             .orElseThrow(() -> new IllegalArgumentException("Prenotazione non trovata"));
     }
 
@@ -269,29 +740,102 @@ public class PrenotazioneService {
             throw new IllegalStateException("Non hai i permessi per modificare questa prenotazione");
         }
         
-        if (nuovaData != null) {
-            // Verifica disponibilità per la nuova data
-            if (!prenotazione.getData().equals(nuovaData) && 
-                prenotazioneRepository.existsByPostazioneIdAndData(
-                    prenotazione.getPostazione().getId(), nuovaData)) {
-                throw new IllegalStateException("Postazione già prenotata per la data selezionata");
-            }
-            prenotazione.setData(nuovaData);
+        Postazione vecchiaPostazione = prenotazione.getPostazione();
+        LocalDate vecchiaData = prenotazione.getData();
+        
+        LocalDate data = nuovaData != null ? nuovaData : vecchiaData;
+        Postazione destinazione = nuovoCodicePostazione != null && !nuovoCodicePostazione.isEmpty()
+            ? postazioneRepository.findByCodice(nuovoCodicePostazione)
+                .orElseThrow(() -> new IllegalArgumentException("Postazione non trovata"))
+            : vecchiaPostazione;
+        
+        boolean cambioPostazione = !vecchiaPostazione.getId().equals(destinazione.getId());
+        if (!cambioPostazione && vecchiaData.equals(data)) {
+            return prenotazioneRepository.save(prenotazione);
         }
         
-        if (nuovoCodicePostazione != null && !nuovoCodicePostazione.isEmpty()) {
-            Postazione nuovaPostazione = postazioneRepository.findByCodice(nuovoCodicePostazione)
-                .orElseThrow(() -> new IllegalArgumentException("Postazione non trovata"));
-                
-            // Verifica disponibilità della nuova postazione
-            if (!prenotazione.getPostazione().getId().equals(nuovaPostazione.getId()) &&
-                prenotazioneRepository.existsByPostazioneIdAndData(
-                    nuovaPostazione.getId(), prenotazione.getData())) {
-                throw new IllegalStateException("Nuova postazione già prenotata per questa data");
+        // Verifica disponibilità e salva sotto il lock dell'edificio di destinazione per la nuova data
+        Prenotazione modificata = occupancyIndex.conLock(destinazione.getEdificio().getId(), data, occupazione -> {
+            if (occupazione.isPrenotata(destinazione.getId())) {
+                throw new IllegalStateException(cambioPostazione
+                    ? "Nuova postazione già prenotata per questa data"
+                    : "Postazione già prenotata per la data selezionata");
             }
-            prenotazione.setPostazione(nuovaPostazione);
-        }
+            prenotazione.setData(data);
+            prenotazione.setPostazione(destinazione);
+            Prenotazione risultato = salva(prenotazione, cambioPostazione
+                ? "Nuova postazione già prenotata per questa data"
+                : "Postazione già prenotata per la data selezionata");
+            occupazione.aggiungi(destinazione.getId(), destinazione.getNumeroMassimoOccupanti());
+            return risultato;
+        });
         
-        return prenotazioneRepository.save(prenotazione);
+        occupancyIndex.rimuoviPrenotazione(vecchiaPostazione.getEdificio().getId(), vecchiaData,
+            vecchiaPostazione.getId(), vecchiaPostazione.getNumeroMassimoOccupanti());
+        
+        // La destinazione è letta senza edificio: la sua città viene dal risolutore se l'edificio cambia
+        Long vecchioEdificioId = vecchiaPostazione.getEdificio().getId();
+        String vecchiaCitta = vecchiaPostazione.getEdificio().getCitta();
+        notificaVariazione(vecchioEdificioId, vecchiaCitta, vecchiaPostazione.getId(), vecchiaPostazione.getCodice(),
+            vecchiaData, false);
+        notificaVariazione(destinazione.getEdificio().getId(),
+            Objects.equals(destinazione.getEdificio().getId(), vecchioEdificioId)
+                ? vecchiaCitta : risolutore.getPostazione(destinazione.getCodice()).getCitta(),
+            destinazione.getId(), destinazione.getCodice(), data, true);
+        return modificata;
+    }
+    
+    /**
+     * Registra una postazione prenotata o liberata, dopo che la modifica è stata salvata:
+     * cambia la versione delle disponibilità della città nel giorno e pubblica la variazione sul flusso.
+     * 
+     * @param edificioId ID dell'edificio della postazione
+     * @param citta città dell'edificio
+     * @param postazioneId ID della postazione
+     * @param codicePostazione codice della postazione
+     * @param data giorno della prenotazione
+     * @param prenotata true se la postazione è stata prenotata, false se è stata liberata
+     */
+    private void notificaVariazione(Long edificioId, String citta, Long postazioneId, String codicePostazione,
+                                    LocalDate data, boolean prenotata) {
+        versioni.incrementa(citta, data);
+        flusso.pubblica(new VariazioneDisponibilita(edificioId, citta, postazioneId, codicePostazione, data,
+            prenotata));
+    }
+    
+    /**
+     * Salva una prenotazione traducendo le violazioni dei vincoli di unicità negli errori di prenotazione.
+     * 
+     * @param prenotazione la prenotazione da salvare
+     * @param postazioneOccupata messaggio da usare se la postazione è già prenotata per la data
+     * @return la prenotazione salvata
+     * @throws IllegalStateException se la postazione o l'utente hanno già una prenotazione per la data
+     */
+    private Prenotazione salva(Prenotazione prenotazione, String postazioneOccupata) {
+        try {
+            return prenotazioneRepository.save(prenotazione);
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalStateException(motivoViolazione(e, postazioneOccupata), e);
+        }
+    }
+    
+    /**
+     * Individua quale vincolo di unicità delle prenotazioni è stato violato.
+     * 
+     * @param e l'eccezione sollevata dall'insert o dall'aggiornamento
+     * @param postazioneOccupata messaggio da usare se la postazione è già prenotata per la data
+     * @return il messaggio dell'errore di prenotazione corrispondente
+     * @throws DataIntegrityViolationException se la violazione non riguarda i vincoli delle prenotazioni
+     */
+    static String motivoViolazione(DataIntegrityViolationException e, String postazioneOccupata) {
+        // Il nome del vincolo compare nel messaggio del database, in maiuscolo su H2 e in minuscolo su PostgreSQL
+        String messaggio = String.valueOf(e.getMostSpecificCause().getMessage()).toLowerCase();
+        if (messaggio.contains(Prenotazione.VINCOLO_UTENTE_DATA)) {
+            return UTENTE_GIA_PRENOTATO;
+        }
+        if (messaggio.contains(Prenotazione.VINCOLO_POSTAZIONE_DATA)) {
+            return postazioneOccupata;
+        }
+        throw e;
     }
-} 
\ No newline at end of file
+}
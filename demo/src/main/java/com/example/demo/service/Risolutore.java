@@ -0,0 +1,148 @@
+package com.example.demo.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.dto.PostazioneRisolta;
+import com.example.demo.repository.PostazioneRepository;
+import com.example.demo.repository.UtenteRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache limitata che risolve username e codici postazione negli ID usati dal percorso di prenotazione.
+ * Una prenotazione per username e codice non deve rileggere utente e postazione a ogni richiesta:
+ * dopo la prima risoluzione bastano gli ID in memoria.
+ * Gli esiti negativi non vengono memorizzati; le voci vengono invalidate da registrazione
+ * ed eliminazione degli utenti e dalle operazioni di amministrazione delle postazioni.
+ * Le statistiche delle due cache vengono pubblicate come metriche Micrometer.
+ * Le query di risoluzione vengono eseguite fuori dalla cache e non con un caricamento atomico:
+ * Caffeine esegue i caricamenti sotto un lock interno che bloccherebbe il carrier dei thread virtuali.
+ * Due richieste concorrenti per la stessa chiave possono quindi eseguire entrambe la query.
+ * Perché una query iniziata prima di un'invalidazione non rimetta in cache il valore vecchio,
+ * ogni invalidazione incrementa una generazione e il risultato viene inserito solo se la generazione
+ * letta prima della query non è cambiata; il confronto avviene nella compute della mappa,
+ * sotto lo stesso lock della rimozione.
+ */
+@Component
+public class Risolutore implements MeterBinder {
+
+    private static final int DIMENSIONE_MASSIMA = 100_000;
+
+    /**
+     * Scadenza di sicurezza per le modifiche eseguite fuori da questa istanza dell'applicazione
+     */
+    private static final Duration SCADENZA = Duration.ofMinutes(10);
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private PostazioneRepository postazioneRepository;
+
+    private final Cache<String, Long> utenti = Caffeine.newBuilder()
+        .maximumSize(DIMENSIONE_MASSIMA)
+        .expireAfterWrite(SCADENZA)
+        .recordStats()
+        .build();
+
+    private final Cache<String, PostazioneRisolta> postazioni = Caffeine.newBuilder()
+        .maximumSize(DIMENSIONE_MASSIMA)
+        .expireAfterWrite(SCADENZA)
+        .recordStats()
+        .build();
+
+    private final AtomicLong generazioneUtenti = new AtomicLong();
+
+    private final AtomicLong generazionePostazioni = new AtomicLong();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, utenti, "risolutore.utenti");
+        CaffeineCacheMetrics.monitor(registry, postazioni, "risolutore.postazioni");
+    }
+
+    /**
+     * Restituisce l'ID dell'utente con lo username indicato.
+     *
+     * @param username lo username dell'utente
+     * @return l'ID dell'utente
+     * @throws IllegalArgumentException se l'utente non esiste
+     */
+    public Long getUtenteId(String username) {
+        Long utenteId = utenti.getIfPresent(username);
+        if (utenteId == null) {
+            long generazione = generazioneUtenti.get();
+            utenteId = utenteRepository.findIdByUsername(username)
+                .orElseThrow(() -> new IllegalArgumentException("Utente non trovato: " + username));
+            inserisci(utenti, generazioneUtenti, generazione, username, utenteId);
+        }
+        return utenteId;
+    }
+
+    /**
+     * Restituisce ID, edificio e capienza della postazione con il codice indicato.
+     *
+     * @param codice il codice della postazione
+     * @return i dati della postazione necessari alla prenotazione
+     * @throws IllegalArgumentException se la postazione non esiste
+     */
+    public PostazioneRisolta getPostazione(String codice) {
+        PostazioneRisolta postazione = postazioni.getIfPresent(codice);
+        if (postazione == null) {
+            long generazione = generazionePostazioni.get();
+            postazione = postazioneRepository.findRisoltaByCodice(codice)
+                .orElseThrow(() -> new IllegalArgumentException("Postazione non trovata: " + codice));
+            inserisci(postazioni, generazionePostazioni, generazione, codice, postazione);
+        }
+        return postazione;
+    }
+
+    /**
+     * Invalida la risoluzione di uno username.
+     *
+     * @param username lo username dell'utente registrato o eliminato
+     */
+    public void invalidaUtente(String username) {
+        generazioneUtenti.incrementAndGet();
+        utenti.invalidate(username);
+    }
+
+    /**
+     * Invalida la risoluzione di un codice postazione.
+     *
+     * @param codice il codice della postazione aggiunta o eliminata
+     */
+    public void invalidaPostazione(String codice) {
+        generazionePostazioni.incrementAndGet();
+        postazioni.invalidate(codice);
+    }
+
+    /**
+     * Svuota entrambe le cache.
+     */
+    public void svuota() {
+        generazioneUtenti.incrementAndGet();
+        generazionePostazioni.incrementAndGet();
+        utenti.invalidateAll();
+        postazioni.invalidateAll();
+    }
+
+    /**
+     * Inserisce il risultato di una query se nessuna invalidazione è avvenuta dopo la lettura della generazione.
+     * L'invalidazione incrementa la generazione prima di rimuovere la voce: se la incrementa dopo il confronto,
+     * la sua rimozione segue comunque l'inserimento.
+     */
+    private static <V> void inserisci(Cache<String, V> cache, AtomicLong generazioneCorrente, long generazione,
+                                      String chiave, V valore) {
+        cache.asMap().compute(chiave, (k, esistente) ->
+            esistente != null ? esistente : generazioneCorrente.get() == generazione ? valore : null);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.demo.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.model.TipoPostazione;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Cache delle risposte della ricerca delle postazioni disponibili, già serializzate in JSON
+ * e, sopra una dimensione minima, anche compresse con gzip.
+ * Ogni risposta è associata all'ETag delle disponibilità della sua città e data: quando una prenotazione
+ * cambia la versione, la risposta memorizzata non viene più usata e viene sostituita alla ricerca successiva.
+ * La cache è limitata in byte, contando anche una quota fissa per voce e la città scelta dal client,
+ * e la politica di ammissione di Caffeine vi mantiene le ricerche più frequenti.
+ */
+@Component
+public class RisposteDisponibili implements MeterBinder {
+
+    /**
+     * Byte massimi occupati dalle risposte memorizzate
+     */
+    private static final long MAX_BYTE = 64L * 1024 * 1024;
+
+    /**
+     * Byte stimati di ogni voce oltre ai corpi e alle stringhe: chiave, record, array e nodo della cache.
+     * Senza questa quota le risposte vuote peserebbero due byte e il limite non limiterebbe le voci
+     */
+    private static final int BYTE_PER_VOCE = 256;
+
+    /**
+     * Sotto questa dimensione il JSON non viene compresso: il guadagno non varrebbe il costo
+     */
+    private static final int MIN_BYTE_COMPRESSIONE = 1024;
+
+    /**
+     * Risposta pronta da scrivere: il JSON e, se conveniente, la sua versione compressa (altrimenti null)
+     */
+    public record Risposta(String etag, byte[] json, byte[] gzip) {
+    }
+
+    private record Chiave(TipoPostazione tipo, String citta, LocalDate data) {
+    }
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Cache<Chiave, Risposta> risposte = Caffeine.newBuilder()
+        .maximumWeight(MAX_BYTE)
+        .<Chiave, Risposta>weigher((chiave, risposta) -> BYTE_PER_VOCE
+            + 2 * (chiave.citta().length() + risposta.etag().length())
+            + risposta.json().length + (risposta.gzip() != null ? risposta.gzip().length : 0))
+        .build();
+
+    private Counter trovate;
+
+    private Counter calcolate;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        trovate = Counter.builder("prenotazioni.risposte.disponibili").tag("esito", "trovata")
+            .description("Ricerche delle disponibili servite dalla cache delle risposte")
+            .register(registry);
+        calcolate = Counter.builder("prenotazioni.risposte.disponibili").tag("esito", "calcolata")
+            .description("Ricerche delle disponibili eseguite e serializzate")
+            .register(registry);
+    }
+
+    /**
+     * Restituisce la risposta della ricerca delle postazioni disponibili per la versione indicata,
+     * eseguendo e serializzando la ricerca solo se non è già in cache per quella versione.
+     *
+     * @param tipo Tipo di postazione
+     * @param citta Città
+     * @param data Data per cui verificare la disponibilità
+     * @param etag ETag delle disponibilità della città e data, letto prima della ricerca
+     * @return la risposta serializzata
+     */
+    public Risposta get(TipoPostazione tipo, String citta, LocalDate data, String etag) {
+        Chiave chiave = new Chiave(tipo, citta, data);
+        Risposta risposta = risposte.getIfPresent(chiave);
+        if (risposta != null && risposta.etag().equals(etag)) {
+            trovate.increment();
+            return risposta;
+        }
+        calcolate.increment();
+        List<RiepilogoPostazione> postazioni = prenotazioneService.cercaRiepiloghiDisponibili(tipo, citta, data);
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(postazioni);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Impossibile serializzare le postazioni disponibili", e);
+        }
+        risposta = new Risposta(etag, json, json.length >= MIN_BYTE_COMPRESSIONE ? comprimi(json) : null);
+        risposte.put(chiave, risposta);
+        return risposta;
+    }
+
+    /**
+     * Verifica se un header Accept-Encoding accetta gzip, considerando i valori q:
+     * "gzip;q=0" lo esclude, "*" lo accetta se gzip non è indicato esplicitamente.
+     *
+     * @param acceptEncoding valore dell'header, anche null
+     * @return true se la risposta può essere inviata compressa con gzip
+     */
+    public static boolean accettaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double tutte = null;
+        for (String codifica : acceptEncoding.split(",")) {
+            String[] parti = codifica.split(";");
+            String nome = parti[0].trim().toLowerCase();
+            double q = 1;
+            for (int i = 1; i < parti.length; i++) {
+                String parametro = parti[i].trim().toLowerCase();
+                if (parametro.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(parametro.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (nome.equals("gzip") || nome.equals("x-gzip")) {
+                gzip = q;
+            } else if (nome.equals("*")) {
+                tutte = q;
+            }
+        }
+        if (gzip != null) {
+            return gzip > 0;
+        }
+        return tutte != null && tutte > 0;
+    }
+
+    private static byte[] comprimi(byte[] json) {
+        ByteArrayOutputStream compresso = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compresso)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compresso.toByteArray();
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.demo.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.ContatoreQuery;
+import com.example.demo.dto.UtenteData;
+import com.example.demo.model.Postazione;
+import com.example.demo.model.Prenotazione;
+import com.example.demo.model.Utente;
+import com.example.demo.repository.PrenotazioneRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Motore alternativo per le prenotazioni singole, con un solo scrittore per edificio.
+ * Le richieste vengono distribuite per edificio su un numero fisso di code, ognuna servita da un unico thread:
+ * lo scrittore preleva dalla coda tutte le richieste in attesa (fino alla dimensione massima del lotto),
+ * le ammette in memoria contro l'occupazione corrente e inserisce quelle accettate con un unico insert batch,
+ * in una sola transazione. Il chiamante resta in attesa dell'esito della propria richiesta
+ * per al massimo prenotazioni.scrittore.attesa-ms: se lo scrittore non l'ha ancora presa in carico,
+ * la richiesta viene ritirata e fallisce con un errore temporaneo, che il client può ripetere.
+ * Se invece è già in elaborazione, il chiamante ne attende l'esito per al massimo un altro intervallo uguale,
+ * poi fallisce con un errore temporaneo anche se la prenotazione potrebbe ancora essere creata.
+ *
+ * Le query vengono eseguite sul thread dello scrittore: la metrica prenotazioni.query del chiamante
+ * non le conta, e sono registrate per lotto in prenotazioni.scrittore.query.
+ *
+ * Si attiva con prenotazioni.scrittore.enabled=true; i lock dell'indice delle occupazioni vengono
+ * comunque acquisiti, perché prenotazioni multiple, modifiche ed eliminazioni continuano a usarli.
+ */
+@Component
+public class ScrittorePrenotazioni {
+
+    /**
+     * Richiesta di prenotazione in attesa nella coda del suo edificio
+     */
+    private record Richiesta(Postazione postazione, Long postazioneId, Long edificioId, int posti, LocalDate data,
+                             Long utenteId, Supplier<Utente> utente, CompletableFuture<Prenotazione> esito,
+                             AtomicBoolean presa) {
+
+        OccupancyIndex.Chiave chiave() {
+            return new OccupancyIndex.Chiave(edificioId, data);
+        }
+    }
+
+    @Value("${prenotazioni.scrittore.enabled:false}")
+    private boolean attivo;
+
+    @Value("${prenotazioni.scrittore.code:4}")
+    private int numeroCode;
+
+    @Value("${prenotazioni.scrittore.lotto:256}")
+    private int dimensioneLotto;
+
+    @Value("${prenotazioni.scrittore.attesa-ms:10000}")
+    private long attesaMassima;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final List<BlockingQueue<Richiesta>> code = new ArrayList<>();
+
+    private final List<Thread> scrittori = new ArrayList<>();
+
+    private volatile boolean arrestato;
+
+    private DistributionSummary lotti;
+
+    private DistributionSummary query;
+
+    @PostConstruct
+    void avvia() {
+        if (!attivo) {
+            return;
+        }
+        lotti = DistributionSummary.builder("prenotazioni.scrittore.lotto")
+            .description("Prenotazioni elaborate da uno scrittore in un'unica transazione")
+            .register(registry);
+        query = DistributionSummary.builder("prenotazioni.scrittore.query")
+            .description("Istruzioni SQL eseguite da Hibernate per ogni lotto di uno scrittore")
+            .register(registry);
+        for (int i = 0; i < numeroCode; i++) {
+            BlockingQueue<Richiesta> coda = new LinkedBlockingQueue<>();
+            code.add(coda);
+            scrittori.add(Thread.ofPlatform().name("scrittore-prenotazioni-" + i).daemon()
+                .start(() -> scrivi(coda)));
+        }
+    }
+
+    @PreDestroy
+    void arresta() {
+        arrestato = true;
+        scrittori.forEach(Thread::interrupt);
+    }
+
+    /**
+     * @return true se le prenotazioni singole passano dagli scrittori per edificio
+     */
+    public boolean isAttivo() {
+        return attivo;
+    }
+
+    /**
+     * Accoda una prenotazione sullo scrittore del suo edificio e ne attende l'esito.
+     * I controlli sono gli stessi della prenotazione sotto lock: edificio al completo, postazione occupata
+     * e utente già prenotato per la data, nell'ordine.
+     *
+     * @param postazione postazione da prenotare, anche solo come riferimento
+     * @param postazioneId ID della postazione
+     * @param edificioId ID dell'edificio della postazione
+     * @param posti numero massimo di occupanti della postazione
+     * @param data Data della prenotazione
+     * @param utenteId ID dell'utente che effettua la prenotazione
+     * @param utente fornisce l'utente, letto dallo scrittore solo se i vincoli sono rispettati
+     * @return La prenotazione creata
+     * @throws IllegalStateException se ci sono conflitti di prenotazione
+     * @throws IllegalArgumentException se l'utente non esiste
+     * @throws TransientDataAccessResourceException se il servizio è in arresto o l'attesa è scaduta;
+     *         se la richiesta era già in elaborazione, la prenotazione potrebbe comunque essere creata
+     */
+    public Prenotazione prenota(Postazione postazione, Long postazioneId, Long edificioId, int posti, LocalDate data,
+                                Long utenteId, Supplier<Utente> utente) {
+        if (arrestato) {
+            throw inArresto();
+        }
+        Richiesta richiesta = new Richiesta(postazione, postazioneId, edificioId, posti, data, utenteId, utente,
+            new CompletableFuture<>(), new AtomicBoolean());
+        BlockingQueue<Richiesta> coda = code.get(Math.floorMod(edificioId.hashCode(), code.size()));
+        coda.add(richiesta);
+        // Lo scrittore potrebbe aver già svuotato la coda per l'arresto
+        if (arrestato && coda.remove(richiesta)) {
+            throw inArresto();
+        }
+        try {
+            try {
+                return richiesta.esito().get(attesaMassima, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (richiesta.presa().compareAndSet(false, true)) {
+                    coda.remove(richiesta);
+                    throw new TransientDataAccessResourceException(
+                        "Tempo di attesa della prenotazione scaduto, riprovare", e);
+                }
+                // Lo scrittore sta già elaborando la richiesta e ne completa sempre l'esito, anche in caso di errore:
+                // l'attesa resta comunque limitata, ad esempio se il database non risponde
+                return richiesta.esito().get(attesaMassima, TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            throw new TransientDataAccessResourceException(
+                "Esito della prenotazione non ancora disponibile, verificare le prenotazioni prima di riprovare", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("Attesa della prenotazione interrotta", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            if (e.getCause() instanceof Error errore) {
+                throw errore;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static TransientDataAccessResourceException inArresto() {
+        return new TransientDataAccessResourceException("Servizio di prenotazione in arresto");
+    }
+
+    /**
+     * Ciclo di uno scrittore: attende una richiesta, vi aggiunge quelle già in coda ed elabora il lotto.
+     */
+    private void scrivi(BlockingQueue<Richiesta> coda) {
+        List<Richiesta> lotto = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                lotto.add(coda.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            coda.drainTo(lotto, dimensioneLotto - 1);
+            // Le richieste il cui chiamante ha smesso di attendere non vengono elaborate
+            lotto.removeIf(richiesta -> !richiesta.presa().compareAndSet(false, true));
+            if (lotto.isEmpty()) {
+                continue;
+            }
+            long iniziali = ContatoreQuery.getConteggio();
+            try {
+                elabora(lotto);
+            } catch (Throwable e) {
+                // Anche un Error non deve fermare lo scrittore lasciando i chiamanti in attesa
+                lotto.forEach(richiesta -> richiesta.esito().completeExceptionally(e));
+            }
+            lotti.record(lotto.size());
+            query.record(ContatoreQuery.getConteggio() - iniziali);
+            lotto.clear();
+        }
+        // Le richieste rimaste in coda non verranno più elaborate
+        coda.forEach(richiesta -> richiesta.esito().completeExceptionally(inArresto()));
+    }
+
+    /**
+     * Ammette le richieste di un lotto e inserisce quelle accettate in un'unica transazione.
+     * Le date già prenotate dagli utenti vengono lette con una sola query per tutto il lotto.
+     */
+    private void elabora(List<Richiesta> lotto) {
+        Set<UtenteData> datePrenotate = new HashSet<>(prenotazioneRepository.findDatePrenotate(
+            lotto.stream().map(Richiesta::utenteId).collect(Collectors.toSet()),
+            lotto.stream().map(Richiesta::data).collect(Collectors.toSet())));
+
+        occupancyIndex.conLock(lotto.stream().map(Richiesta::chiave).toList(), occupazioni -> {
+            List<Richiesta> accettate = new ArrayList<>();
+            List<Prenotazione> daInserire = new ArrayList<>();
+            for (Richiesta richiesta : lotto) {
+                OccupancyIndex.Occupazione occupazione = occupazioni.get(richiesta.chiave());
+                UtenteData utenteData = new UtenteData(richiesta.utenteId(), richiesta.data());
+                try {
+                    if (occupancyIndex.isCompleto(richiesta.edificioId(), occupazione)) {
+                        throw new IllegalStateException(PrenotazioneService.EDIFICIO_COMPLETO);
+                    }
+                    if (occupazione.isPrenotata(richiesta.postazioneId())) {
+                        throw new IllegalStateException(PrenotazioneService.POSTAZIONE_OCCUPATA);
+                    }
+                    if (datePrenotate.contains(utenteData)) {
+                        throw new IllegalStateException(PrenotazioneService.UTENTE_GIA_PRENOTATO);
+                    }
+                    Prenotazione prenotazione = new Prenotazione();
+                    prenotazione.setUtente(richiesta.utente().get());
+                    prenotazione.setPostazione(richiesta.postazione());
+                    prenotazione.setData(richiesta.data());
+
+                    // L'occupazione viene aggiornata subito, così le richieste successive del lotto la vedono
+                    occupazione.aggiungi(richiesta.postazioneId(), richiesta.posti());
+                    datePrenotate.add(utenteData);
+                    accettate.add(richiesta);
+                    daInserire.add(prenotazione);
+                } catch (RuntimeException e) {
+                    richiesta.esito().completeExceptionally(e);
+                }
+            }
+            if (!daInserire.isEmpty()) {
+                inserisci(accettate, daInserire, occupazioni);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Inserisce le prenotazioni accettate con un unico insert batch. Se un vincolo di unicità viene violato,
+     * ad esempio perché lo stesso utente ha prenotato nello stesso momento in un edificio di un'altra coda,
+     * il batch viene annullato e le prenotazioni vengono salvate una alla volta per isolare quella in conflitto.
+     * Ogni prenotazione che non viene salvata libera il proprio posto nell'indice senza fermare le successive.
+     */
+    private void inserisci(List<Richiesta> accettate, List<Prenotazione> daInserire,
+                           Map<OccupancyIndex.Chiave, OccupancyIndex.Occupazione> occupazioni) {
+        List<Long> ids;
+        try {
+            ids = prenotazioneRepository.inserisciInBatch(daInserire);
+        } catch (DataIntegrityViolationException e) {
+            for (int i = 0; i < accettate.size(); i++) {
+                Richiesta richiesta = accettate.get(i);
+                try {
+                    richiesta.esito().complete(prenotazioneRepository.save(daInserire.get(i)));
+                } catch (RuntimeException errore) {
+                    occupazioni.get(richiesta.chiave()).rimuovi(richiesta.postazioneId(), richiesta.posti());
+                    richiesta.esito().completeExceptionally(errorePrenotazione(errore));
+                }
+            }
+            return;
+        } catch (RuntimeException e) {
+            for (Richiesta richiesta : accettate) {
+                occupazioni.get(richiesta.chiave()).rimuovi(richiesta.postazioneId(), richiesta.posti());
+            }
+            throw e;
+        }
+        for (int i = 0; i < accettate.size(); i++) {
+            Prenotazione prenotazione = daInserire.get(i);
+            prenotazione.setId(ids.get(i));
+            accettate.get(i).esito().complete(prenotazione);
+        }
+    }
+
+    /**
+     * Converte l'errore del salvataggio di una prenotazione: le violazioni dei vincoli di unicità
+     * delle prenotazioni diventano errori di prenotazione, gli altri errori restano invariati.
+     */
+    private static RuntimeException errorePrenotazione(RuntimeException errore) {
+        if (!(errore instanceof DataIntegrityViolationException violazione)) {
+            return errore;
+        }
+        try {
+            return new IllegalStateException(
+                PrenotazioneService.motivoViolazione(violazione, PrenotazioneService.POSTAZIONE_OCCUPATA), violazione);
+        } catch (DataIntegrityViolationException altraViolazione) {
+            return altraViolazione;
+        }
+    }
+}
@@ -18,6 +18,9 @@ public class UtenteService {
     @Autowired
     private UtenteRepository utenteRepository;
     
+    @Autowired
+    private Risolutore risolutore;
+    
     /**
      * Verifica se esiste già un utente con lo username specificato.
      * 
@@ -51,7 +54,9 @@ public class UtenteService {
         utente.setNomeCompleto(nomeCompleto);
         utente.setEmail(email);
         
-        return utenteRepository.save(utente);
+        Utente salvato = utenteRepository.save(utente);
+        risolutore.invalidaUtente(username);
+        return salvato;
     }
     
     /**
@@ -73,5 +78,6 @@ public class UtenteService {
         Utente utente = utenteRepository.findByUsername(username)
             .orElseThrow(() -> new IllegalArgumentException("Utente non trovato"));
         utenteRepository.delete(utente);
+        risolutore.invalidaUtente(username);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.example.demo.service;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Versioni delle disponibilità per città e giorno, usate come ETag delle ricerche delle postazioni libere.
+ * Ogni prenotazione, modifica o eliminazione assegna alla sua coppia (città, giorno) un nuovo valore
+ * di una sequenza globale; le modifiche alle postazioni cambiano invece la versione del catalogo,
+ * che fa parte di tutti gli ETag. L'ETag contiene anche un identificativo dell'istanza,
+ * così un riavvio non ripropone valori già inviati ai client.
+ *
+ * Le versioni vengono lette prima di eseguire la ricerca e incrementate dopo il salvataggio:
+ * nel caso peggiore un client riceve dati nuovi con un ETag vecchio e li scarica una volta in più,
+ * mai dati vecchi con un ETag nuovo.
+ */
+@Component
+public class VersioniDisponibilita {
+
+    private static final int DIMENSIONE_MASSIMA = 100_000;
+
+    private record Chiave(String citta, LocalDate data) {
+    }
+
+    private final String istanza = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong sequenza = new AtomicLong();
+
+    private final AtomicLong catalogo = new AtomicLong();
+
+    /**
+     * Versione restituita per le coppie non presenti: almeno pari a quella di ogni coppia rimossa,
+     * perché una coppia rimossa dall'archivio non torni a una versione già usata
+     */
+    private final AtomicLong minima = new AtomicLong();
+
+    private final Cache<Chiave, Long> versioni = Caffeine.newBuilder()
+        .maximumSize(DIMENSIONE_MASSIMA)
+        // Eseguito in modo sincrono durante la rimozione, prima che la coppia risulti assente
+        .<Chiave, Long>evictionListener((chiave, versione, causa) -> minima.accumulateAndGet(versione, Math::max))
+        .build();
+
+    /**
+     * Registra una modifica alle prenotazioni di una città in un giorno.
+     *
+     * @param citta città dell'edificio
+     * @param data giorno della prenotazione
+     */
+    public void incrementa(String citta, LocalDate data) {
+        versioni.put(new Chiave(citta, data), sequenza.incrementAndGet());
+    }
+
+    /**
+     * Registra una modifica alle postazioni, che cambia le disponibilità di tutte le città e i giorni.
+     */
+    public void incrementaCatalogo() {
+        catalogo.incrementAndGet();
+    }
+
+    /**
+     * Restituisce l'ETag delle disponibilità di una città in un giorno, senza eseguire query.
+     *
+     * @param citta città degli edifici
+     * @param data giorno della ricerca
+     * @return l'ETag, tra virgolette
+     */
+    public String getEtag(String citta, LocalDate data) {
+        Long versione = versioni.getIfPresent(new Chiave(citta, data));
+        return "\"" + istanza + "-" + catalogo.get() + "-" + (versione != null ? versione : minima.get()) + "\"";
+    }
+}
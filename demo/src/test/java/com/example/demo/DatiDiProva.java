@@ -0,0 +1,118 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.Edificio;
+import com.example.demo.model.Postazione;
+import com.example.demo.model.TipoPostazione;
+import com.example.demo.model.Utente;
+import com.example.demo.repository.EdificioRepository;
+import com.example.demo.repository.PostazioneRepository;
+import com.example.demo.repository.UtenteRepository;
+
+/**
+ * Crea e salva edifici, postazioni e utenti per i test sul database reale.
+ * I test condividono lo stesso database in memoria: nomi, codici e username devono essere univoci.
+ *
+ * Si inietta come un qualsiasi componente:
+ * <pre>
+ * &#64;Autowired
+ * DatiDiProva dati;
+ * ...
+ * Edificio edificio = dati.creaEdificio("Nome", "Citta");
+ * Postazione postazione = dati.creaPostazione("Nome-0", edificio);
+ * </pre>
+ */
+@Component
+public class DatiDiProva {
+
+    @Autowired
+    private EdificioRepository edificioRepository;
+
+    @Autowired
+    private PostazioneRepository postazioneRepository;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    /**
+     * @param nome nome dell'edificio, usato anche per l'indirizzo
+     * @param citta città dell'edificio
+     * @return l'edificio salvato
+     */
+    public Edificio creaEdificio(String nome, String citta) {
+        Edificio edificio = new Edificio();
+        edificio.setNome(nome);
+        edificio.setIndirizzo("Via " + nome);
+        edificio.setCitta(citta);
+        return edificioRepository.save(edificio);
+    }
+
+    /**
+     * Crea una postazione privata per un solo occupante.
+     *
+     * @param codice codice univoco della postazione
+     * @param edificio edificio della postazione
+     * @return la postazione salvata
+     */
+    public Postazione creaPostazione(String codice, Edificio edificio) {
+        return creaPostazione(codice, edificio, TipoPostazione.PRIVATO, 1);
+    }
+
+    /**
+     * @param codice codice univoco della postazione
+     * @param edificio edificio della postazione
+     * @param tipo tipo della postazione
+     * @param maxOccupanti numero massimo di occupanti
+     * @return la postazione salvata
+     */
+    public Postazione creaPostazione(String codice, Edificio edificio, TipoPostazione tipo, int maxOccupanti) {
+        return postazioneRepository.save(nuovaPostazione(codice, edificio, tipo, maxOccupanti));
+    }
+
+    /**
+     * Crea le postazioni di un edificio con codici progressivi, salvandole insieme.
+     *
+     * @param prefisso prefisso dei codici, seguito da "-" e dal numero della postazione
+     * @param edificio edificio delle postazioni
+     * @param numero numero di postazioni
+     * @param tipo tipo delle postazioni
+     * @param maxOccupanti numero massimo di occupanti di ogni postazione
+     * @return le postazioni salvate, nell'ordine dei codici
+     */
+    public List<Postazione> creaPostazioni(String prefisso, Edificio edificio, int numero, TipoPostazione tipo,
+                                           int maxOccupanti) {
+        List<Postazione> postazioni = new ArrayList<>();
+        for (int i = 0; i < numero; i++) {
+            postazioni.add(nuovaPostazione(prefisso + "-" + i, edificio, tipo, maxOccupanti));
+        }
+        return postazioneRepository.saveAll(postazioni);
+    }
+
+    /**
+     * @param username username univoco, usato anche per nome ed email
+     * @return l'utente salvato
+     */
+    public Utente creaUtente(String username) {
+        Utente utente = new Utente();
+        utente.setUsername(username);
+        utente.setNomeCompleto(username);
+        utente.setEmail(username + "@example.com");
+        return utenteRepository.save(utente);
+    }
+
+    private static Postazione nuovaPostazione(String codice, Edificio edificio, TipoPostazione tipo,
+                                              int maxOccupanti) {
+        Postazione postazione = new Postazione();
+        postazione.setCodice(codice);
+        postazione.setDescrizione("Postazione " + codice);
+        postazione.setTipo(tipo);
+        postazione.setNumeroMassimoOccupanti(maxOccupanti);
+        postazione.setEdificio(edificio);
+        return postazione;
+    }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
@@ -15,13 +16,18 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.AfterEach;
-import org.mockito.Mock;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import org.mockito.InjectMocks;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import com.example.demo.dto.PostazioneRisolta;
+import com.example.demo.dto.PostoOccupato;
 import com.example.demo.model.*;
 import com.example.demo.repository.*;
 import com.example.demo.service.*;
@@ -39,21 +45,34 @@ class DemoApplicationTests {
     @Autowired
     private UtenteService utenteService;
     
-    @Mock
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+    
+    @Autowired
+    private Risolutore risolutore;
+    
+    @MockitoBean
     private UtenteRepository utenteRepository;
     
-    @Mock
+    @MockitoBean
     private PostazioneRepository postazioneRepository;
     
-    @Mock
+    @MockitoBean
     private PrenotazioneRepository prenotazioneRepository;
     
-    @Mock
+    @MockitoBean
     private EdificioRepository edificioRepository;
     
+    /**
+     * Limiti sulle query di ogni chiamata ai service: con i repository mock conta le loro invocazioni
+     */
+    @RegisterExtension
+    LimiteQuery query = new LimiteQuery();
+    
     private Utente utenteTest;
     private Utente adminTest;
     private Postazione postazioneTest;
+    private PostazioneRisolta postazioneRisoltaTest;
     private Edificio edificioTest;
     
     private static int testTotali = 0;
@@ -81,6 +100,7 @@ class DemoApplicationTests {
             postazioneTest.setTipo(TipoPostazione.PRIVATO);
             postazioneTest.setNumeroMassimoOccupanti(1);
             postazioneTest.setEdificio(edificioTest);
+            postazioneRisoltaTest = new PostazioneRisolta(1L, 1L, 1, "Edificio Test", "Milano");
             
             // Setup utente normale test
             utenteTest = new Utente();
@@ -94,8 +114,10 @@ class DemoApplicationTests {
             adminTest.setUsername("Administrator");
             adminTest.setEmail("admin@example.com");
 
-            // Reset dei mock
+            // Reset dei mock, dell'indice delle occupazioni e del risolutore, che verranno ricaricati dai mock
             reset(utenteRepository, postazioneRepository, prenotazioneRepository, edificioRepository);
+            occupancyIndex.svuota();
+            risolutore.svuota();
         } catch (Exception e) {
             System.err.println("Errore durante il setup del test: " + e.getMessage());
             throw e;
@@ -131,14 +153,15 @@ class DemoApplicationTests {
     void testGestioneUtentiAdmin() {
         when(utenteRepository.findAll()).thenReturn(Arrays.asList(utenteTest));
         when(utenteRepository.findByUsername("Administrator")).thenReturn(Optional.of(adminTest));
+        when(utenteRepository.findByUsername("test.user")).thenReturn(Optional.of(utenteTest));
         
         // Test visualizzazione lista utenti
-        List<Utente> utenti = utenteService.getAllUtenti();
+        List<Utente> utenti = query.alMassimo(1, () -> utenteService.getAllUtenti());
         assertFalse(utenti.isEmpty(), "L'amministratore dovrebbe poter vedere la lista degli utenti");
         
         // Test eliminazione utente
         assertDoesNotThrow(() -> {
-            utenteService.deleteUtente(utenteTest.getUsername());
+            query.alMassimo(2, () -> utenteService.deleteUtente(utenteTest.getUsername()));
         }, "L'amministratore dovrebbe poter eliminare gli utenti");
     }
 
@@ -150,7 +173,8 @@ class DemoApplicationTests {
         when(utenteRepository.save(any(Utente.class))).thenReturn(utenteTest);
         
         assertDoesNotThrow(() -> {
-            utenteService.registraUtente("nuovo.utente", "Nuovo Utente", "nuovo@example.com");
+            query.alMassimo(3, () ->
+                utenteService.registraUtente("nuovo.utente", "Nuovo Utente", "nuovo@example.com"));
         }, "La registrazione dell'utente dovrebbe avvenire con successo");
     }
     
@@ -172,20 +196,19 @@ class DemoApplicationTests {
     void testPrenotazionePostazione() {
         LocalDate dataPrenotazione = LocalDate.now().plusDays(1);
         
-        when(utenteRepository.findByUsername("test.user"))
-            .thenReturn(Optional.of(utenteTest));
-        when(postazioneRepository.findByCodice("TEST001"))
-            .thenReturn(Optional.of(postazioneTest));
-        when(prenotazioneRepository.existsByPostazioneIdAndData(1L, dataPrenotazione))
-            .thenReturn(false);
-        when(prenotazioneRepository.existsByUtenteIdAndData(1L, dataPrenotazione))
-            .thenReturn(false);
+        when(utenteRepository.findIdByUsername("test.user"))
+            .thenReturn(Optional.of(1L));
+        when(postazioneRepository.findRisoltaByCodice("TEST001"))
+            .thenReturn(Optional.of(postazioneRisoltaTest));
+        when(prenotazioneRepository.findPostiOccupati(1L, dataPrenotazione))
+            .thenReturn(List.of());
         when(prenotazioneRepository.save(any(Prenotazione.class)))
             .thenAnswer(invocation -> invocation.getArgument(0));
             
+        // Risoluzione di username e codice, occupazione del giorno e inserimento
         assertDoesNotThrow(() -> {
-            prenotazioneService.prenotaPostazioneByUsername(
-                "test.user", "TEST001", dataPrenotazione);
+            query.alMassimo(4, () -> prenotazioneService.prenotaPostazioneByUsername(
+                "test.user", "TEST001", dataPrenotazione));
         }, "La prenotazione dovrebbe essere creata con successo");
         
         verify(prenotazioneRepository).save(any(Prenotazione.class));
@@ -196,16 +219,18 @@ class DemoApplicationTests {
     void testPrenotazionePostazioneOccupata() {
         LocalDate dataPrenotazione = LocalDate.now().plusDays(1);
         
-        when(utenteRepository.findByUsername("test.user"))
-            .thenReturn(Optional.of(utenteTest));
-        when(postazioneRepository.findByCodice("TEST001"))
-            .thenReturn(Optional.of(postazioneTest));
-        when(prenotazioneRepository.existsByPostazioneIdAndData(1L, dataPrenotazione))
-            .thenReturn(true);
+        when(utenteRepository.findIdByUsername("test.user"))
+            .thenReturn(Optional.of(1L));
+        when(postazioneRepository.findRisoltaByCodice("TEST001"))
+            .thenReturn(Optional.of(postazioneRisoltaTest));
+        when(postazioneRepository.sommaPostiByEdificioId(1L))
+            .thenReturn(5L);
+        when(prenotazioneRepository.findPostiOccupati(1L, dataPrenotazione))
+            .thenReturn(List.of(new PostoOccupato(1L, dataPrenotazione, 1L, 1)));
             
         Exception exception = assertThrows(IllegalStateException.class, () -> {
-            prenotazioneService.prenotaPostazioneByUsername(
-                "test.user", "TEST001", dataPrenotazione);
+            query.alMassimo(4, () -> prenotazioneService.prenotaPostazioneByUsername(
+                "test.user", "TEST001", dataPrenotazione));
         });
         
         assertEquals("La postazione è già prenotata per questa data", exception.getMessage(),
@@ -218,13 +243,11 @@ class DemoApplicationTests {
         LocalDate dataRicerca = LocalDate.now().plusDays(1);
         List<Postazione> postazioniAttese = Arrays.asList(postazioneTest);
         
-        when(postazioneRepository.findByTipoAndCitta(TipoPostazione.PRIVATO, "Milano"))
+        when(postazioneRepository.findDisponibiliByTipoAndCittaAndData(TipoPostazione.PRIVATO, "Milano", dataRicerca))
             .thenReturn(postazioniAttese);
-        when(prenotazioneRepository.existsByPostazioneIdAndData(1L, dataRicerca))
-            .thenReturn(false);
             
-        List<Postazione> risultato = prenotazioneService.cercaPostazioniDisponibili(
-            TipoPostazione.PRIVATO, "Milano", dataRicerca);
+        List<Postazione> risultato = query.alMassimo(1, () -> prenotazioneService.cercaPostazioniDisponibili(
+            TipoPostazione.PRIVATO, "Milano", dataRicerca));
             
         assertFalse(risultato.isEmpty(), 
             "Suggerimento: Verifica che ci siano postazioni configurate per il tipo e la città specificati");
@@ -235,12 +258,12 @@ class DemoApplicationTests {
     @Test
     @DisplayName("Test prenotazione con utente non esistente")
     void testPrenotazioneUtenteNonEsistente() {
-        when(utenteRepository.findByUsername("utente.inesistente"))
+        when(utenteRepository.findIdByUsername("utente.inesistente"))
             .thenReturn(Optional.empty());
             
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
-            prenotazioneService.prenotaPostazioneByUsername(
-                "utente.inesistente", "TEST001", LocalDate.now().plusDays(1));
+            query.alMassimo(1, () -> prenotazioneService.prenotaPostazioneByUsername(
+                "utente.inesistente", "TEST001", LocalDate.now().plusDays(1)));
         });
         
         assertEquals("Utente non trovato: utente.inesistente", exception.getMessage(),
@@ -250,14 +273,14 @@ class DemoApplicationTests {
     @Test
     @DisplayName("Test prenotazione con postazione non esistente")
     void testPrenotazionePostazioneNonEsistente() {
-        when(utenteRepository.findByUsername("test.user"))
-            .thenReturn(Optional.of(utenteTest));
-        when(postazioneRepository.findByCodice("INESISTENTE"))
+        when(utenteRepository.findIdByUsername("test.user"))
+            .thenReturn(Optional.of(1L));
+        when(postazioneRepository.findRisoltaByCodice("INESISTENTE"))
             .thenReturn(Optional.empty());
             
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
-            prenotazioneService.prenotaPostazioneByUsername(
-                "test.user", "INESISTENTE", LocalDate.now().plusDays(1));
+            query.alMassimo(2, () -> prenotazioneService.prenotaPostazioneByUsername(
+                "test.user", "INESISTENTE", LocalDate.now().plusDays(1)));
         });
         
         assertEquals("Postazione non trovata: INESISTENTE", exception.getMessage(),
@@ -269,16 +292,18 @@ class DemoApplicationTests {
     void testPrenotazioneMultiplaStessoGiorno() {
         LocalDate dataPrenotazione = LocalDate.now().plusDays(1);
         
-        when(utenteRepository.findByUsername("test.user"))
-            .thenReturn(Optional.of(utenteTest));
-        when(postazioneRepository.findByCodice("TEST001"))
-            .thenReturn(Optional.of(postazioneTest));
-        when(prenotazioneRepository.existsByUtenteIdAndData(1L, dataPrenotazione))
-            .thenReturn(true);
+        when(utenteRepository.findIdByUsername("test.user"))
+            .thenReturn(Optional.of(1L));
+        when(postazioneRepository.findRisoltaByCodice("TEST001"))
+            .thenReturn(Optional.of(postazioneRisoltaTest));
+        // Il vincolo di unicità su utente e data rifiuta l'insert
+        when(prenotazioneRepository.save(any(Prenotazione.class)))
+            .thenThrow(new DataIntegrityViolationException("Violazione vincolo",
+                new SQLException("Unique index or primary key violation: \"PUBLIC.UK_PRENOTAZIONE_UTENTE_DATA\"")));
             
         Exception exception = assertThrows(IllegalStateException.class, () -> {
-            prenotazioneService.prenotaPostazioneByUsername(
-                "test.user", "TEST001", dataPrenotazione);
+            query.alMassimo(4, () -> prenotazioneService.prenotaPostazioneByUsername(
+                "test.user", "TEST001", dataPrenotazione));
         });
         
         assertEquals("L'utente ha già una prenotazione per questa data", exception.getMessage(),
@@ -296,25 +321,39 @@ class DemoApplicationTests {
         prenotazione.setPostazione(postazioneTest);
         prenotazione.setData(data);
         
-        when(prenotazioneRepository.findAll()).thenReturn(Arrays.asList(prenotazione));
-        when(prenotazioneRepository.findById(1L)).thenReturn(Optional.of(prenotazione));
+        when(prenotazioneRepository.findPagina(any(), any(), any(), any(), any()))
+            .thenReturn(Arrays.asList(prenotazione));
+        when(prenotazioneRepository.findDettaglioById(1L)).thenReturn(Optional.of(prenotazione));
+        when(postazioneRepository.findByCodice("TEST001")).thenReturn(Optional.of(postazioneTest));
         
         // Test visualizzazione tutte le prenotazioni
-        List<Prenotazione> prenotazioni = prenotazioneService.getAllPrenotazioni("Administrator");
+        List<Prenotazione> prenotazioni = query.alMassimo(1, () ->
+            prenotazioneService.getAllPrenotazioni("Administrator"));
         assertFalse(prenotazioni.isEmpty(), "L'amministratore dovrebbe poter vedere tutte le prenotazioni");
+        verify(prenotazioneRepository).findPagina(any(), any(), any(), any(), eq(Limit.of(500)));
         
-        // Test modifica prenotazione
+        // Test modifica prenotazione: prenotazione, nuova postazione, occupazioni dei due giorni e salvataggio
         assertDoesNotThrow(() -> {
-            prenotazioneService.modificaPrenotazione(1L, data.plusDays(1), "TEST001", "Administrator");
+            query.alMassimo(5, () ->
+                prenotazioneService.modificaPrenotazione(1L, data.plusDays(1), "TEST001", "Administrator"));
         }, "L'amministratore dovrebbe poter modificare le prenotazioni");
     }
     
     @Test
     @DisplayName("Test sicurezza accessi")
     void testSicurezzaAccessi() {
+        // Prenotazione appartenente a un altro utente
+        Prenotazione prenotazione = new Prenotazione();
+        prenotazione.setId(1L);
+        prenotazione.setUtente(adminTest);
+        prenotazione.setPostazione(postazioneTest);
+        prenotazione.setData(LocalDate.now());
+        when(prenotazioneRepository.findDettaglioById(1L)).thenReturn(Optional.of(prenotazione));
+        
         // Test accesso funzioni admin da utente normale
         Exception exception = assertThrows(IllegalStateException.class, () -> {
-            prenotazioneService.modificaPrenotazione(1L, LocalDate.now(), "TEST001", "test.user");
+            query.alMassimo(1, () ->
+                prenotazioneService.modificaPrenotazione(1L, LocalDate.now(), "TEST001", "test.user"));
         });
         
         assertTrue(exception.getMessage().contains("Non hai i permessi"),
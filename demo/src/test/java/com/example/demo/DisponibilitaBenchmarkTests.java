@@ -0,0 +1,131 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.example.demo.model.*;
+import com.example.demo.repository.*;
+
+/**
+ * Benchmark che confronta la vecchia ricerca delle postazioni disponibili
+ * (una query per postazione) con la nuova query NOT EXISTS.
+ * Viene eseguito solo su richiesta: mvn test -Dbenchmark=true -Dtest=DisponibilitaBenchmarkTests
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class DisponibilitaBenchmarkTests {
+
+    private static final int ITERAZIONI = 5;
+
+    @Autowired
+    private PostazioneRepository postazioneRepository;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Benchmark ricerca disponibili: 10, 1k e 50k postazioni per città")
+    void benchmarkRicercaDisponibili() {
+        LocalDate data = LocalDate.now().plusDays(30);
+
+        System.out.println("\n=== BENCHMARK RICERCA POSTAZIONI DISPONIBILI ===");
+        System.out.printf("%10s %18s %18s%n", "Postazioni", "Vecchia (ms/op)", "NOT EXISTS (ms/op)");
+        for (int numeroPostazioni : new int[] { 10, 1_000, 50_000 }) {
+            String citta = "BenchCity" + numeroPostazioni;
+            popolaCitta(citta, numeroPostazioni, data);
+
+            long inizio = System.nanoTime();
+            List<Long> vecchia = ricercaVecchia(citta, data);
+            double msVecchia = (System.nanoTime() - inizio) / 1_000_000.0;
+            List<Long> nuova = ricercaNuova(citta, data);
+            assertEquals(vecchia, nuova, "I due percorsi devono restituire le stesse postazioni");
+
+            // Con 50k postazioni la vecchia ricerca esegue 50k query: basta la misura singola già fatta
+            if (numeroPostazioni <= 1_000) {
+                msVecchia = misura(ITERAZIONI, () -> ricercaVecchia(citta, data));
+            }
+            double msNuova = misura(ITERAZIONI, () -> ricercaNuova(citta, data));
+            System.out.printf("%10d %18.2f %18.2f%n", numeroPostazioni, msVecchia, msNuova);
+        }
+    }
+
+    /**
+     * Riproduce il percorso precedente: carica tutte le postazioni e verifica ciascuna con una query.
+     */
+    private List<Long> ricercaVecchia(String citta, LocalDate data) {
+        return postazioneRepository.findByTipoAndCitta(TipoPostazione.OPENSPACE, citta).stream()
+            .filter(p -> !prenotazioneRepository.existsByPostazioneIdAndData(p.getId(), data))
+            .map(Postazione::getId)
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    private List<Long> ricercaNuova(String citta, LocalDate data) {
+        return postazioneRepository.findDisponibiliByTipoAndCittaAndData(TipoPostazione.OPENSPACE, citta, data)
+            .stream()
+            .map(Postazione::getId)
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    private double misura(int iterazioni, Runnable operazione) {
+        operazione.run(); // riscaldamento
+        long inizio = System.nanoTime();
+        for (int i = 0; i < iterazioni; i++) {
+            operazione.run();
+        }
+        return (System.nanoTime() - inizio) / 1_000_000.0 / iterazioni;
+    }
+
+    /**
+     * Inserisce con JDBC batch un edificio, le sue postazioni e una prenotazione ogni quattro postazioni.
+     */
+    private void popolaCitta(String citta, int numeroPostazioni, LocalDate data) {
+        jdbcTemplate.update("INSERT INTO edificio (nome, indirizzo, citta) VALUES (?, ?, ?)",
+            "Edificio " + citta, "Via Benchmark", citta);
+        Long edificioId = jdbcTemplate.queryForObject(
+            "SELECT id FROM edificio WHERE citta = ?", Long.class, citta);
+
+        List<Object[]> postazioni = new ArrayList<>();
+        for (int i = 0; i < numeroPostazioni; i++) {
+            postazioni.add(new Object[] { citta + "-" + i, "Postazione " + i, "OPENSPACE", 1, edificioId });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO postazione (codice, descrizione, tipo, numero_massimo_occupanti, "
+            + "edificio_id) VALUES (?, ?, ?, ?, ?)", postazioni);
+
+        List<Long> idPostazioni = jdbcTemplate.queryForList(
+            "SELECT id FROM postazione WHERE edificio_id = ? ORDER BY id", Long.class, edificioId);
+        List<Object[]> utenti = new ArrayList<>();
+        for (int i = 0; i < idPostazioni.size(); i += 4) {
+            String username = "bench." + citta + "." + i;
+            utenti.add(new Object[] { username, username, username + "@example.com" });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO utente (username, nome_completo, email) VALUES (?, ?, ?)", utenti);
+
+        List<Long> idUtenti = jdbcTemplate.queryForList(
+            "SELECT id FROM utente WHERE username LIKE ? ORDER BY id", Long.class, "bench." + citta + ".%");
+        List<Object[]> prenotazioni = new ArrayList<>();
+        for (int i = 0; i < idUtenti.size(); i++) {
+            prenotazioni.add(new Object[] { idUtenti.get(i), idPostazioni.get(i * 4), Date.valueOf(data) });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO prenotazione (utente_id, postazione_id, data) VALUES (?, ?, ?)",
+            prenotazioni);
+    }
+}
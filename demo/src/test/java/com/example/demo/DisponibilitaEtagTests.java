@@ -0,0 +1,189 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.example.demo.controller.PrenotazioneController;
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.model.*;
+import com.example.demo.service.*;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test delle richieste condizionali con ETag e delle risposte già serializzate
+ * della ricerca delle postazioni disponibili.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class DisponibilitaEtagTests {
+
+    private static final String CITTA = "EtagCity";
+
+    private static final String CITTA_SERIALIZZATE = "SerializzataCity";
+
+    @Autowired
+    private PrenotazioneController prenotazioneController;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DatiDiProva dati;
+
+    @RegisterExtension
+    LimiteQuery query = new LimiteQuery();
+
+    @Test
+    @DisplayName("Se nulla è cambiato la ricerca risponde 304 senza query; ogni scrittura cambia l'ETag")
+    void testEtag() {
+        LocalDate data = LocalDate.now().plusDays(540);
+        Edificio edificio = dati.creaEdificio(CITTA, CITTA);
+        Postazione prima = dati.creaPostazione("Etag-0", edificio);
+        Utente utente = dati.creaUtente("etag.utente");
+
+        ResponseEntity<byte[]> risposta = cerca(data, null);
+        assertEquals(HttpStatus.OK, risposta.getStatusCode());
+        assertEquals(1, leggi(risposta.getBody()).size());
+        String etag = risposta.getHeaders().getETag();
+        assertNotNull(etag);
+
+        ResponseEntity<?> nonModificata = query.alMassimo(0, () -> cerca(data, etag));
+        assertEquals(HttpStatus.NOT_MODIFIED, nonModificata.getStatusCode());
+        assertNull(nonModificata.getBody());
+        assertEquals(etag, nonModificata.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, cerca(data, "\"altro\", " + etag).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, cerca(data, "*").getStatusCode());
+        assertEquals(HttpStatus.OK, cerca(data, "\"altro\"").getStatusCode());
+
+        // Una prenotazione in un altro giorno non cambia l'ETag
+        Prenotazione altroGiorno = prenotazioneService.prenotaPostazione(utente.getId(), prima.getId(), data.plusDays(1));
+        assertEquals(HttpStatus.NOT_MODIFIED, cerca(data, etag).getStatusCode());
+
+        // Una prenotazione nello stesso giorno e nella stessa città sì
+        Prenotazione prenotazione = prenotazioneService.prenotaPostazione(utente.getId(), prima.getId(), data);
+        String dopoPrenotazione = verificaCambiato(data, etag);
+
+        prenotazioneService.deletePrenotazione(altroGiorno.getId(), "Administrator");
+        prenotazioneService.modificaPrenotazione(prenotazione.getId(), data.plusDays(1), null, "Administrator");
+        String dopoModifica = verificaCambiato(data, dopoPrenotazione);
+
+        prenotazioneService.deletePrenotazione(prenotazione.getId(), "Administrator");
+        assertEquals(HttpStatus.NOT_MODIFIED, cerca(data, dopoModifica).getStatusCode());
+        assertNotEquals(dopoModifica, cerca(data.plusDays(1), null).getHeaders().getETag());
+
+        // Le modifiche alle postazioni cambiano l'ETag di tutte le città e i giorni
+        prenotazioneService.addPostazione("Etag-1", "Postazione Etag-1", TipoPostazione.PRIVATO, 1,
+            edificio.getId());
+        assertEquals(2, leggi(cerca(data, dopoModifica).getBody()).size());
+    }
+
+    @Test
+    @DisplayName("Le risposte serializzate vengono riusate senza query finché la versione non cambia")
+    void testRisposteSerializzate() throws IOException {
+        LocalDate data = LocalDate.now().plusDays(580);
+        Edificio edificio = dati.creaEdificio(CITTA_SERIALIZZATE, CITTA_SERIALIZZATE);
+        List<Postazione> postazioni = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            postazioni.add(dati.creaPostazione("Serializzata-" + i, edificio));
+        }
+        Utente utente = dati.creaUtente("serializzata.utente");
+
+        byte[] json = cerca(CITTA_SERIALIZZATE, data, null).getBody();
+        ResponseEntity<byte[]> ripetuta = query.alMassimo(0, () -> cerca(CITTA_SERIALIZZATE, data, null));
+        assertSame(json, ripetuta.getBody());
+        assertEquals(MediaType.APPLICATION_JSON, ripetuta.getHeaders().getContentType());
+        assertNull(ripetuta.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+
+        // Il client che accetta gzip riceve la versione compressa dello stesso JSON, con un ETag debole
+        ResponseEntity<byte[]> compressa = query.alMassimo(0,
+            () -> cerca(CITTA_SERIALIZZATE, data, null, "gzip, deflate"));
+        assertEquals("gzip", compressa.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("W/" + ripetuta.getHeaders().getETag(), compressa.getHeaders().getETag());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressa.getBody()))) {
+            assertArrayEquals(json, gzip.readAllBytes());
+        }
+        ResponseEntity<byte[]> nonModificata = cerca(CITTA_SERIALIZZATE, data, compressa.getHeaders().getETag(),
+            "gzip");
+        assertEquals(HttpStatus.NOT_MODIFIED, nonModificata.getStatusCode());
+        assertEquals(compressa.getHeaders().getETag(), nonModificata.getHeaders().getETag());
+
+        // gzip con q=0 è escluso esplicitamente
+        ResponseEntity<byte[]> esclusa = cerca(CITTA_SERIALIZZATE, data, null, "gzip;q=0, *");
+        assertNull(esclusa.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertSame(json, esclusa.getBody());
+
+        // Una prenotazione cambia la versione e la risposta viene serializzata di nuovo
+        prenotazioneService.prenotaPostazione(utente.getId(), postazioni.get(0).getId(), data);
+        List<RiepilogoPostazione> dopo = leggi(cerca(CITTA_SERIALIZZATE, data, null).getBody());
+        assertEquals(11, dopo.size());
+        assertFalse(dopo.stream().anyMatch(p -> p.getCodice().equals("Serializzata-0")));
+    }
+
+    /**
+     * Verifica che la ricerca con l'ETag indicato venga rieseguita e restituisce il nuovo ETag.
+     */
+    private String verificaCambiato(LocalDate data, String etag) {
+        ResponseEntity<byte[]> risposta = cerca(data, etag);
+        assertEquals(HttpStatus.OK, risposta.getStatusCode());
+        assertNotEquals(etag, risposta.getHeaders().getETag());
+        return risposta.getHeaders().getETag();
+    }
+
+    private ResponseEntity<byte[]> cerca(LocalDate data, String ifNoneMatch) {
+        return cerca(CITTA, data, ifNoneMatch, null);
+    }
+
+    private ResponseEntity<byte[]> cerca(String citta, LocalDate data, String ifNoneMatch) {
+        return cerca(citta, data, ifNoneMatch, null);
+    }
+
+    private ResponseEntity<byte[]> cerca(String citta, LocalDate data, String ifNoneMatch, String acceptEncoding) {
+        MockHttpServletRequest richiesta = new MockHttpServletRequest("GET", "/api/prenotazioni/disponibili");
+        if (ifNoneMatch != null) {
+            richiesta.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        if (acceptEncoding != null) {
+            richiesta.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        MockHttpServletResponse risposta = new MockHttpServletResponse();
+        ResponseEntity<byte[]> entita = prenotazioneController.cercaPostazioniDisponibili(TipoPostazione.PRIVATO,
+            citta, data, new ServletWebRequest(richiesta, risposta));
+        // Stato e ETag arrivano solo dal ResponseEntity, senza essere scritti anche sulla risposta del servlet
+        assertEquals(HttpStatus.OK.value(), risposta.getStatus());
+        assertNull(risposta.getHeader(HttpHeaders.ETAG));
+        return entita;
+    }
+
+    private List<RiepilogoPostazione> leggi(byte[] json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<List<RiepilogoPostazione>>() { });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
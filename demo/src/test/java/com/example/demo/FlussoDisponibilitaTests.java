@@ -0,0 +1,158 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.demo.dto.VariazioneDisponibilita;
+import com.example.demo.model.*;
+import com.example.demo.service.*;
+
+/**
+ * Test del flusso server-sent events delle variazioni di disponibilità.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class FlussoDisponibilitaTests {
+
+    @Autowired
+    private FlussoDisponibilita flusso;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private DatiDiProva dati;
+
+    @Test
+    @DisplayName("Gli iscritti ricevono le prenotazioni e le cancellazioni della loro città o edificio")
+    void testEventi() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(560);
+        Edificio edificio = dati.creaEdificio("Flusso", "FlussoCity");
+        Postazione postazione = dati.creaPostazione("Flusso-0", edificio);
+        Utente utente = dati.creaUtente("flusso.utente");
+
+        EmitterDiProva perCitta = iscrivi("FlussoCity", null, data, data.plusDays(1));
+        EmitterDiProva perEdificio = iscrivi(null, edificio.getId(), data, data);
+        dati.creaEdificio("AltroFlusso", "AltraFlussoCity");
+        EmitterDiProva altraCitta = iscrivi("AltraFlussoCity", null, data, data);
+
+        Prenotazione prenotazione = prenotazioneService.prenotaPostazione(utente.getId(), postazione.getId(), data);
+        VariazioneDisponibilita prenotata = perCitta.prossimo();
+        assertTrue(prenotata.isPrenotata());
+        assertEquals("Flusso-0", prenotata.getCodicePostazione());
+        assertEquals(data, prenotata.getData());
+        assertEquals(prenotata, perEdificio.prossimo());
+
+        // Spostata al giorno dopo: l'edificio iscritto al solo primo giorno vede solo la postazione liberata
+        prenotazioneService.modificaPrenotazione(prenotazione.getId(), data.plusDays(1), null, "Administrator");
+        VariazioneDisponibilita liberata = perCitta.prossimo();
+        assertFalse(liberata.isPrenotata());
+        assertEquals(data, liberata.getData());
+        assertEquals(data.plusDays(1), perCitta.prossimo().getData());
+        assertEquals(liberata, perEdificio.prossimo());
+
+        // Fuori dall'intervallo nessun evento
+        prenotazioneService.deletePrenotazione(prenotazione.getId(), "Administrator");
+        assertFalse(perCitta.prossimo().isPrenotata());
+        prenotazioneService.prenotaPostazione(utente.getId(), postazione.getId(), data.plusDays(5));
+        assertNull(perCitta.ricevute.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(perEdificio.ricevute.isEmpty());
+        assertTrue(altraCitta.ricevute.isEmpty());
+
+        assertThrows(IllegalArgumentException.class, () -> iscrivi(null, null, data, data));
+        assertThrows(IllegalArgumentException.class, () -> iscrivi("FlussoCity", null, data, data.minusDays(1)));
+        // Al massimo 92 giorni, estremi inclusi
+        LocalDate ultimo = data.plusDays(PrenotazioneService.MAX_GIORNI_INTERVALLO - 1);
+        assertNotNull(iscrivi("FlussoCity", null, data, ultimo));
+        assertThrows(IllegalArgumentException.class, () -> iscrivi("FlussoCity", null, data, ultimo.plusDays(1)));
+        // Si può iscrivere solo a città ed edifici esistenti
+        assertThrows(IllegalArgumentException.class, () -> iscrivi("InesistenteFlussoCity", null, data, data));
+        assertThrows(IllegalArgumentException.class, () -> iscrivi(null, -1L, data, data));
+    }
+
+    @Test
+    @DisplayName("Un iscritto lento riceve le variazioni accorpate e viene disconnesso se resta troppo indietro")
+    void testIscrittoLento() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(561);
+        dati.creaEdificio("Lento", "LentaCity");
+        EmitterDiProva lento = iscrivi("LentaCity", null, data, data);
+        lento.sblocco = new CountDownLatch(1);
+        int iscritti = flusso.getNumeroIscritti();
+
+        // Il primo evento blocca l'invio; le variazioni successive della stessa postazione vengono accorpate
+        for (int i = 0; i < 1_000; i++) {
+            flusso.pubblica(new VariazioneDisponibilita(1L, "LentaCity", 1L, "Lenta-1", data, i % 2 == 0));
+        }
+        assertFalse(lento.completato);
+        assertEquals(iscritti, flusso.getNumeroIscritti());
+
+        // Troppe postazioni diverse in attesa: l'iscritto viene disconnesso
+        for (long postazioneId = 2; postazioneId < 1_000 && !lento.completato; postazioneId++) {
+            flusso.pubblica(new VariazioneDisponibilita(1L, "LentaCity", postazioneId, "Lenta-" + postazioneId,
+                data, true));
+        }
+        assertTrue(lento.completato);
+        assertEquals(iscritti - 1, flusso.getNumeroIscritti());
+        lento.sblocco.countDown();
+    }
+
+    private EmitterDiProva iscrivi(String citta, Long edificioId, LocalDate dal, LocalDate al) {
+        EmitterDiProva emitter = new EmitterDiProva();
+        flusso.iscrivi(emitter, citta, edificioId, dal, al);
+        return emitter;
+    }
+
+    /**
+     * Connessione che raccoglie gli eventi inviati invece di scriverli su una risposta HTTP
+     */
+    static class EmitterDiProva extends SseEmitter {
+
+        final BlockingQueue<VariazioneDisponibilita> ricevute = new LinkedBlockingQueue<>();
+
+        volatile CountDownLatch sblocco;
+
+        volatile boolean completato;
+
+        @Override
+        public void send(SseEventBuilder evento) throws IOException {
+            if (sblocco != null) {
+                try {
+                    sblocco.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            for (ResponseBodyEmitter.DataWithMediaType dati : evento.build()) {
+                if (dati.getData() instanceof VariazioneDisponibilita variazione) {
+                    ricevute.add(variazione);
+                }
+            }
+        }
+
+        @Override
+        public void complete() {
+            completato = true;
+            super.complete();
+        }
+
+        VariazioneDisponibilita prossimo() throws InterruptedException {
+            VariazioneDisponibilita variazione = ricevute.poll(5, TimeUnit.SECONDS);
+            assertNotNull(variazione, "Evento non ricevuto");
+            return variazione;
+        }
+    }
+}
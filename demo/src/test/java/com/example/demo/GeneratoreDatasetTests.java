@@ -0,0 +1,90 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.example.demo.config.GeneratoreDataset;
+import com.example.demo.model.TipoPostazione;
+import com.example.demo.service.PrenotazioneService;
+
+/**
+ * Test del dataset sintetico generato all'avvio al posto dei dati di esempio.
+ * Usa un proprio database in memoria, popolato dal generatore con insert JDBC batch.
+ */
+@SpringBootTest(properties = {
+    "prenotazioni.dataset.enabled=true",
+    "prenotazioni.dataset.citta=3",
+    "prenotazioni.dataset.edifici=6",
+    "prenotazioni.dataset.postazioni-per-edificio=10",
+    "prenotazioni.dataset.utenti=40",
+    "prenotazioni.dataset.prenotazioni=2000",
+    "prenotazioni.dataset.occupazione=0.5",
+    "spring.datasource.url=jdbc:h2:mem:dataset;DB_CLOSE_DELAY=-1",
+    "spring.r2dbc.url=r2dbc:h2:mem:///dataset;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class GeneratoreDatasetTests {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private GeneratoreDataset generatoreDataset;
+
+    @Test
+    @DisplayName("Il dataset ha le dimensioni configurate e prenotazioni storiche feriali sbilanciate sugli utenti")
+    void testDataset() {
+        assertEquals(6, conta("SELECT COUNT(*) FROM edificio"));
+        assertEquals(3, conta("SELECT COUNT(DISTINCT citta) FROM edificio"));
+        assertEquals(60, conta("SELECT COUNT(*) FROM postazione"));
+        assertEquals(40, conta("SELECT COUNT(*) FROM utente"));
+        assertEquals(2000, conta("SELECT COUNT(*) FROM prenotazione"));
+
+        List<LocalDate> date = jdbcTemplate.queryForList("SELECT DISTINCT data FROM prenotazione", LocalDate.class);
+        assertTrue(date.stream().allMatch(data -> data.isBefore(LocalDate.now())));
+        assertTrue(date.stream().noneMatch(data -> data.getDayOfWeek() == DayOfWeek.SATURDAY
+            || data.getDayOfWeek() == DayOfWeek.SUNDAY));
+
+        // I primi utenti prenotano molto più spesso degli ultimi
+        long primi = conta("SELECT COUNT(*) FROM prenotazione p JOIN utente u ON u.id = p.utente_id "
+            + "WHERE u.username IN ('utente.0', 'utente.1', 'utente.2', 'utente.3')");
+        long ultimi = conta("SELECT COUNT(*) FROM prenotazione p JOIN utente u ON u.id = p.utente_id "
+            + "WHERE u.username IN ('utente.36', 'utente.37', 'utente.38', 'utente.39')");
+        assertTrue(primi > 2 * ultimi, "Prenotazioni dei primi utenti: " + primi + ", degli ultimi: " + ultimi);
+
+        // Il dataset è usabile dal servizio: nel futuro tutte le postazioni sono libere
+        long openSpaceMilano = conta("SELECT COUNT(*) FROM postazione p JOIN edificio e ON e.id = p.edificio_id "
+            + "WHERE e.citta = 'Milano' AND p.tipo = 'OPENSPACE'");
+        assertEquals(openSpaceMilano, prenotazioneService.cercaRiepiloghiDisponibili(TipoPostazione.OPENSPACE,
+            "Milano", LocalDate.now().plusDays(1)).size());
+        assertFalse(prenotazioneService.getPaginaRiepiloghi("utente.0", null, null, null, 1).getElementi().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Una generazione che fallisce a metà non lascia righe parziali")
+    void testGenerazioneFallita() {
+        // Gli username esistono già: il vincolo di unicità fallisce dopo l'inserimento di edifici e postazioni
+        assertThrows(DataAccessException.class, () -> generatoreDataset.genera());
+        assertEquals(6, conta("SELECT COUNT(*) FROM edificio"));
+        assertEquals(60, conta("SELECT COUNT(*) FROM postazione"));
+        assertEquals(40, conta("SELECT COUNT(*) FROM utente"));
+    }
+
+    private long conta(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+}
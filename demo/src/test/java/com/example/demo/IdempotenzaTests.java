@@ -0,0 +1,185 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.demo.controller.PrenotazioneController;
+import com.example.demo.dto.PrenotazioneRequest;
+import com.example.demo.dto.RiepilogoPrenotazione;
+import com.example.demo.model.*;
+import com.example.demo.repository.*;
+import com.example.demo.service.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test delle chiavi di idempotenza sulla prenotazione singola.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class IdempotenzaTests {
+
+    @Autowired
+    private PrenotazioneController prenotazioneController;
+
+    @Autowired
+    private ArchivioIdempotenza archivioIdempotenza;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private DatiDiProva dati;
+
+    @Test
+    @DisplayName("Una prenotazione ripetuta con la stessa chiave riceve la stessa risposta senza essere rieseguita")
+    void testRipetizione() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(520);
+        PrenotazioneRequest richiesta = richiesta("idempotenza.utente",
+            creaPostazione("Idempotenza-0").getCodice(), data);
+        Long utenteId = dati.creaUtente("idempotenza.utente").getId();
+
+        ResponseEntity<?> prima = prenotazioneController.prenotaPostazione(richiesta, "chiave-ripetizione");
+        assertEquals(HttpStatus.OK, prima.getStatusCode());
+        RiepilogoPrenotazione creata = (RiepilogoPrenotazione) prima.getBody();
+
+        ResponseEntity<?> ripetuta = prenotazioneController.prenotaPostazione(richiesta, "chiave-ripetizione");
+        assertEquals(HttpStatus.OK, ripetuta.getStatusCode());
+        assertEquals("true", ripetuta.getHeaders().getFirst(ArchivioIdempotenza.HEADER_RIPETUTA));
+        assertEquals(creata, objectMapper.readValue((byte[]) ripetuta.getBody(), RiepilogoPrenotazione.class));
+        assertEquals(1, prenotazioneRepository.findByUtenteId(utenteId).size());
+
+        // Senza chiave la stessa richiesta viene eseguita e rifiutata
+        assertEquals(HttpStatus.BAD_REQUEST, prenotazioneController.prenotaPostazione(richiesta, null).getStatusCode());
+
+        // La stessa chiave con una richiesta diversa viene rifiutata
+        PrenotazioneRequest diversa = richiesta("idempotenza.utente", richiesta.getCodicePostazione(),
+            data.plusDays(1));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY,
+            prenotazioneController.prenotaPostazione(diversa, "chiave-ripetizione").getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Anche le risposte di errore vengono ripetute")
+    void testRipetizioneErrore() {
+        PrenotazioneRequest richiesta = richiesta("idempotenza.inesistente", "Inesistente",
+            LocalDate.now().plusDays(521));
+
+        ResponseEntity<?> prima = prenotazioneController.prenotaPostazione(richiesta, "chiave-errore");
+        ResponseEntity<?> ripetuta = prenotazioneController.prenotaPostazione(richiesta, "chiave-errore");
+
+        assertEquals(HttpStatus.BAD_REQUEST, ripetuta.getStatusCode());
+        assertEquals(prima.getBody(), new String((byte[]) ripetuta.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Le richieste concorrenti con la stessa chiave attendono un'unica esecuzione")
+    void testRichiesteConcorrenti() throws Exception {
+        AtomicInteger esecuzioni = new AtomicInteger();
+        CountDownLatch partenza = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ResponseEntity<?>>> risposte = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                risposte.add(executor.submit(() -> {
+                    partenza.await();
+                    return archivioIdempotenza.esegui("chiave-concorrente", "richiesta", () -> {
+                        esecuzioni.incrementAndGet();
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return ResponseEntity.ok("eseguita");
+                    });
+                }));
+            }
+            partenza.countDown();
+            for (Future<ResponseEntity<?>> risposta : risposte) {
+                assertEquals(HttpStatus.OK, risposta.get(30, TimeUnit.SECONDS).getStatusCode());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, esecuzioni.get());
+    }
+
+    @Test
+    @DisplayName("Un'operazione fallita con un'eccezione libera la chiave")
+    void testEccezione() {
+        assertThrows(IllegalStateException.class, () -> archivioIdempotenza.esegui("chiave-eccezione", "richiesta",
+            () -> {
+                throw new IllegalStateException("Errore temporaneo");
+            }));
+        ResponseEntity<?> risposta = archivioIdempotenza.esegui("chiave-eccezione", "richiesta",
+            () -> ResponseEntity.ok("eseguita"));
+        assertEquals("eseguita", risposta.getBody());
+    }
+
+    @Test
+    @DisplayName("Un errore temporaneo del database non viene memorizzato e la stessa chiave può riprovare")
+    void testErroreTemporaneo() {
+        LocalDate data = LocalDate.now().plusDays(601);
+        PrenotazioneRequest richiesta = richiesta("idempotenza.temporaneo",
+            creaPostazione("Idempotenza-Temporaneo").getCodice(), data);
+        Long utenteId = dati.creaUtente("idempotenza.temporaneo").getId();
+
+        // Il primo tentativo non ottiene una connessione, i successivi usano il service reale
+        PrenotazioneService reale = (PrenotazioneService) ReflectionTestUtils.getField(prenotazioneController,
+            "prenotazioneService");
+        AtomicInteger tentativi = new AtomicInteger();
+        PrenotazioneService guasto = Mockito.mock(PrenotazioneService.class, invocazione -> {
+            if (tentativi.getAndIncrement() == 0) {
+                throw new CannotGetJdbcConnectionException("Connessione non disponibile");
+            }
+            return invocazione.getMethod().invoke(reale, invocazione.getArguments());
+        });
+        ReflectionTestUtils.setField(prenotazioneController, "prenotazioneService", guasto);
+        try {
+            ResponseEntity<?> fallita = prenotazioneController.prenotaPostazione(richiesta, "chiave-temporanea");
+            assertFalse(fallita.getStatusCode().is2xxSuccessful());
+
+            ResponseEntity<?> riprovata = prenotazioneController.prenotaPostazione(richiesta, "chiave-temporanea");
+            assertEquals(HttpStatus.OK, riprovata.getStatusCode());
+            assertNull(riprovata.getHeaders().getFirst(ArchivioIdempotenza.HEADER_RIPETUTA));
+        } finally {
+            ReflectionTestUtils.setField(prenotazioneController, "prenotazioneService", reale);
+        }
+        assertEquals(1, prenotazioneRepository.findByUtenteId(utenteId).size());
+    }
+
+    private static PrenotazioneRequest richiesta(String username, String codicePostazione, LocalDate data) {
+        PrenotazioneRequest richiesta = new PrenotazioneRequest();
+        richiesta.setUsername(username);
+        richiesta.setCodicePostazione(codicePostazione);
+        richiesta.setData(data);
+        return richiesta;
+    }
+
+    private Postazione creaPostazione(String codice) {
+        return dati.creaPostazione(codice, dati.creaEdificio("Idempotenza", "IdempotenzaCity"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.HealthContributorRegistry;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.demo.repository.EdificioRepository;
+import com.example.demo.repository.LetturaPostazioniRepository;
+import com.example.demo.service.DisponibilitaReattivaService;
+
+import io.r2dbc.spi.ConnectionFactory;
+
+/**
+ * Test della configurazione con le letture reattive disattivate.
+ * Usa un proprio database in memoria, perché il contesto con proprietà diverse ricrea lo schema.
+ */
+@SpringBootTest(properties = {
+    "prenotazioni.lettura-reattiva.enabled=false",
+    "spring.datasource.url=jdbc:h2:mem:senzareattive;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class LetturaReattivaDisattivataTests {
+
+    @Autowired
+    private ApplicationContext contesto;
+
+    @Autowired
+    private HealthContributorRegistry registroSalute;
+
+    @Autowired
+    private EdificioRepository edificioRepository;
+
+    @Test
+    @DisplayName("Senza il flag non vengono creati né il pool R2DBC né i repository reattivi né il loro health check")
+    void testStackReattivoAssente() {
+        assertTrue(contesto.getBeanNamesForType(ConnectionFactory.class).length == 0);
+        assertTrue(contesto.getBeanNamesForType(LetturaPostazioniRepository.class).length == 0);
+        assertTrue(contesto.getBeanNamesForType(DisponibilitaReattivaService.class).length == 0);
+        assertNull(registroSalute.getContributor("r2dbc"));
+
+        // JPA usa il DataSource e il gestore delle transazioni configurati automaticamente
+        assertEquals(1, contesto.getBeanNamesForType(PlatformTransactionManager.class).length);
+        assertTrue(edificioRepository.count() > 0);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.example.demo.dto.DisponibilitaGiorno;
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.dto.RiepilogoPrenotazione;
+import com.example.demo.model.*;
+import com.example.demo.repository.*;
+import com.example.demo.service.*;
+
+/**
+ * Test delle letture reattive R2DBC sull'H2 del profilo di test.
+ * Ogni lettura deve restituire gli stessi risultati dell'equivalente JPA di PrenotazioneService.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class LetturaReattivaTests {
+
+    private static final String CITTA = "ReattivaCity";
+
+    private final LocalDate data = LocalDate.now().plusDays(480);
+
+    @Autowired
+    private DisponibilitaReattivaService disponibilitaReattivaService;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private DatiDiProva dati;
+
+    @BeforeEach
+    void popola() {
+        if (utenteRepository.findByUsername("reattiva.1").isPresent()) {
+            return;
+        }
+        Edificio edificio = dati.creaEdificio("Reattivo", CITTA);
+        Postazione[] postazioni = {
+            dati.creaPostazione("Reattiva-0", edificio, TipoPostazione.OPENSPACE, 2),
+            dati.creaPostazione("Reattiva-1", edificio, TipoPostazione.OPENSPACE, 1),
+            dati.creaPostazione("Reattiva-2", edificio, TipoPostazione.PRIVATO, 1)
+        };
+        Utente primo = dati.creaUtente("reattiva.1");
+        Utente secondo = dati.creaUtente("reattiva.2");
+        dati.creaUtente("reattiva.senza.prenotazioni");
+
+        prenotazioneService.prenotaPostazione(primo.getId(), postazioni[0].getId(), data);
+        prenotazioneService.prenotaPostazione(secondo.getId(), postazioni[2].getId(), data);
+        prenotazioneService.prenotaPostazione(primo.getId(), postazioni[1].getId(), data.plusDays(1));
+    }
+
+    @Test
+    @DisplayName("Le postazioni disponibili coincidono con la ricerca JPA")
+    void testDisponibili() {
+        List<RiepilogoPostazione> disponibili = disponibilitaReattivaService
+            .cercaDisponibili(TipoPostazione.OPENSPACE, CITTA, data).collectList().block();
+
+        assertEquals(List.of("Reattiva-1"), disponibili.stream().map(RiepilogoPostazione::getCodice).toList());
+        assertEquals(prenotazioneService.cercaRiepiloghiDisponibili(TipoPostazione.OPENSPACE, CITTA, data),
+            disponibili);
+    }
+
+    @Test
+    @DisplayName("Il calendario coincide con quello JPA, con e senza filtro sui tipi")
+    void testCalendario() {
+        List<DisponibilitaGiorno> calendario = disponibilitaReattivaService
+            .getCalendario(CITTA, data, data.plusDays(2), null).collectList().block();
+
+        assertEquals(3, calendario.size());
+        assertEquals(1, calendario.get(0).getPostazioniLibere());
+        assertEquals(1, calendario.get(0).getPostiLiberi());
+        assertEquals(prenotazioneService.getCalendarioDisponibilita(CITTA, data, data.plusDays(2), null), calendario);
+
+        EnumSet<TipoPostazione> openSpace = EnumSet.of(TipoPostazione.OPENSPACE);
+        assertEquals(prenotazioneService.getCalendarioDisponibilita(CITTA, data, data.plusDays(2), openSpace),
+            disponibilitaReattivaService.getCalendario(CITTA, data, data.plusDays(2), openSpace)
+                .collectList().block());
+
+        assertThrows(IllegalArgumentException.class, () ->
+            disponibilitaReattivaService.getCalendario(CITTA, data, data.minusDays(1), null));
+
+        // Al massimo 92 giorni, estremi inclusi, come il calendario JPA
+        LocalDate ultimo = data.plusDays(PrenotazioneService.MAX_GIORNI_INTERVALLO - 1);
+        assertEquals(PrenotazioneService.MAX_GIORNI_INTERVALLO, disponibilitaReattivaService
+            .getCalendario(CITTA, data, ultimo, null).collectList().block().size());
+        assertThrows(IllegalArgumentException.class, () ->
+            disponibilitaReattivaService.getCalendario(CITTA, data, ultimo.plusDays(1), null));
+    }
+
+    @Test
+    @DisplayName("Lo storico di un utente coincide con quello JPA; un utente inesistente produce un errore")
+    void testStoricoUtente() {
+        List<RiepilogoPrenotazione> storico = disponibilitaReattivaService
+            .getRiepiloghiByUsername("reattiva.1").collectList().block();
+
+        assertEquals(2, storico.size());
+        assertEquals(data.plusDays(1), storico.get(0).getData());
+        assertEquals(prenotazioneService.getPaginaRiepiloghi("reattiva.1", null, null, null, 50).getElementi(),
+            storico);
+
+        assertTrue(disponibilitaReattivaService.getRiepiloghiByUsername("reattiva.senza.prenotazioni")
+            .collectList().block().isEmpty());
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+            disponibilitaReattivaService.getRiepiloghiByUsername("reattiva.inesistente").blockLast());
+        assertEquals("Utente non trovato: reattiva.inesistente", exception.getMessage());
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.repository.Repository;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.example.demo.config.ContatoreQuery;
+
+/**
+ * Estensione JUnit che conta le query eseguite da una chiamata ai service e ne verifica il limite massimo.
+ * Sul database reale conta le istruzioni SQL preparate da Hibernate nel thread del test;
+ * quando i repository sono sostituiti da mock conta le loro invocazioni, ognuna delle quali
+ * corrisponderebbe a una query. Così un N+1 fa fallire il test in entrambi i casi.
+ *
+ * Si registra come campo del test:
+ * <pre>
+ * &#64;RegisterExtension
+ * LimiteQuery query = new LimiteQuery();
+ * ...
+ * query.alMassimo(3, () -&gt; prenotazioneService.prenotaPostazione(utenteId, postazioneId, data));
+ * </pre>
+ */
+public class LimiteQuery implements BeforeEachCallback {
+
+    /**
+     * Metodi dei repository che non eseguono query
+     */
+    private static final Set<String> METODI_SENZA_QUERY =
+        Set.of("getReferenceById", "toString", "hashCode", "equals");
+
+    private final List<Object> repositoryMock = new ArrayList<>();
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        repositoryMock.clear();
+        ApplicationContext applicationContext = SpringExtension.getApplicationContext(context);
+        for (Object repository : applicationContext.getBeansOfType(Repository.class).values()) {
+            if (Mockito.mockingDetails(repository).isMock()) {
+                repositoryMock.add(repository);
+            }
+        }
+    }
+
+    /**
+     * Esegue un'operazione e verifica che non superi il numero massimo di query,
+     * anche quando termina con un'eccezione.
+     *
+     * @param massimo numero massimo di query ammesse
+     * @param operazione l'operazione da misurare
+     * @return il risultato dell'operazione
+     */
+    public <T> T alMassimo(long massimo, Supplier<T> operazione) {
+        long iniziali = getConteggio();
+        try {
+            return operazione.get();
+        } finally {
+            long eseguite = getConteggio() - iniziali;
+            assertTrue(eseguite <= massimo,
+                "Attese al massimo " + massimo + " query, eseguite " + eseguite);
+        }
+    }
+
+    /**
+     * Variante di {@link #alMassimo(long, Supplier)} per le operazioni senza risultato.
+     */
+    public void alMassimo(long massimo, Runnable operazione) {
+        alMassimo(massimo, () -> {
+            operazione.run();
+            return null;
+        });
+    }
+
+    /**
+     * Esegue un'operazione e restituisce il numero di query eseguite.
+     *
+     * @param operazione l'operazione da misurare
+     * @return il numero di query eseguite
+     */
+    public long conta(Runnable operazione) {
+        long iniziali = getConteggio();
+        operazione.run();
+        return getConteggio() - iniziali;
+    }
+
+    private long getConteggio() {
+        long invocazioni = 0;
+        for (Object repository : repositoryMock) {
+            invocazioni += Mockito.mockingDetails(repository).getInvocations().stream()
+                .filter(invocazione -> !METODI_SENZA_QUERY.contains(invocazione.getMethod().getName()))
+                .count();
+        }
+        return ContatoreQuery.getConteggio() + invocazioni;
+    }
+}
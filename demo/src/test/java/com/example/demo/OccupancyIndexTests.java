@@ -0,0 +1,227 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.example.demo.model.*;
+import com.example.demo.repository.*;
+import com.example.demo.service.*;
+
+/**
+ * Test dell'indice delle occupazioni e della serializzazione delle prenotazioni concorrenti.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class OccupancyIndexTests {
+
+    private static final int THREAD = 8;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private PostazioneRepository postazioneRepository;
+
+    @Autowired
+    private DatiDiProva dati;
+
+    @Test
+    @DisplayName("Prenotazioni concorrenti della stessa postazione: solo una va a buon fine")
+    void testPrenotazioniConcorrentiStessaPostazione() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(20);
+        Edificio edificio = creaEdificio("Concorrenza", 3, 1);
+        Postazione postazione = postazioneRepository.findByEdificioId(edificio.getId()).get(0);
+
+        List<Long> utenti = new ArrayList<>();
+        for (int i = 0; i < THREAD; i++) {
+            utenti.add(dati.creaUtente("concorrente." + i).getId());
+        }
+
+        int successi = eseguiInParallelo(utenti, utenteId ->
+            prenotazioneService.prenotaPostazione(utenteId, postazione.getId(), data));
+
+        assertEquals(1, successi, "Una sola prenotazione concorrente deve essere accettata");
+        assertTrue(occupancyIndex.getOccupazione(edificio.getId(), data).isPrenotata(postazione.getId()));
+    }
+
+    @Test
+    @DisplayName("L'indice viene aggiornato da eliminazione e modifica delle prenotazioni")
+    void testAggiornamentoIndice() {
+        LocalDate data = LocalDate.now().plusDays(21);
+        Edificio edificio = creaEdificio("Aggiornamento", 2, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        Utente utente = dati.creaUtente("indice.aggiornamento");
+
+        Prenotazione prenotazione = prenotazioneService.prenotaPostazione(
+            utente.getId(), postazioni.get(0).getId(), data);
+        assertEquals(1, occupancyIndex.getOccupazione(edificio.getId(), data).getPostiOccupati());
+
+        prenotazioneService.modificaPrenotazione(prenotazione.getId(), data.plusDays(1),
+            postazioni.get(1).getCodice(), "Administrator");
+        assertEquals(0, occupancyIndex.getOccupazione(edificio.getId(), data).getPostiOccupati());
+        assertTrue(occupancyIndex.getOccupazione(edificio.getId(), data.plusDays(1))
+            .isPrenotata(postazioni.get(1).getId()));
+
+        prenotazioneService.deletePrenotazione(prenotazione.getId(), "Administrator");
+        assertEquals(0, occupancyIndex.getOccupazione(edificio.getId(), data.plusDays(1)).getPostiOccupati());
+
+        // Dopo uno svuotamento l'indice ricarica dal database lo stesso stato
+        occupancyIndex.svuota();
+        assertEquals(0, occupancyIndex.getOccupazione(edificio.getId(), data.plusDays(1)).getPostiOccupati());
+    }
+
+    @Test
+    @DisplayName("Un edificio al completo rifiuta nuove prenotazioni")
+    void testEdificioCompleto() {
+        LocalDate data = LocalDate.now().plusDays(22);
+        Edificio edificio = creaEdificio("Completo", 2, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+
+        prenotazioneService.prenotaPostazione(dati.creaUtente("completo.1").getId(), postazioni.get(0).getId(), data);
+        prenotazioneService.prenotaPostazione(dati.creaUtente("completo.2").getId(), postazioni.get(1).getId(), data);
+
+        // Una nuova postazione aggiorna la capienza dell'edificio
+        prenotazioneService.addPostazione("Completo-extra", "Postazione extra", TipoPostazione.PRIVATO, 1,
+            edificio.getId());
+        assertEquals(3, occupancyIndex.getCapienza(edificio.getId()));
+
+        Postazione extra = postazioneRepository.findByCodice("Completo-extra").orElseThrow();
+        prenotazioneService.prenotaPostazione(dati.creaUtente("completo.3").getId(), extra.getId(), data);
+
+        Exception exception = assertThrows(IllegalStateException.class, () ->
+            prenotazioneService.prenotaPostazione(dati.creaUtente("completo.4").getId(), extra.getId(), data));
+        assertEquals("L'edificio ha raggiunto il numero massimo di prenotazioni per questa data",
+            exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("I giorni fuori dalla finestra dell'indice vengono letti dal database senza essere memorizzati")
+    void testFinestraIndice() {
+        Edificio edificio = creaEdificio("Finestra", 2, 1);
+        Postazione postazione = postazioneRepository.findByEdificioId(edificio.getId()).get(0);
+        LocalDate lontano = LocalDate.now().plusYears(50);
+        int dimensione = occupancyIndex.getDimensione();
+
+        prenotazioneService.prenotaPostazione(dati.creaUtente("finestra.1").getId(), postazione.getId(), lontano);
+        assertTrue(occupancyIndex.getOccupazione(edificio.getId(), lontano).isPrenotata(postazione.getId()));
+        Exception exception = assertThrows(IllegalStateException.class, () ->
+            prenotazioneService.prenotaPostazione(dati.creaUtente("finestra.2").getId(), postazione.getId(), lontano));
+        assertEquals("La postazione è già prenotata per questa data", exception.getMessage());
+
+        occupancyIndex.getOccupazioni(List.of(
+            new OccupancyIndex.Chiave(edificio.getId(), LocalDate.of(1900, 1, 1)),
+            new OccupancyIndex.Chiave(edificio.getId(), LocalDate.now().minusDays(1)),
+            new OccupancyIndex.Chiave(edificio.getId(), LocalDate.of(9999, 12, 31))));
+        assertEquals(dimensione, occupancyIndex.getDimensione());
+    }
+
+    @Test
+    @DisplayName("Le operazioni concorrenti su un giorno oltre l'orizzonte condividono la stessa occupazione")
+    void testConcorrenzaOltreOrizzonte() throws Exception {
+        Edificio edificio = creaEdificio("Orizzonte", 2, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        LocalDate lontano = LocalDate.now().plusYears(60);
+        int dimensione = occupancyIndex.getDimensione();
+
+        List<Long> utenti = new ArrayList<>();
+        for (int i = 0; i < THREAD; i++) {
+            utenti.add(dati.creaUtente("orizzonte." + i).getId());
+        }
+        int successi = eseguiInParallelo(utenti, utenteId ->
+            prenotazioneService.prenotaPostazione(utenteId, postazioni.get(0).getId(), lontano));
+        assertEquals(1, successi, "Una sola prenotazione concorrente deve essere accettata");
+
+        // Il secondo thread attende il lock del primo e vede l'occupazione da lui aggiornata
+        Long segnaposto = postazioni.get(1).getId();
+        CountDownLatch bloccato = new CountDownLatch(1);
+        CountDownLatch rilascio = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> primo = executor.submit(() -> occupancyIndex.conLock(edificio.getId(), lontano, occupazione -> {
+                occupazione.aggiungi(segnaposto, 1);
+                bloccato.countDown();
+                try {
+                    return rilascio.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            assertTrue(bloccato.await(5, TimeUnit.SECONDS));
+            Future<Boolean> secondo = executor.submit(() ->
+                occupancyIndex.conLock(edificio.getId(), lontano, occupazione -> occupazione.isPrenotata(segnaposto)));
+            assertThrows(TimeoutException.class, () -> secondo.get(500, TimeUnit.MILLISECONDS));
+            rilascio.countDown();
+            assertTrue(secondo.get(5, TimeUnit.SECONDS));
+            primo.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Terminate le operazioni, l'occupazione temporanea viene scartata e il giorno riletto dal database
+        boolean segnapostoPrenotato = occupancyIndex.conLock(edificio.getId(), lontano,
+            occupazione -> occupazione.isPrenotata(segnaposto));
+        boolean prenotata = occupancyIndex.conLock(edificio.getId(), lontano,
+            occupazione -> occupazione.isPrenotata(postazioni.get(0).getId()));
+        assertFalse(segnapostoPrenotato);
+        assertTrue(prenotata);
+        assertEquals(dimensione, occupancyIndex.getDimensione());
+    }
+
+    /**
+     * Esegue in parallelo un'operazione per ogni utente e conta quelle andate a buon fine.
+     */
+    private int eseguiInParallelo(List<Long> utenti, Consumer<Long> operazione)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(utenti.size());
+        CountDownLatch partenza = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> risultati = new ArrayList<>();
+            for (Long utenteId : utenti) {
+                risultati.add(executor.submit(() -> {
+                    partenza.await();
+                    try {
+                        operazione.accept(utenteId);
+                        return true;
+                    } catch (IllegalStateException e) {
+                        return false;
+                    }
+                }));
+            }
+            partenza.countDown();
+            int successi = 0;
+            for (Future<Boolean> risultato : risultati) {
+                if (risultato.get(30, TimeUnit.SECONDS)) {
+                    successi++;
+                }
+            }
+            return successi;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Edificio creaEdificio(String nome, int numeroPostazioni, int maxOccupanti) {
+        Edificio edificio = dati.creaEdificio(nome, "IndiceCity");
+        dati.creaPostazioni(nome, edificio, numeroPostazioni, TipoPostazione.PRIVATO, maxOccupanti);
+        return edificio;
+    }
+}
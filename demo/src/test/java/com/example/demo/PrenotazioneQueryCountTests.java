@@ -0,0 +1,739 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.example.demo.controller.PrenotazioneController;
+import com.example.demo.dto.DisponibilitaGiorno;
+import com.example.demo.dto.EsitoPrenotazione;
+import com.example.demo.dto.Pagina;
+import com.example.demo.dto.PrenotazioneRequest;
+import com.example.demo.dto.PrenotazioneRicorrenteRequest;
+import com.example.demo.dto.RiepilogoPostazione;
+import com.example.demo.dto.RiepilogoPrenotazione;
+import com.example.demo.dto.StatisticheCache;
+import com.example.demo.model.*;
+import com.example.demo.repository.*;
+import com.example.demo.service.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Test che verificano il numero di statement SQL eseguiti dai percorsi critici del service.
+ * Utilizzano le statistiche di Hibernate sul database H2 reale del profilo "test".
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class PrenotazioneQueryCountTests {
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private EsportazioneService esportazioneService;
+
+    @Autowired
+    private CatalogoCacheService catalogoCacheService;
+
+    @Autowired
+    private UtenteService utenteService;
+
+    @Autowired
+    private Risolutore risolutore;
+
+    @Autowired
+    private PostazioneRepository postazioneRepository;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private PrenotazioneController prenotazioneController;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DatiDiProva dati;
+
+    private Statistics statistics;
+
+    @RegisterExtension
+    LimiteQuery query = new LimiteQuery();
+
+    private static int edificiCreati = 0;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    @DisplayName("Il costo di una prenotazione non dipende dalle dimensioni dell'edificio")
+    void testPrenotazioneNumeroCostanteDiQuery() {
+        LocalDate data = LocalDate.now().plusDays(10);
+
+        long queryEdificioPiccolo = contaQueryPrenotazione(2, 1, data);
+        long queryEdificioGrande = contaQueryPrenotazione(200, 150, data);
+
+        assertEquals(queryEdificioPiccolo, queryEdificioGrande,
+            "Il numero di query di una prenotazione non deve crescere con postazioni e prenotazioni");
+        assertTrue(queryEdificioGrande <= 6,
+            "Una prenotazione dovrebbe eseguire al massimo 6 statement, eseguiti: " + queryEdificioGrande);
+    }
+
+    @Test
+    @DisplayName("Capienza e occupazione dell'edificio vengono lette una sola volta dal database")
+    void testCapacitaEdificioAggregata() {
+        LocalDate data = LocalDate.now().plusDays(11);
+        Edificio edificio = creaEdificio(3, 3);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        prenotaTutte(postazioni.subList(0, 2), data);
+
+        statistics.clear();
+        OccupancyIndex.Occupazione occupazione = occupancyIndex.getOccupazione(edificio.getId(), data);
+        long capienza = occupancyIndex.getCapienza(edificio.getId());
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(9L, capienza);
+        assertEquals(6L, occupazione.getPostiOccupati());
+        assertFalse(occupancyIndex.isCompleto(edificio.getId(), occupazione));
+
+        statistics.clear();
+        occupancyIndex.getOccupazione(edificio.getId(), data);
+        occupancyIndex.getCapienza(edificio.getId());
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        prenotazioneService.prenotaPostazione(creaUtente("capienza." + edificio.getId()).getId(),
+            postazioni.get(2).getId(), data);
+        assertTrue(occupancyIndex.isCompleto(edificio.getId(), occupancyIndex.getOccupazione(edificio.getId(), data)));
+    }
+
+    @Test
+    @DisplayName("La ricerca delle postazioni disponibili esegue un solo statement")
+    void testRicercaDisponibiliUnaQuery() {
+        LocalDate data = LocalDate.now().plusDays(12);
+        Edificio edificio = creaEdificio(50, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        prenotaTutte(postazioni.subList(0, 20), data);
+
+        // La ricerca delle postazioni disponibili non deve eseguire una query per postazione
+        List<Postazione> disponibili = query.alMassimo(1, () -> prenotazioneService.cercaPostazioniDisponibili(
+            TipoPostazione.OPENSPACE, edificio.getCitta(), data));
+        assertEquals(30, disponibili.size());
+    }
+
+    @Test
+    @DisplayName("La prenotazione multipla esegue un numero costante di statement")
+    void testPrenotazioneBatch() {
+        LocalDate data = LocalDate.now().plusDays(13);
+        Edificio edificio = creaEdificio(60, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        prenotaTutte(postazioni.subList(0, 1), data);
+
+        List<PrenotazioneRequest> richieste = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            richieste.add(richiesta(creaUtente("batch." + edificio.getId() + "." + i).getUsername(),
+                postazioni.get(i).getCodice(), data));
+        }
+        // Stesso utente due volte nello stesso giorno e utente inesistente
+        richieste.add(richiesta(richieste.get(1).getUsername(), postazioni.get(55).getCodice(), data));
+        richieste.add(richiesta("utente.inesistente", postazioni.get(56).getCodice(), data));
+
+        statistics.clear();
+        List<EsitoPrenotazione> esiti = prenotazioneService.prenotaBatch(richieste, false);
+
+        assertTrue(statistics.getPrepareStatementCount() <= 6,
+            "La prenotazione multipla non deve eseguire statement per richiesta, eseguiti: "
+                + statistics.getPrepareStatementCount());
+        assertEquals(52, esiti.size());
+        assertEquals("La postazione è già prenotata per questa data", esiti.get(0).getMessaggio());
+        assertEquals(49, esiti.stream().filter(EsitoPrenotazione::isAccettata).count());
+        assertEquals("L'utente ha già una prenotazione per questa data", esiti.get(50).getMessaggio());
+        assertEquals("Utente non trovato: utente.inesistente", esiti.get(51).getMessaggio());
+        assertNotNull(esiti.get(1).getPrenotazioneId());
+        assertEquals(postazioni.get(1).getId(),
+            prenotazioneRepository.findById(esiti.get(1).getPrenotazioneId()).orElseThrow().getPostazione().getId());
+    }
+
+    @Test
+    @DisplayName("La prenotazione multipla tutto-o-niente non inserisce nulla se una richiesta è rifiutata")
+    void testPrenotazioneBatchTuttoONiente() {
+        LocalDate data = LocalDate.now().plusDays(14);
+        Edificio edificio = creaEdificio(3, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+
+        List<PrenotazioneRequest> richieste = List.of(
+            richiesta(creaUtente("tutto." + edificio.getId() + ".1").getUsername(), postazioni.get(0).getCodice(), data),
+            richiesta(creaUtente("tutto." + edificio.getId() + ".2").getUsername(), postazioni.get(0).getCodice(), data));
+
+        List<EsitoPrenotazione> esiti = prenotazioneService.prenotaBatch(richieste, true);
+
+        assertTrue(esiti.stream().noneMatch(EsitoPrenotazione::isAccettata));
+        assertEquals(0, occupancyIndex.getOccupazione(edificio.getId(), data).getPostiOccupati());
+    }
+
+    @Test
+    @DisplayName("La prenotazione multipla rifiuta richieste incomplete, codici ambigui e lotti troppo grandi")
+    void testPrenotazioneBatchRichiesteNonValide() {
+        LocalDate data = LocalDate.now().plusDays(15);
+        Edificio edificio = creaEdificio(2, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        // Lo stesso codice in un altro edificio
+        String codice = postazioni.get(0).getCodice();
+        Edificio altroEdificio = dati.creaEdificio("Edificio Omonimo " + edificio.getId(), edificio.getCitta());
+        dati.creaPostazione(codice, altroEdificio);
+        String username = creaUtente("batch.non.valide." + edificio.getId()).getUsername();
+
+        PrenotazioneRequest conEdificio = richiesta(username, codice, data);
+        conEdificio.setEdificioId(altroEdificio.getId());
+        List<EsitoPrenotazione> esiti = prenotazioneService.prenotaBatch(List.of(
+            richiesta(null, codice, data),
+            richiesta(username, null, data),
+            richiesta(username, codice, data),
+            conEdificio), false);
+
+        assertEquals("Utente non specificato", esiti.get(0).getMessaggio());
+        assertEquals("Postazione non specificata", esiti.get(1).getMessaggio());
+        assertEquals("Postazione ambigua, specificare l'edificio: " + codice, esiti.get(2).getMessaggio());
+        assertTrue(esiti.get(3).isAccettata());
+        assertEquals(altroEdificio.getId(), prenotazioneRepository.findDettaglioById(esiti.get(3).getPrenotazioneId())
+            .orElseThrow().getPostazione().getEdificio().getId());
+
+        List<PrenotazioneRequest> troppe = new ArrayList<>();
+        for (int i = 0; i <= PrenotazioneService.MAX_RICHIESTE_BATCH; i++) {
+            troppe.add(richiesta(username, postazioni.get(1).getCodice(), data.plusDays(i)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> prenotazioneService.prenotaBatch(troppe, false));
+        assertEquals(HttpStatus.BAD_REQUEST, prenotazioneController.prenotaBatch(troppe, false).getStatusCode());
+    }
+
+    @Test
+    @DisplayName("La prenotazione ricorrente verifica tutte le date con un numero costante di statement")
+    void testPrenotazioneRicorrente() {
+        // Quattro settimane a partire da un lunedì: 8 tra martedì e giovedì
+        LocalDate lunedi = LocalDate.now().plusWeeks(8).with(DayOfWeek.MONDAY);
+        Edificio edificio = creaEdificio(2, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        Utente utente = creaUtente("ricorrente." + edificio.getId());
+
+        // Il primo martedì la postazione è già occupata da un altro utente
+        prenotaTutte(postazioni.subList(0, 1), lunedi.plusDays(1));
+
+        PrenotazioneRicorrenteRequest richiesta = new PrenotazioneRicorrenteRequest();
+        richiesta.setUsername(utente.getUsername());
+        richiesta.setCodicePostazione(postazioni.get(0).getCodice());
+        richiesta.setDataInizio(lunedi);
+        richiesta.setDataFine(lunedi.plusDays(27));
+        richiesta.setGiorniSettimana(Set.of(DayOfWeek.TUESDAY, DayOfWeek.THURSDAY));
+
+        statistics.clear();
+        List<EsitoPrenotazione> esiti = prenotazioneService.prenotaRicorrente(richiesta);
+
+        assertTrue(statistics.getPrepareStatementCount() <= 6,
+            "La prenotazione ricorrente non deve eseguire statement per data, eseguiti: "
+                + statistics.getPrepareStatementCount());
+        assertEquals(8, esiti.size());
+        assertFalse(esiti.get(0).isAccettata());
+        assertEquals(lunedi.plusDays(1), esiti.get(0).getData());
+        assertEquals(7, esiti.stream().filter(EsitoPrenotazione::isAccettata).count());
+
+        // Al massimo 366 giorni, estremi inclusi
+        richiesta.setDataFine(lunedi.plusDays(365));
+        richiesta.setGiorniSettimana(Set.of(DayOfWeek.TUESDAY));
+        esiti = prenotazioneService.prenotaRicorrente(richiesta);
+        assertEquals(53, esiti.size());
+        assertEquals(lunedi.plusDays(365), esiti.get(esiti.size() - 1).getData());
+        richiesta.setDataFine(lunedi.plusDays(366));
+        assertThrows(IllegalArgumentException.class, () -> prenotazioneService.prenotaRicorrente(richiesta));
+        richiesta.setDataFine(lunedi.plusDays(400));
+        assertThrows(IllegalArgumentException.class, () -> prenotazioneService.prenotaRicorrente(richiesta));
+    }
+
+    @Test
+    @DisplayName("Il calendario delle disponibilità non esegue query per giorno")
+    void testCalendarioDisponibilita() {
+        LocalDate dal = LocalDate.now().plusDays(40);
+        Edificio edificio = creaEdificio(4, 2);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        prenotaTutte(postazioni.subList(0, 1), dal);
+        prenotaTutte(postazioni.subList(1, 3), dal.plusDays(1));
+
+        // Con filtro sui tipi: catalogo e una query raggruppata sulle prenotazioni
+        statistics.clear();
+        List<DisponibilitaGiorno> calendario = prenotazioneService.getCalendarioDisponibilita(
+            edificio.getCitta(), dal, dal.plusDays(2), Set.of(TipoPostazione.OPENSPACE));
+        assertEquals(2, statistics.getPrepareStatementCount());
+        verificaCalendario(calendario, dal);
+
+        // Senza filtro: le occupazioni vengono lette dall'indice, caricato una sola volta
+        prenotazioneService.getCalendarioDisponibilita(edificio.getCitta(), dal, dal.plusDays(2), null);
+        statistics.clear();
+        calendario = prenotazioneService.getCalendarioDisponibilita(edificio.getCitta(), dal, dal.plusDays(2), null);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        verificaCalendario(calendario, dal);
+
+        // Al massimo 92 giorni, estremi inclusi
+        LocalDate ultimo = dal.plusDays(PrenotazioneService.MAX_GIORNI_INTERVALLO - 1);
+        assertEquals(PrenotazioneService.MAX_GIORNI_INTERVALLO, prenotazioneService.getCalendarioDisponibilita(
+            edificio.getCitta(), dal, ultimo, Set.of(TipoPostazione.OPENSPACE)).size());
+        assertThrows(IllegalArgumentException.class, () -> prenotazioneService.getCalendarioDisponibilita(
+            edificio.getCitta(), dal, ultimo.plusDays(1), null));
+    }
+
+    @Test
+    @DisplayName("La paginazione a cursore costa lo stesso numero di query per ogni pagina")
+    void testPaginazioneCursore() {
+        LocalDate dal = LocalDate.now().plusDays(200);
+        Edificio edificio = creaEdificio(3, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        Utente utente = creaUtente("pagine." + edificio.getId());
+
+        // 25 prenotazioni dell'utente: una al giorno, a rotazione sulle postazioni
+        List<Prenotazione> storico = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Prenotazione prenotazione = new Prenotazione();
+            prenotazione.setUtente(utente);
+            prenotazione.setPostazione(postazioni.get(i % 3));
+            prenotazione.setData(dal.plusDays(i));
+            storico.add(prenotazione);
+        }
+        prenotazioneRepository.saveAll(storico);
+
+        List<Prenotazione> lette = new ArrayList<>();
+        String cursore = null;
+        int pagine = 0;
+        do {
+            statistics.clear();
+            Pagina<Prenotazione> pagina = prenotazioneService.getPaginaPrenotazioni(
+                utente.getUsername(), null, null, cursore, 10);
+            // Lo username viene risolto dal database solo alla prima pagina, poi dal Risolutore
+            assertEquals(pagine == 0 ? 2 : 1, statistics.getPrepareStatementCount(),
+                "Ogni pagina deve costare una sola query, più la risoluzione dell'utente alla prima");
+            lette.addAll(pagina.getElementi());
+            cursore = pagina.getCursoreSuccessivo();
+            pagine++;
+        } while (cursore != null);
+
+        assertEquals(3, pagine);
+        assertEquals(25, lette.size());
+        assertEquals(dal.plusDays(24), lette.get(0).getData());
+        assertEquals(dal, lette.get(24).getData());
+        assertEquals(postazioni.get(0).getCodice(), lette.get(24).getPostazione().getCodice());
+
+        // Filtro per intervallo di date sulla lista di tutte le prenotazioni
+        Pagina<Prenotazione> filtrata = prenotazioneService.getPaginaPrenotazioni(
+            null, dal.plusDays(5), dal.plusDays(9), null, 50);
+        assertEquals(5, filtrata.getElementi().size());
+        assertNull(filtrata.getCursoreSuccessivo());
+
+        assertThrows(IllegalArgumentException.class, () ->
+            prenotazioneService.getPaginaPrenotazioni(null, null, null, "non-valido", 10));
+    }
+
+    @Test
+    @DisplayName("L'esportazione legge tutte le prenotazioni con un'unica query in streaming")
+    void testEsportazioneStreaming() throws Exception {
+        LocalDate dal = LocalDate.now().plusDays(300);
+        Edificio edificio = creaEdificio(3, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        List<Prenotazione> prenotazioni = new ArrayList<>();
+        for (Postazione postazione : postazioni) {
+            Utente utente = creaUtente("export." + postazione.getCodice());
+            for (int i = 0; i < 10; i++) {
+                Prenotazione prenotazione = new Prenotazione();
+                prenotazione.setUtente(utente);
+                prenotazione.setPostazione(postazione);
+                prenotazione.setData(dal.plusDays(i));
+                prenotazioni.add(prenotazione);
+            }
+        }
+        prenotazioneRepository.saveAll(prenotazioni);
+
+        statistics.clear();
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        long righe = esportazioneService.esportaPrenotazioni(
+            EsportazioneService.Formato.NDJSON, dal, dal.plusDays(9), ndjson);
+        assertEquals(1, statistics.getPrepareStatementCount(),
+            "L'esportazione deve eseguire una sola query indipendentemente dal numero di righe");
+
+        String[] oggetti = ndjson.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(30, righe);
+        assertEquals(30, oggetti.length);
+        for (String oggetto : oggetti) {
+            assertTrue(oggetto.startsWith("{\"id\":"), "Riga NDJSON non valida: " + oggetto);
+            assertTrue(objectMapper.readTree(oggetto).has("codicePostazione"));
+        }
+        assertTrue(oggetti[0].contains("\"data\":\"" + dal + "\""));
+        assertTrue(oggetti[29].contains("\"data\":\"" + dal.plusDays(9) + "\""));
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        esportazioneService.esportaPrenotazioni(EsportazioneService.Formato.CSV, dal, dal, csv);
+        String[] righeCsv = csv.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(4, righeCsv.length);
+        assertEquals("id,data,username,codicePostazione,edificio,citta", righeCsv[0]);
+        assertTrue(righeCsv[1].endsWith("," + edificio.getNome() + "," + edificio.getCitta()));
+
+        // Un ritorno a capo in un campo lo fa racchiudere tra virgolette
+        Prenotazione ritornoACapo = new Prenotazione();
+        ritornoACapo.setUtente(creaUtente("export\r" + edificio.getId()));
+        ritornoACapo.setPostazione(postazioni.get(0));
+        ritornoACapo.setData(dal.plusDays(10));
+        prenotazioneRepository.save(ritornoACapo);
+        csv.reset();
+        esportazioneService.esportaPrenotazioni(EsportazioneService.Formato.CSV, dal.plusDays(10), dal.plusDays(10),
+            csv);
+        assertTrue(csv.toString(StandardCharsets.UTF_8).contains(",\"export\r" + edificio.getId() + "\","));
+
+        assertThrows(IllegalArgumentException.class, () -> EsportazioneService.Formato.da("xml"));
+        assertThrows(IllegalArgumentException.class, () -> esportazioneService.verificaIntervallo(dal, dal.minusDays(1)));
+    }
+
+    @Test
+    @DisplayName("Le risposte REST non dipendono dallo storico delle prenotazioni")
+    void testRiepiloghiSenzaStorico() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(360);
+        Edificio edificio = creaEdificio(3, 2);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        Utente utente = creaUtente("riepiloghi." + edificio.getId());
+
+        // Storico di 20 giorni sulle prime due postazioni
+        List<Prenotazione> storico = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            Prenotazione prenotazione = new Prenotazione();
+            prenotazione.setUtente(utente);
+            prenotazione.setPostazione(postazioni.get(i % 2));
+            prenotazione.setData(data.minusDays(i));
+            storico.add(prenotazione);
+        }
+        prenotazioneRepository.saveAll(storico);
+
+        statistics.clear();
+        List<RiepilogoPostazione> disponibili = prenotazioneService.cercaRiepiloghiDisponibili(
+            TipoPostazione.OPENSPACE, edificio.getCitta(), data);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(3, disponibili.size());
+        assertEquals(edificio.getNome(), disponibili.get(0).getNomeEdificio());
+        assertFalse(objectMapper.writeValueAsString(disponibili).contains("prenotazioni"),
+            "Le postazioni disponibili non devono includere lo storico delle prenotazioni");
+
+        statistics.clear();
+        Pagina<RiepilogoPrenotazione> pagina = prenotazioneService.getPaginaRiepiloghi(
+            utente.getUsername(), null, null, null, 5);
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(5, pagina.getElementi().size());
+        assertEquals(data.minusDays(1), pagina.getElementi().get(0).getData());
+        assertEquals(postazioni.get(1).getCodice(), pagina.getElementi().get(0).getCodicePostazione());
+
+        Pagina<RiepilogoPrenotazione> successiva = prenotazioneService.getPaginaRiepiloghi(
+            utente.getUsername(), null, null, pagina.getCursoreSuccessivo(), 5);
+        assertEquals(data.minusDays(6), successiva.getElementi().get(0).getData());
+
+        statistics.clear();
+        List<RiepilogoPrenotazione> riepiloghi = prenotazioneService.getPaginaRiepiloghi(
+            utente.getUsername(), null, null, null, 50).getElementi();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(20, riepiloghi.size());
+        assertEquals(utente.getUsername(), riepiloghi.get(19).getUsername());
+    }
+
+    @Test
+    @DisplayName("Gli elenchi di prenotazioni e postazioni costano una query, senza caricamenti per riga")
+    void testElenchiSenzaNPiuUno() {
+        LocalDate dal = LocalDate.now().plusDays(400);
+        Edificio edificio = creaEdificio(4, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        prenotaTutte(postazioni, dal);
+
+        statistics.clear();
+        Pagina<Prenotazione> pagina = prenotazioneService.getPaginaPrenotazioni(null, dal, dal, null, 10);
+        // Le associazioni sono lazy: vengono lette fuori da ogni transazione, quindi devono essere già caricate
+        for (Prenotazione prenotazione : pagina.getElementi()) {
+            assertEquals(edificio.getNome(), prenotazione.getPostazione().getEdificio().getNome());
+            assertTrue(prenotazione.getUtente().getUsername().startsWith("occupante."));
+        }
+        assertEquals(4, pagina.getElementi().size());
+        assertEquals(1, statistics.getPrepareStatementCount(),
+            "Un elenco di N prenotazioni deve costare una query, non 1 + 3N");
+
+        statistics.clear();
+        Prenotazione dettaglio = prenotazioneService.getPrenotazioneById(pagina.getElementi().get(0).getId());
+        assertEquals(edificio.getCitta(), dettaglio.getPostazione().getEdificio().getCitta());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        List<Postazione> tutte = prenotazioneService.getAllPostazioni();
+        tutte.forEach(p -> assertNotNull(p.getEdificio().getNome()));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("Il catalogo viene letto dalla cache di secondo livello e invalidato dalle scritture")
+    void testCacheCatalogo() {
+        Edificio edificio = creaEdificio(2, 1);
+        String codice = postazioneRepository.findByEdificioId(edificio.getId()).get(0).getCodice();
+
+        statistics.clear();
+        postazioneRepository.findByCodice(codice).orElseThrow();
+        postazioneRepository.findByEdificioId(edificio.getId());
+        long primaLettura = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        Postazione postazione = postazioneRepository.findByCodice(codice).orElseThrow();
+        assertEquals(2, postazioneRepository.findByEdificioId(edificio.getId()).size());
+        assertEquals(edificio.getNome(), postazioneRepository.findConEdificioById(postazione.getId())
+            .orElseThrow().getEdificio().getNome());
+        assertEquals(edificio.getNome(), postazioneRepository.findConEdificioById(postazione.getId())
+            .orElseThrow().getEdificio().getNome());
+        assertTrue(primaLettura > 0);
+        assertTrue(statistics.getPrepareStatementCount() <= 1,
+            "Le letture ripetute del catalogo devono essere servite dalla cache");
+
+        // Una nuova postazione invalida i risultati in cache delle query sulle postazioni
+        prenotazioneService.addPostazione("QC-cache-" + edificio.getId(), "Postazione aggiunta",
+            TipoPostazione.OPENSPACE, 1, edificio.getId());
+        assertEquals(3, postazioneRepository.findByEdificioId(edificio.getId()).size());
+        prenotazioneService.deletePostazione("QC-cache-" + edificio.getId());
+        assertEquals(2, postazioneRepository.findByEdificioId(edificio.getId()).size());
+
+        StatisticheCache query = catalogoCacheService.getStatistiche().stream()
+            .filter(s -> s.getRegione().equals(CatalogoCacheService.REGIONE_QUERY))
+            .findFirst().orElseThrow();
+        assertTrue(query.getHit() > 0);
+        assertTrue(query.getMiss() > 0);
+    }
+
+    @Test
+    @DisplayName("Con username e codice già risolti una prenotazione costa solo l'inserimento")
+    void testPrenotazioneConRisolutore() {
+        LocalDate data = LocalDate.now().plusDays(420);
+        Edificio edificio = creaEdificio(3, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        String username = "risolutore." + edificio.getId();
+        utenteService.registraUtente(username, username, username + "@example.com");
+
+        // Prima prenotazione: risolve username e codice e carica l'occupazione del giorno
+        prenotazioneService.prenotaPostazioneByUsername(username, postazioni.get(0).getCodice(), data);
+
+        // Restano solo il caricamento dell'occupazione del nuovo giorno e l'inserimento
+        RiepilogoPrenotazione riepilogo = query.alMassimo(2, () -> prenotazioneService.prenotaPostazioneByUsername(
+            username, postazioni.get(0).getCodice(), data.plusDays(1)));
+        assertNotNull(riepilogo.getId());
+        assertEquals(edificio.getNome(), riepilogo.getNomeEdificio());
+
+        // Registrazione ed eliminazione di utenti e postazioni invalidano le risoluzioni
+        String codice = "QC-risolta-" + edificio.getId();
+        prenotazioneService.addPostazione(codice, "Postazione risolta", TipoPostazione.OPENSPACE, 1, edificio.getId());
+        assertNotNull(risolutore.getPostazione(codice));
+        prenotazioneService.deletePostazione(codice);
+        Exception postazione = assertThrows(IllegalArgumentException.class, () -> risolutore.getPostazione(codice));
+        assertEquals("Postazione non trovata: " + codice, postazione.getMessage());
+
+        String temporaneo = "temporaneo." + edificio.getId();
+        utenteService.registraUtente(temporaneo, temporaneo, temporaneo + "@example.com");
+        assertNotNull(risolutore.getUtenteId(temporaneo));
+        utenteService.deleteUtente(temporaneo);
+        assertThrows(IllegalArgumentException.class, () -> risolutore.getUtenteId(temporaneo));
+    }
+
+    @Test
+    @DisplayName("Le metriche registrano esito, query e risultati di prenotazioni e ricerche")
+    void testMetriche() {
+        LocalDate data = LocalDate.now().plusDays(460);
+        Edificio edificio = creaEdificio(2, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        Utente utente = creaUtente("metriche." + edificio.getId());
+
+        long accettate = contaPrenotazioni(MetrichePrenotazioni.ACCETTATA);
+        long utenteGiaPrenotato = contaPrenotazioni(MetrichePrenotazioni.UTENTE_GIA_PRENOTATO);
+        long postazioneOccupata = contaPrenotazioni(MetrichePrenotazioni.POSTAZIONE_OCCUPATA);
+
+        prenotazioneService.prenotaPostazione(utente.getId(), postazioni.get(0).getId(), data);
+        assertThrows(IllegalStateException.class, () ->
+            prenotazioneService.prenotaPostazione(utente.getId(), postazioni.get(1).getId(), data));
+        assertThrows(IllegalStateException.class, () -> prenotazioneService.prenotaPostazione(
+            creaUtente("metriche.altro." + edificio.getId()).getId(), postazioni.get(0).getId(), data));
+
+        assertEquals(accettate + 1, contaPrenotazioni(MetrichePrenotazioni.ACCETTATA));
+        assertEquals(utenteGiaPrenotato + 1, contaPrenotazioni(MetrichePrenotazioni.UTENTE_GIA_PRENOTATO));
+        assertEquals(postazioneOccupata + 1, contaPrenotazioni(MetrichePrenotazioni.POSTAZIONE_OCCUPATA));
+
+        DistributionSummary query = meterRegistry.get("prenotazioni.query")
+            .tag("operazione", "prenotaPostazione").summary();
+        assertTrue(query.totalAmount() > 0, "Le query delle prenotazioni devono essere contate");
+
+        DistributionSummary risultati = meterRegistry.find("prenotazioni.ricerca.risultati")
+            .tag("operazione", "cercaPostazioniDisponibili").summary();
+        double risultatiIniziali = risultati != null ? risultati.totalAmount() : 0;
+        List<Postazione> disponibili = prenotazioneService.cercaPostazioniDisponibili(
+            postazioni.get(0).getTipo(), edificio.getCitta(), data);
+        risultati = meterRegistry.get("prenotazioni.ricerca.risultati")
+            .tag("operazione", "cercaPostazioniDisponibili").summary();
+        assertEquals(disponibili.size(), risultati.totalAmount() - risultatiIniziali, 0.0);
+    }
+
+    @Test
+    @DisplayName("I vincoli di unicità sostituiscono le verifiche prima dell'inserimento")
+    void testVincoliUnicita() {
+        LocalDate data = LocalDate.now().plusDays(440);
+        Edificio edificio = creaEdificio(3, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        Utente utente = creaUtente("vincoli." + edificio.getId());
+        prenotazioneService.prenotaPostazioneByUsername(utente.getUsername(), postazioni.get(0).getCodice(), data);
+        risolutore.getPostazione(postazioni.get(1).getCodice());
+
+        // Seconda prenotazione dello stesso utente nello stesso giorno: la rifiuta il vincolo su (utente, data)
+        statistics.clear();
+        Exception stessoGiorno = assertThrows(IllegalStateException.class, () ->
+            prenotazioneService.prenotaPostazioneByUsername(utente.getUsername(), postazioni.get(1).getCodice(), data));
+        assertEquals("L'utente ha già una prenotazione per questa data", stessoGiorno.getMessage());
+        assertEquals(2, statistics.getPrepareStatementCount(),
+            "Attesi solo il calcolo della capienza dell'edificio e il tentativo di inserimento");
+
+        // Prenotazione scritta senza passare dall'indice, come da un'altra istanza dell'applicazione
+        Prenotazione esterna = new Prenotazione();
+        esterna.setUtente(creaUtente("vincoli.esterno." + edificio.getId()));
+        esterna.setPostazione(postazioni.get(2));
+        esterna.setData(data);
+        prenotazioneRepository.save(esterna);
+
+        Utente altro = creaUtente("vincoli.altro." + edificio.getId());
+        Exception postazioneOccupata = assertThrows(IllegalStateException.class, () ->
+            prenotazioneService.prenotaPostazione(altro.getId(), postazioni.get(2).getId(), data));
+        assertEquals("La postazione è già prenotata per questa data", postazioneOccupata.getMessage());
+        assertEquals(2, prenotazioneRepository.findPostiOccupati(edificio.getId(), data).size());
+    }
+
+    @Test
+    @DisplayName("Un conflitto scoperto dal vincolo rifiuta solo la sua richiesta, tutto il gruppo solo se tutto-o-niente")
+    void testPrenotazioneBatchConflittoConcorrente() {
+        LocalDate data = LocalDate.now().plusDays(600);
+        Edificio edificio = creaEdificio(3, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        String primo = creaUtente("conflitto.1." + edificio.getId()).getUsername();
+        String secondo = creaUtente("conflitto.2." + edificio.getId()).getUsername();
+        String terzo = creaUtente("conflitto.3." + edificio.getId()).getUsername();
+
+        for (LocalDate giorno : List.of(data, data.plusDays(1))) {
+            // Carica le occupazioni nell'indice, poi scrive una prenotazione senza passare dall'indice
+            prenotazioneService.prenotaBatch(List.of(richiesta(terzo, postazioni.get(2).getCodice(), giorno)), false);
+            Prenotazione esterna = new Prenotazione();
+            esterna.setUtente(creaUtente("conflitto.esterno." + edificio.getId() + "." + giorno));
+            esterna.setPostazione(postazioni.get(0));
+            esterna.setData(giorno);
+            prenotazioneRepository.save(esterna);
+        }
+
+        List<EsitoPrenotazione> esiti = prenotazioneService.prenotaBatch(List.of(
+            richiesta(primo, postazioni.get(0).getCodice(), data),
+            richiesta(secondo, postazioni.get(1).getCodice(), data)), false);
+        assertFalse(esiti.get(0).isAccettata());
+        assertEquals("La postazione è già prenotata per questa data", esiti.get(0).getMessaggio());
+        assertTrue(esiti.get(1).isAccettata());
+        assertNotNull(esiti.get(1).getPrenotazioneId());
+        assertEquals(3, prenotazioneRepository.findPostiOccupati(edificio.getId(), data).size());
+
+        List<EsitoPrenotazione> tuttoONiente = prenotazioneService.prenotaBatch(List.of(
+            richiesta(primo, postazioni.get(0).getCodice(), data.plusDays(1)),
+            richiesta(secondo, postazioni.get(1).getCodice(), data.plusDays(1))), true);
+        assertTrue(tuttoONiente.stream().noneMatch(EsitoPrenotazione::isAccettata));
+        assertEquals(2, prenotazioneRepository.findPostiOccupati(edificio.getId(), data.plusDays(1)).size());
+    }
+
+    private long contaPrenotazioni(String esito) {
+        Timer timer = meterRegistry.find("prenotazioni.prenotazione")
+            .tag("operazione", "prenotaPostazione").tag("esito", esito).timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    private void verificaCalendario(List<DisponibilitaGiorno> calendario, LocalDate dal) {
+        assertEquals(3, calendario.size());
+        assertEquals(dal, calendario.get(0).getData());
+        assertEquals(3L, calendario.get(0).getPostazioniLibere());
+        assertEquals(6L, calendario.get(0).getPostiLiberi());
+        assertEquals(2L, calendario.get(1).getPostazioniLibere());
+        assertEquals(4L, calendario.get(1).getPostiLiberi());
+        assertEquals(4L, calendario.get(2).getPostazioniLibere());
+        assertEquals(8L, calendario.get(2).getPostiLiberi());
+    }
+
+    /**
+     * Crea un edificio con il numero di postazioni e prenotazioni indicato
+     * e misura gli statement eseguiti da una nuova prenotazione.
+     */
+    private long contaQueryPrenotazione(int numeroPostazioni, int numeroPrenotazioni, LocalDate data) {
+        Edificio edificio = creaEdificio(numeroPostazioni, 1);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        prenotaTutte(postazioni.subList(0, numeroPrenotazioni), data);
+
+        Utente utente = creaUtente("query.count." + edificio.getId());
+        Postazione libera = postazioni.get(numeroPostazioni - 1);
+
+        statistics.clear();
+        prenotazioneService.prenotaPostazione(utente.getId(), libera.getId(), data);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Edificio creaEdificio(int numeroPostazioni, int maxOccupanti) {
+        int progressivo = ++edificiCreati;
+        Edificio edificio = dati.creaEdificio("Edificio Query " + progressivo, "QueryCity" + progressivo);
+        dati.creaPostazioni("QC" + progressivo, edificio, numeroPostazioni, TipoPostazione.OPENSPACE, maxOccupanti);
+        return edificio;
+    }
+
+    private void prenotaTutte(List<Postazione> postazioni, LocalDate data) {
+        List<Prenotazione> prenotazioni = new ArrayList<>();
+        for (Postazione postazione : postazioni) {
+            Prenotazione prenotazione = new Prenotazione();
+            prenotazione.setUtente(creaUtente("occupante." + postazione.getCodice()));
+            prenotazione.setPostazione(postazione);
+            prenotazione.setData(data);
+            prenotazioni.add(prenotazione);
+        }
+        prenotazioneRepository.saveAll(prenotazioni);
+    }
+
+    private PrenotazioneRequest richiesta(String username, String codicePostazione, LocalDate data) {
+        PrenotazioneRequest richiesta = new PrenotazioneRequest();
+        richiesta.setUsername(username);
+        richiesta.setCodicePostazione(codicePostazione);
+        richiesta.setData(data);
+        return richiesta;
+    }
+
+    private Utente creaUtente(String username) {
+        return dati.creaUtente(username);
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.demo.model.*;
+import com.example.demo.repository.*;
+import com.example.demo.service.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Test delle prenotazioni singole con lo scrittore per edificio attivo.
+ * Usa un proprio database in memoria, perché il contesto con proprietà diverse ricrea lo schema.
+ */
+@SpringBootTest(properties = {
+    "prenotazioni.scrittore.enabled=true",
+    "prenotazioni.scrittore.code=2",
+    "spring.datasource.url=jdbc:h2:mem:scrittore;DB_CLOSE_DELAY=-1",
+    "spring.r2dbc.url=r2dbc:h2:mem:///scrittore;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class ScrittorePrenotazioniTests {
+
+    private static final int THREAD = 8;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private ScrittorePrenotazioni scrittore;
+
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private PostazioneRepository postazioneRepository;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private DatiDiProva dati;
+
+    @Test
+    @DisplayName("Prenotazioni concorrenti della stessa postazione: lo scrittore ne accetta una sola")
+    void testStessaPostazione() throws Exception {
+        assertTrue(scrittore.isAttivo());
+        LocalDate data = LocalDate.now().plusDays(500);
+        Edificio edificio = creaEdificio("Scrittore", 3);
+        Postazione postazione = postazioneRepository.findByEdificioId(edificio.getId()).get(0);
+
+        List<Callable<Prenotazione>> operazioni = new ArrayList<>();
+        for (int i = 0; i < THREAD; i++) {
+            Long utenteId = dati.creaUtente("scrittore." + i).getId();
+            operazioni.add(() -> prenotazioneService.prenotaPostazione(utenteId, postazione.getId(), data));
+        }
+        List<Object> esiti = eseguiInParallelo(operazioni);
+
+        assertEquals(1, esiti.stream().filter(Prenotazione.class::isInstance).count());
+        assertEquals(THREAD - 1, esiti.stream().filter(PrenotazioneService.POSTAZIONE_OCCUPATA::equals).count());
+        Prenotazione accettata = (Prenotazione) esiti.stream().filter(Prenotazione.class::isInstance)
+            .findFirst().orElseThrow();
+        assertTrue(prenotazioneRepository.existsById(accettata.getId()));
+        assertTrue(occupancyIndex.getOccupazione(edificio.getId(), data).isPrenotata(postazione.getId()));
+        assertTrue(registry.get("prenotazioni.scrittore.lotto").summary().totalAmount() >= THREAD);
+        // Le query vengono eseguite e contate sul thread dello scrittore
+        assertTrue(registry.get("prenotazioni.scrittore.query").summary().totalAmount() > 0);
+    }
+
+    @Test
+    @DisplayName("Lo scrittore rispetta la capienza dell'edificio all'interno dello stesso lotto")
+    void testEdificioCompleto() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(501);
+        Edificio edificio = creaEdificio("Capienza", 3);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+
+        List<Callable<Prenotazione>> operazioni = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Long utenteId = dati.creaUtente("capienza." + i).getId();
+            Long postazioneId = postazioni.get(i % postazioni.size()).getId();
+            operazioni.add(() -> prenotazioneService.prenotaPostazione(utenteId, postazioneId, data));
+        }
+        List<Object> esiti = eseguiInParallelo(operazioni);
+
+        assertEquals(3, esiti.stream().filter(Prenotazione.class::isInstance).count());
+        assertEquals(3, occupancyIndex.getOccupazione(edificio.getId(), data).getPostiOccupati());
+        assertEquals(3, prenotazioneRepository.findPostiOccupati(edificio.getId(), data).size());
+
+        Exception exception = assertThrows(IllegalStateException.class, () -> prenotazioneService
+            .prenotaPostazione(dati.creaUtente("capienza.extra").getId(), postazioni.get(0).getId(), data));
+        assertEquals(PrenotazioneService.EDIFICIO_COMPLETO, exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("Lo stesso utente non può prenotare due edifici nello stesso giorno, anche su scrittori diversi")
+    void testUtenteGiaPrenotato() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(502);
+        List<String> codici = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            codici.add(postazioneRepository.findByEdificioId(creaEdificio("Utente" + i, 1).getId()).get(0).getCodice());
+        }
+        dati.creaUtente("scrittore.unico");
+
+        List<Callable<Object>> operazioni = new ArrayList<>();
+        for (String codice : codici) {
+            operazioni.add(() -> prenotazioneService.prenotaPostazioneByUsername("scrittore.unico", codice, data));
+        }
+        List<Object> esiti = eseguiInParallelo(operazioni);
+
+        assertEquals(1, esiti.stream().filter(e -> !(e instanceof String)).count());
+        assertEquals(codici.size() - 1,
+            esiti.stream().filter(PrenotazioneService.UTENTE_GIA_PRENOTATO::equals).count());
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+            prenotazioneService.prenotaPostazione(-1L, postazioneRepository.findByCodice(codici.get(0))
+                .orElseThrow().getId(), data.plusDays(1)));
+        assertEquals("Utente non trovato", exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("Dopo l'arresto dello scrittore le nuove prenotazioni falliscono con un errore temporaneo")
+    void testArresto() {
+        LocalDate data = LocalDate.now().plusDays(503);
+        Edificio edificio = creaEdificio("Arresto", 1);
+        Long postazioneId = postazioneRepository.findByEdificioId(edificio.getId()).get(0).getId();
+        Long utenteId = dati.creaUtente("scrittore.arresto").getId();
+
+        // Solo lo stato di arresto: i thread degli scrittori restano attivi per gli altri test del contesto
+        ReflectionTestUtils.setField(scrittore, "arrestato", true);
+        try {
+            assertThrows(TransientDataAccessResourceException.class,
+                () -> prenotazioneService.prenotaPostazione(utenteId, postazioneId, data));
+        } finally {
+            ReflectionTestUtils.setField(scrittore, "arrestato", false);
+        }
+        assertTrue(prenotazioneRepository.findPostiOccupati(edificio.getId(), data).isEmpty());
+        assertNotNull(prenotazioneService.prenotaPostazione(utenteId, postazioneId, data));
+    }
+
+    @Test
+    @DisplayName("Un salvataggio fallito nel ripiego riga per riga libera solo il proprio posto")
+    void testErroreSalvataggio() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(504);
+        Edificio edificio = creaEdificio("Ripiego", 2);
+        List<Postazione> postazioni = postazioneRepository.findByEdificioId(edificio.getId());
+        Long guasta = postazioni.get(0).getId();
+
+        // Il batch fallisce sempre e il salvataggio della prima postazione viola un vincolo diverso dall'unicità
+        PrenotazioneRepository ripiego = mock(PrenotazioneRepository.class, delegatesTo(prenotazioneRepository));
+        doThrow(new DataIntegrityViolationException("batch")).when(ripiego).inserisciInBatch(any());
+        doAnswer(invocazione -> {
+            Prenotazione prenotazione = invocazione.getArgument(0);
+            if (guasta.equals(prenotazione.getPostazione().getId())) {
+                throw new DataIntegrityViolationException("vincolo sconosciuto");
+            }
+            return prenotazioneRepository.save(prenotazione);
+        }).when(ripiego).save(any(Prenotazione.class));
+
+        // Un edificio della stessa coda, il cui lock tiene occupato lo scrittore mentre si accodano le due richieste
+        List<?> code = (List<?>) ReflectionTestUtils.getField(scrittore, "code");
+        Edificio occupato = creaEdificio("RipiegoAttesa0", 1);
+        for (int i = 1; Math.floorMod(occupato.getId().hashCode(), code.size())
+                != Math.floorMod(edificio.getId().hashCode(), code.size()); i++) {
+            occupato = creaEdificio("RipiegoAttesa" + i, 1);
+        }
+        BlockingQueue<?> coda = (BlockingQueue<?>) code.get(Math.floorMod(edificio.getId().hashCode(), code.size()));
+        Long edificioOccupato = occupato.getId();
+        Long postazioneOccupata = postazioneRepository.findByEdificioId(edificioOccupato).get(0).getId();
+        Long utenteOccupato = dati.creaUtente("ripiego.occupato").getId();
+
+        CountDownLatch bloccato = new CountDownLatch(1);
+        CountDownLatch rilascio = new CountDownLatch(1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        List<Future<Object>> risultati = new ArrayList<>();
+        List<Object> esiti = new ArrayList<>();
+        ReflectionTestUtils.setField(scrittore, "prenotazioneRepository", ripiego);
+        try {
+            executor.submit(() -> occupancyIndex.conLock(edificioOccupato, data, occupazione -> {
+                bloccato.countDown();
+                try {
+                    return rilascio.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            assertTrue(bloccato.await(5, TimeUnit.SECONDS));
+            Future<?> attesa = executor.submit(() ->
+                prenotazioneService.prenotaPostazione(utenteOccupato, postazioneOccupata, data));
+            attendi(() -> coda.isEmpty());
+            Thread.sleep(100);
+
+            // Le due richieste vengono accodate in ordine e prelevate insieme quando lo scrittore si libera
+            for (Postazione postazione : postazioni) {
+                Long utenteId = dati.creaUtente("ripiego." + postazione.getCodice()).getId();
+                int accodate = coda.size();
+                risultati.add(executor.submit(() -> {
+                    try {
+                        return (Object) prenotazioneService.prenotaPostazione(utenteId, postazione.getId(), data);
+                    } catch (DataIntegrityViolationException e) {
+                        return e.getMessage();
+                    }
+                }));
+                attendi(() -> coda.size() > accodate);
+            }
+            rilascio.countDown();
+            attesa.get(5, TimeUnit.SECONDS);
+            for (Future<Object> risultato : risultati) {
+                esiti.add(risultato.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            rilascio.countDown();
+            executor.shutdownNow();
+            ReflectionTestUtils.setField(scrittore, "prenotazioneRepository", prenotazioneRepository);
+        }
+
+        assertEquals("vincolo sconosciuto", esiti.get(0));
+        assertInstanceOf(Prenotazione.class, esiti.get(1));
+        OccupancyIndex.Occupazione occupazione = occupancyIndex.getOccupazione(edificio.getId(), data);
+        assertFalse(occupazione.isPrenotata(guasta));
+        assertTrue(occupazione.isPrenotata(postazioni.get(1).getId()));
+        assertEquals(1, prenotazioneRepository.findPostiOccupati(edificio.getId(), data).size());
+    }
+
+    @Test
+    @DisplayName("L'attesa dell'esito di una richiesta già in elaborazione è limitata")
+    void testAttesaEsitoLimitata() throws Exception {
+        LocalDate data = LocalDate.now().plusDays(505);
+        Edificio edificio = creaEdificio("Attesa", 1);
+        Long postazioneId = postazioneRepository.findByEdificioId(edificio.getId()).get(0).getId();
+        Long utenteId = dati.creaUtente("scrittore.attesa").getId();
+
+        // Lo scrittore prende in carico la richiesta ma resta bloccato sul lock dell'edificio
+        CountDownLatch bloccato = new CountDownLatch(1);
+        CountDownLatch rilascio = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        long attesa = (long) ReflectionTestUtils.getField(scrittore, "attesaMassima");
+        ReflectionTestUtils.setField(scrittore, "attesaMassima", 500L);
+        try {
+            Future<?> blocco = executor.submit(() -> occupancyIndex.conLock(edificio.getId(), data, occupazione -> {
+                bloccato.countDown();
+                try {
+                    return rilascio.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            assertTrue(bloccato.await(5, TimeUnit.SECONDS));
+
+            Exception exception = assertThrows(TransientDataAccessResourceException.class,
+                () -> prenotazioneService.prenotaPostazione(utenteId, postazioneId, data));
+            assertTrue(exception.getMessage().startsWith("Esito della prenotazione non ancora disponibile"));
+            rilascio.countDown();
+            blocco.get(5, TimeUnit.SECONDS);
+        } finally {
+            rilascio.countDown();
+            executor.shutdownNow();
+            ReflectionTestUtils.setField(scrittore, "attesaMassima", attesa);
+        }
+
+        // Sbloccato, lo scrittore completa comunque la prenotazione
+        attendi(() -> !prenotazioneRepository.findPostiOccupati(edificio.getId(), data).isEmpty());
+        assertEquals(1, prenotazioneRepository.findPostiOccupati(edificio.getId(), data).size());
+    }
+
+    /**
+     * Esegue in parallelo le operazioni e restituisce, per ognuna, il risultato
+     * o il messaggio dell'IllegalStateException che l'ha rifiutata.
+     */
+    private <T> List<Object> eseguiInParallelo(List<Callable<T>> operazioni) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(operazioni.size());
+        CountDownLatch partenza = new CountDownLatch(1);
+        try {
+            List<Future<Object>> risultati = new ArrayList<>();
+            for (Callable<T> operazione : operazioni) {
+                risultati.add(executor.submit(() -> {
+                    partenza.await();
+                    try {
+                        return (Object) operazione.call();
+                    } catch (IllegalStateException e) {
+                        return e.getMessage();
+                    }
+                }));
+            }
+            partenza.countDown();
+            List<Object> esiti = new ArrayList<>();
+            for (Future<Object> risultato : risultati) {
+                esiti.add(risultato.get(30, TimeUnit.SECONDS));
+            }
+            return esiti;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Attende al massimo cinque secondi che una condizione diventi vera.
+     */
+    private static void attendi(BooleanSupplier condizione) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condizione.getAsBoolean()) {
+            assertTrue(System.nanoTime() < limite, "Condizione non verificata in tempo");
+            Thread.sleep(10);
+        }
+    }
+
+    private Edificio creaEdificio(String nome, int numeroPostazioni) {
+        Edificio edificio = dati.creaEdificio(nome, "ScrittoreCity");
+        dati.creaPostazioni(nome, edificio, numeroPostazioni, TipoPostazione.PRIVATO, 1);
+        return edificio;
+    }
+}
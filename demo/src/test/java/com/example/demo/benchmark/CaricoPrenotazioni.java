@@ -0,0 +1,303 @@
+package com.example.demo.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Generatore di carico per le prenotazioni: avvia l'applicazione con un server HTTP in-process,
+ * popola il DatasetBenchmark e invia da più thread prenotazioni e ricerche delle postazioni disponibili.
+ * Alla fine riporta per ogni operazione throughput, percentili di latenza (HdrHistogram),
+ * prenotazioni rifiutate per conflitto ed errori.
+ *
+ * Si esegue con il profilo carico, passando i parametri nel formato chiave=valore:
+ * mvn -Pcarico -DskipTests verify -Dcarico.argomenti="concorrenza=64 scritture=0.2 asimmetria=3"
+ *
+ * concorrenza e thread accettano più valori separati da virgola: ogni combinazione viene eseguita
+ * su un'applicazione avviata da zero e alla fine viene stampato un confronto. Ad esempio
+ * thread=piattaforma,virtuali concorrenza=1000,5000,10000 confronta il pool di thread di Tomcat
+ * con i thread virtuali. I client usano sempre thread virtuali, così da non essere il collo di bottiglia.
+ *
+ * Con ritmo maggiore di zero le richieste partono a intervalli fissi e la latenza è misurata
+ * dall'istante previsto di partenza, così che le attese dovute a un server lento non vengano nascoste.
+ */
+public class CaricoPrenotazioni {
+
+    /**
+     * Latenza massima registrabile negli istogrammi, in microsecondi
+     */
+    private static final long LATENZA_MASSIMA_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<String, String> parametri;
+
+    private final List<Integer> concorrenze = new ArrayList<>();
+    private final List<Boolean> threadVirtuali = new ArrayList<>();
+    private final long riscaldamentoSecondi;
+    private final long durataSecondi;
+    private final double quotaScritture;
+    private final double asimmetria;
+    private final int giorni;
+    private final double ritmo;
+
+    private final DatasetBenchmark dataset;
+
+    private final ExecutorService client = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final HttpClient http = HttpClient.newBuilder()
+        .connectTimeout(Duration.ofSeconds(5))
+        .executor(client)
+        .build();
+
+    private String baseUrl;
+
+    private final Operazione prenotazioni = new Operazione("prenota");
+    private final Operazione ricerche = new Operazione("disponibili");
+
+    /**
+     * Riepilogo di una combinazione di modalità dei thread e concorrenza
+     */
+    private record Risultato(String thread, int concorrenza, double prenotazioniAlSecondo, double p99Prenotazioni,
+                             double ricercheAlSecondo, double p99Ricerche, long errori) {
+    }
+
+    /**
+     * Latenze ed esiti di un tipo di operazione
+     */
+    private static class Operazione {
+        final String nome;
+        final Recorder latenze = new Recorder(LATENZA_MASSIMA_MICROS, 3);
+        final LongAdder riuscite = new LongAdder();
+        final LongAdder conflitti = new LongAdder();
+        final LongAdder errori = new LongAdder();
+
+        Operazione(String nome) {
+            this.nome = nome;
+        }
+
+        void azzera() {
+            latenze.reset();
+            riuscite.reset();
+            conflitti.reset();
+            errori.reset();
+        }
+    }
+
+    CaricoPrenotazioni(Map<String, String> parametri) {
+        this.parametri = parametri;
+        for (String valore : parametri.getOrDefault("concorrenza", "16").split(",")) {
+            concorrenze.add(Integer.parseInt(valore.trim()));
+        }
+        for (String valore : parametri.getOrDefault("thread", "piattaforma").split(",")) {
+            switch (valore.trim()) {
+                case "piattaforma" -> threadVirtuali.add(false);
+                case "virtuali" -> threadVirtuali.add(true);
+                default -> throw new IllegalArgumentException("Modalità dei thread non valida: " + valore);
+            }
+        }
+        riscaldamentoSecondi = intero("riscaldamento", 10);
+        durataSecondi = intero("durata", 30);
+        quotaScritture = decimale("scritture", 0.3);
+        asimmetria = decimale("asimmetria", 2.0);
+        giorni = intero("giorni", 30);
+        ritmo = decimale("ritmo", 0);
+        dataset = new DatasetBenchmark(intero("edifici", 20), intero("postazioniPerEdificio", 50),
+            intero("utenti", 5000), intero("prenotazioni", 10000));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> parametri = new HashMap<>();
+        for (String argomento : args) {
+            String[] coppia = argomento.split("=", 2);
+            if (coppia.length != 2) {
+                throw new IllegalArgumentException("Parametro non valido, atteso chiave=valore: " + argomento);
+            }
+            parametri.put(coppia[0], coppia[1]);
+        }
+        new CaricoPrenotazioni(parametri).esegui();
+    }
+
+    void esegui() throws Exception {
+        List<Risultato> risultati = new ArrayList<>();
+        try {
+            for (boolean virtuali : threadVirtuali) {
+                for (int concorrenza : concorrenze) {
+                    risultati.add(esegui(virtuali, concorrenza));
+                }
+            }
+        } finally {
+            client.shutdownNow();
+        }
+
+        if (risultati.size() > 1) {
+            System.out.printf("%n=== CONFRONTO ===%n%-12s %11s %14s %14s %14s %14s %8s%n", "thread", "concorrenza",
+                "prenota op/s", "prenota p99", "ricerca op/s", "ricerca p99", "errori");
+            for (Risultato r : risultati) {
+                System.out.printf("%-12s %11d %14.1f %14.2f %14.1f %14.2f %8d%n", r.thread(), r.concorrenza(),
+                    r.prenotazioniAlSecondo(), r.p99Prenotazioni(), r.ricercheAlSecondo(), r.p99Ricerche(),
+                    r.errori());
+            }
+        }
+    }
+
+    /**
+     * Esegue una combinazione su un'applicazione appena avviata e popolata.
+     */
+    private Risultato esegui(boolean virtuali, int concorrenza) throws Exception {
+        // Le connessioni in attesa non devono essere rifiutate dal server prima di arrivare ai thread
+        try (ConfigurableApplicationContext contesto = DatasetBenchmark.avvia("--server.port=0",
+                "--spring.threads.virtual.enabled=" + virtuali,
+                "--server.tomcat.max-connections=" + Math.max(8192, concorrenza * 2),
+                "--server.tomcat.accept-count=" + concorrenza)) {
+            dataset.popola(contesto);
+            baseUrl = "http://localhost:"
+                + ((WebServerApplicationContext) contesto).getWebServer().getPort() + "/api/prenotazioni";
+            String thread = virtuali ? "virtuali" : "piattaforma";
+
+            System.out.printf("%nCarico: %d client, thread %s, %.0f%% scritture, asimmetria %.1f, ritmo %s%n",
+                concorrenza, thread, quotaScritture * 100, asimmetria, ritmo > 0 ? ritmo + " op/s" : "massimo");
+            genera(concorrenza, riscaldamentoSecondi);
+            prenotazioni.azzera();
+            ricerche.azzera();
+
+            long inizio = System.nanoTime();
+            genera(concorrenza, durataSecondi);
+            double secondi = (System.nanoTime() - inizio) / 1e9;
+
+            Histogram latenzePrenotazioni = stampa(prenotazioni, secondi);
+            Histogram latenzeRicerche = stampa(ricerche, secondi);
+            return new Risultato(thread, concorrenza,
+                latenzePrenotazioni.getTotalCount() / secondi, latenzePrenotazioni.getValueAtPercentile(99) / 1000.0,
+                latenzeRicerche.getTotalCount() / secondi, latenzeRicerche.getValueAtPercentile(99) / 1000.0,
+                prenotazioni.errori.sum() + ricerche.errori.sum());
+        }
+    }
+
+    /**
+     * Invia richieste da un thread virtuale per client per la durata indicata.
+     */
+    private void genera(int concorrenza, long secondi) throws Exception {
+        long fine = System.nanoTime() + TimeUnit.SECONDS.toNanos(secondi);
+        // Ogni thread mantiene la propria quota del ritmo complessivo
+        long intervallo = ritmo > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * concorrenza / ritmo) : 0;
+        List<Future<?>> thread = new ArrayList<>();
+        for (int i = 0; i < concorrenza; i++) {
+            thread.add(client.submit(() -> {
+                long prevista = System.nanoTime();
+                while (prevista < fine) {
+                    if (intervallo > 0) {
+                        long attesa = prevista - System.nanoTime();
+                        if (attesa > 0) {
+                            TimeUnit.NANOSECONDS.sleep(attesa);
+                        }
+                    } else {
+                        prevista = System.nanoTime();
+                    }
+                    invia(prevista);
+                    prevista += intervallo;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> risultato : thread) {
+            risultato.get();
+        }
+    }
+
+    /**
+     * Invia una prenotazione o una ricerca su un edificio e un giorno scelti con la distribuzione asimmetrica.
+     */
+    private void invia(long prevista) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int edificio = scegli(random, dataset.edifici);
+        LocalDate data = dataset.primoGiorno.plusDays(scegli(random, giorni));
+
+        Operazione operazione;
+        HttpRequest richiesta;
+        if (random.nextDouble() < quotaScritture) {
+            operazione = prenotazioni;
+            String corpo = String.format("{\"username\":\"%s\",\"codicePostazione\":\"%s\",\"data\":\"%s\"}",
+                DatasetBenchmark.username(random.nextInt(dataset.utenti)),
+                DatasetBenchmark.codice(edificio, random.nextInt(dataset.postazioniPerEdificio)), data);
+            richiesta = HttpRequest.newBuilder(URI.create(baseUrl + "/prenota"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(corpo))
+                .build();
+        } else {
+            operazione = ricerche;
+            richiesta = HttpRequest.newBuilder(URI.create(baseUrl + "/disponibili?tipo=OPENSPACE&citta="
+                + DatasetBenchmark.citta(edificio) + "&data=" + data)).GET().build();
+        }
+
+        try {
+            int stato = http.send(richiesta, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (stato == 200) {
+                operazione.riuscite.increment();
+            } else if (stato == 400) {
+                // Le prenotazioni rifiutate dalle regole di dominio rispondono 400
+                operazione.conflitti.increment();
+            } else {
+                operazione.errori.increment();
+            }
+        } catch (Exception e) {
+            operazione.errori.increment();
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - prevista);
+        operazione.latenze.recordValue(Math.min(micros, LATENZA_MASSIMA_MICROS));
+    }
+
+    /**
+     * Sceglie un indice in [0, n): con asimmetria 1 la distribuzione è uniforme,
+     * valori maggiori concentrano le scelte sui primi indici (edifici e giorni più richiesti).
+     */
+    private int scegli(ThreadLocalRandom random, int n) {
+        return Math.min(n - 1, (int) (n * Math.pow(random.nextDouble(), asimmetria)));
+    }
+
+    /**
+     * Stampa i risultati di un'operazione e restituisce l'istogramma delle latenze misurate.
+     */
+    private Histogram stampa(Operazione operazione, double secondi) {
+        Histogram istogramma = operazione.latenze.getIntervalHistogram();
+        long totale = istogramma.getTotalCount();
+        System.out.printf("%n=== %s ===%n", operazione.nome);
+        System.out.printf("richieste: %d (%.1f op/s)%n", totale, totale / secondi);
+        System.out.printf("riuscite: %d, conflitti: %d (%.2f%%), errori: %d (%.2f%%)%n",
+            operazione.riuscite.sum(), operazione.conflitti.sum(), percentuale(operazione.conflitti.sum(), totale),
+            operazione.errori.sum(), percentuale(operazione.errori.sum(), totale));
+        System.out.printf("latenza (ms): p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+            istogramma.getValueAtPercentile(50) / 1000.0, istogramma.getValueAtPercentile(90) / 1000.0,
+            istogramma.getValueAtPercentile(99) / 1000.0, istogramma.getValueAtPercentile(99.9) / 1000.0,
+            istogramma.getMaxValue() / 1000.0);
+        return istogramma;
+    }
+
+    private static double percentuale(long parte, long totale) {
+        return totale == 0 ? 0 : parte * 100.0 / totale;
+    }
+
+    private int intero(String nome, int predefinito) {
+        return parametri.containsKey(nome) ? Integer.parseInt(parametri.get(nome)) : predefinito;
+    }
+
+    private double decimale(String nome, double predefinito) {
+        return parametri.containsKey(nome) ? Double.parseDouble(parametri.get(nome)) : predefinito;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.demo.benchmark;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.DemoApplication;
+import com.example.demo.model.TipoPostazione;
+import com.example.demo.service.CatalogoCacheService;
+import com.example.demo.service.OccupancyIndex;
+
+/**
+ * Dataset sintetico condiviso dai benchmark e dal generatore di carico.
+ * Ogni edificio ha una propria città e metà delle postazioni open space; le prenotazioni iniziali
+ * occupano i giorni a partire da domani: nel giorno k la postazione i è prenotata dall'utente i,
+ * per i da 0 al minimo tra utenti e postazioni.
+ */
+class DatasetBenchmark {
+
+    final int edifici;
+    final int postazioniPerEdificio;
+    final int utenti;
+    final int prenotazioni;
+
+    final LocalDate primoGiorno = LocalDate.now().plusDays(1);
+
+    int giorniPrenotati;
+
+    List<Long> idUtenti;
+
+    List<Long> idPostazioni;
+
+    DatasetBenchmark(int edifici, int postazioniPerEdificio, int utenti, int prenotazioni) {
+        this.edifici = edifici;
+        this.postazioniPerEdificio = postazioniPerEdificio;
+        this.utenti = utenti;
+        this.prenotazioni = prenotazioni;
+    }
+
+    /**
+     * Avvia l'applicazione sull'H2 del profilo di test, con i log ridotti al minimo.
+     *
+     * @param argomenti proprietà aggiuntive nel formato --chiave=valore
+     * @return il contesto dell'applicazione
+     */
+    static ConfigurableApplicationContext avvia(String... argomenti) {
+        List<String> tutti = new ArrayList<>(List.of(
+            "--spring.profiles.active=test",
+            "--spring.jpa.show-sql=false",
+            "--logging.level.root=WARN",
+            // Le prenotazioni in conflitto sono attese: Hibernate registrerebbe ogni violazione dei vincoli
+            "--logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=OFF"));
+        tutti.addAll(List.of(argomenti));
+        return SpringApplication.run(DemoApplication.class, tutti.toArray(String[]::new));
+    }
+
+    /**
+     * Inserisce edifici, postazioni, utenti e prenotazioni con JDBC batch,
+     * poi svuota le cache caricate prima del popolamento.
+     *
+     * @param contesto contesto dell'applicazione avviata
+     */
+    void popola(ConfigurableApplicationContext contesto) {
+        JdbcTemplate jdbcTemplate = contesto.getBean(JdbcTemplate.class);
+
+        List<Object[]> righeEdifici = new ArrayList<>();
+        for (int e = 0; e < edifici; e++) {
+            righeEdifici.add(new Object[] { "Edificio " + e, "Via Benchmark " + e, citta(e) });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO edificio (nome, indirizzo, citta) VALUES (?, ?, ?)", righeEdifici);
+        List<Long> idEdifici = jdbcTemplate.queryForList("SELECT id FROM edificio ORDER BY id", Long.class);
+
+        // Metà delle postazioni sono open space, per dare lavoro alla ricerca delle disponibili
+        List<Object[]> righePostazioni = new ArrayList<>();
+        for (int e = 0; e < edifici; e++) {
+            for (int p = 0; p < postazioniPerEdificio; p++) {
+                TipoPostazione tipo = p % 2 == 0 ? TipoPostazione.OPENSPACE : TipoPostazione.PRIVATO;
+                righePostazioni.add(new Object[] { codice(e, p), "Postazione " + p, tipo.name(), 1,
+                    idEdifici.get(e) });
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO postazione (codice, descrizione, tipo, numero_massimo_occupanti, "
+            + "edificio_id) VALUES (?, ?, ?, ?, ?)", righePostazioni);
+        idPostazioni = jdbcTemplate.queryForList("SELECT id FROM postazione ORDER BY id", Long.class);
+
+        List<Object[]> righeUtenti = new ArrayList<>();
+        for (int u = 0; u < utenti; u++) {
+            righeUtenti.add(new Object[] { username(u), "Utente " + u, username(u) + "@example.com" });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO utente (username, nome_completo, email) VALUES (?, ?, ?)", righeUtenti);
+        idUtenti = jdbcTemplate.queryForList("SELECT id FROM utente ORDER BY id", Long.class);
+
+        int coppie = getCoppie();
+        giorniPrenotati = Math.max(1, (prenotazioni + coppie - 1) / coppie);
+        List<Object[]> righePrenotazioni = new ArrayList<>();
+        for (int k = 0; k < prenotazioni; k++) {
+            int indice = k % coppie;
+            righePrenotazioni.add(new Object[] { idUtenti.get(indice), idPostazioni.get(indice),
+                Date.valueOf(primoGiorno.plusDays(k / coppie)) });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO prenotazione (utente_id, postazione_id, data) VALUES (?, ?, ?)",
+            righePrenotazioni);
+
+        contesto.getBean(CatalogoCacheService.class).svuota();
+        contesto.getBean(OccupancyIndex.class).svuota();
+    }
+
+    /**
+     * @return il numero di coppie (utente, postazione) usate dalle prenotazioni di un giorno
+     */
+    int getCoppie() {
+        return Math.min(idUtenti.size(), idPostazioni.size());
+    }
+
+    static String citta(int edificio) {
+        return "BenchCity" + edificio;
+    }
+
+    static String codice(int edificio, int postazione) {
+        return "B" + edificio + "-" + postazione;
+    }
+
+    static String username(int utente) {
+        return "bench.utente." + utente;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.demo.benchmark;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.model.Postazione;
+import com.example.demo.model.Prenotazione;
+import com.example.demo.model.TipoPostazione;
+import com.example.demo.service.PrenotazioneService;
+
+/**
+ * Benchmark JMH dei percorsi principali di PrenotazioneService su un H2 embedded.
+ * Ogni fork avvia il contesto Spring con il profilo di test e popola il database con il
+ * DatasetBenchmark; le dimensioni si cambiano da riga di comando, ad esempio:
+ * mvn -Pbenchmark -DskipTests verify -Djmh.argomenti="-p utenti=10000 -p prenotazioni=100000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrenotazioneBenchmark {
+
+    /**
+     * Numero di prenotazioni spostate avanti e indietro da modificaPrenotazione
+     */
+    private static final int PRENOTAZIONI_MOBILI = 100;
+
+    @Param({ "10" })
+    private int edifici;
+
+    @Param({ "100" })
+    private int postazioniPerEdificio;
+
+    @Param({ "1000" })
+    private int utenti;
+
+    @Param({ "10000" })
+    private int prenotazioni;
+
+    private ConfigurableApplicationContext contesto;
+
+    private PrenotazioneService prenotazioneService;
+
+    private DatasetBenchmark dataset;
+
+    /**
+     * Progressivo delle nuove prenotazioni, per generare coppie (utente, giorno) e (postazione, giorno) mai usate
+     */
+    private long nuovePrenotazioni;
+
+    /**
+     * Prenotazioni del primo giorno spostate da modificaPrenotazione e giorno in cui si trovano
+     */
+    private List<Long> mobili;
+    private boolean[] spostate;
+    private int prossimaMobile;
+    private LocalDate giornoSpostamento;
+
+    @Setup(Level.Trial)
+    public void avvia() {
+        contesto = DatasetBenchmark.avvia("--spring.main.web-application-type=none");
+        prenotazioneService = contesto.getBean(PrenotazioneService.class);
+
+        dataset = new DatasetBenchmark(edifici, postazioniPerEdificio, utenti, prenotazioni);
+        dataset.popola(contesto);
+
+        // Le prenotazioni mobili vengono spostate nel giorno precedente, che nessun altro benchmark usa
+        mobili = contesto.getBean(JdbcTemplate.class).queryForList(
+            "SELECT id FROM prenotazione WHERE data = ? ORDER BY id LIMIT ?",
+            Long.class, Date.valueOf(dataset.primoGiorno), PRENOTAZIONI_MOBILI);
+        spostate = new boolean[mobili.size()];
+        giornoSpostamento = dataset.primoGiorno.minusDays(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void chiudi() {
+        contesto.close();
+    }
+
+    @Benchmark
+    public Prenotazione prenotaPostazione() {
+        // Ogni invocazione usa un giorno libero per l'utente e per la postazione
+        int coppie = dataset.getCoppie();
+        long progressivo = nuovePrenotazioni++;
+        int indice = (int) (progressivo % coppie);
+        LocalDate data = dataset.primoGiorno.plusDays(dataset.giorniPrenotati + 1 + progressivo / coppie);
+        return prenotazioneService.prenotaPostazione(dataset.idUtenti.get(indice), dataset.idPostazioni.get(indice),
+            data);
+    }
+
+    @Benchmark
+    public List<Postazione> cercaPostazioniDisponibili() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return prenotazioneService.cercaPostazioniDisponibili(TipoPostazione.OPENSPACE,
+            DatasetBenchmark.citta(random.nextInt(edifici)),
+            dataset.primoGiorno.plusDays(random.nextInt(dataset.giorniPrenotati)));
+    }
+
+    @Benchmark
+    public List<Prenotazione> getPrenotazioniByUsername() {
+        return prenotazioneService.getPrenotazioniByUsername(
+            DatasetBenchmark.username(ThreadLocalRandom.current().nextInt(utenti)));
+    }
+
+    @Benchmark
+    public Prenotazione modificaPrenotazione() {
+        // Sposta a turno una prenotazione del primo giorno in un giorno libero e poi la riporta indietro
+        int indice = prossimaMobile;
+        prossimaMobile = (prossimaMobile + 1) % mobili.size();
+        LocalDate data = spostate[indice] ? dataset.primoGiorno : giornoSpostamento;
+        spostate[indice] = !spostate[indice];
+        return prenotazioneService.modificaPrenotazione(mobili.get(indice), data, null, "Administrator");
+    }
+}